@@ -0,0 +1,158 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.config;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.springframework.beans.BeansException;
+import org.springframework.beans.PropertyValue;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.BeanFactoryAware;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.beans.factory.config.ConfigurableListableBeanFactory;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.flex.core.io.AbstractAmfConversionServiceConfigProcessor;
+import org.springframework.util.Assert;
+
+/**
+ * {@link BeanPostProcessor} implementation that applies the AMF property accessor mode selected on the message-broker tag to the
+ * {@link AbstractAmfConversionServiceConfigProcessor} instances configured on that message broker, including those registered 
+ * automatically for Hibernate support.
+ *
+ * <p>
+ * Only the config processors referenced by the <code>configProcessors</code> property of the given message brokers are affected, and
+ * a processor whose bean definition sets the <code>useGeneratedAccessors</code> property explicitly keeps its own value.
+ *
+ * <p>
+ * This processor will be enabled automatically when the <code>amf-accessors</code> attribute of the message-broker tag of the xml
+ * config namespace is set to <code>generated</code>.
+ *
+ * @see AbstractAmfConversionServiceConfigProcessor#setUseGeneratedAccessors(boolean)
+ *
+ * @author Jeremy Grelle
+ */
+public class AmfAccessorsPostProcessor implements BeanPostProcessor, BeanFactoryAware {
+
+    private static final String CONFIG_PROCESSORS_PROPERTY = "configProcessors";
+
+    private static final String USE_GENERATED_ACCESSORS_PROPERTY = "useGeneratedAccessors";
+
+    private boolean useGeneratedAccessors = false;
+
+    private Set<String> messageBrokers = new HashSet<String>();
+
+    private ConfigurableListableBeanFactory beanFactory;
+
+    private volatile Set<String> configProcessorNames;
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    public void setBeanFactory(BeanFactory beanFactory) throws BeansException {
+        Assert.isInstanceOf(ConfigurableListableBeanFactory.class, beanFactory, "AmfAccessorsPostProcessor requires a ConfigurableListableBeanFactory");
+        this.beanFactory = (ConfigurableListableBeanFactory) beanFactory;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+        if (bean instanceof AbstractAmfConversionServiceConfigProcessor && isBrokerConfigProcessor(beanName)
+            && !isExplicitlyConfigured(beanName)) {
+            ((AbstractAmfConversionServiceConfigProcessor) bean).setUseGeneratedAccessors(this.useGeneratedAccessors);
+        }
+        return bean;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+        return bean;
+    }
+
+    /**
+     * Sets whether AMF property accessor classes should be generated for the registered types.
+     *
+     * @param useGeneratedAccessors determines whether property accessor classes should be generated
+     */
+    public void setUseGeneratedAccessors(boolean useGeneratedAccessors) {
+        this.useGeneratedAccessors = useGeneratedAccessors;
+    }
+
+    /**
+     * Sets the bean names of the message brokers whose config processors the accessor mode is applied to.
+     *
+     * @param messageBrokers the message broker bean names
+     */
+    public void setMessageBrokers(Set<String> messageBrokers) {
+        this.messageBrokers = messageBrokers;
+    }
+
+    /**
+     * Resolves the config processor bean names of the message brokers on first use, once all bean factory post processors (such as
+     * the one registering Hibernate support) have had the chance to add theirs.
+     */
+    private Set<String> getConfigProcessorNames() {
+        Set<String> names = this.configProcessorNames;
+        if (names == null) {
+            names = new HashSet<String>();
+            for (String brokerName : this.messageBrokers) {
+                if (!this.beanFactory.containsBeanDefinition(brokerName)) {
+                    continue;
+                }
+                PropertyValue processors = this.beanFactory.getBeanDefinition(brokerName).getPropertyValues().getPropertyValue(CONFIG_PROCESSORS_PROPERTY);
+                if (processors != null && processors.getValue() instanceof Collection<?>) {
+                    for (Object processor : (Collection<?>) processors.getValue()) {
+                        if (processor instanceof RuntimeBeanReference) {
+                            names.add(((RuntimeBeanReference) processor).getBeanName());
+                        }
+                    }
+                }
+            }
+            this.configProcessorNames = names;
+        }
+        return names;
+    }
+
+    private boolean isBrokerConfigProcessor(String beanName) {
+        Set<String> names = getConfigProcessorNames();
+        if (names.contains(beanName)) {
+            return true;
+        }
+        for (String alias : this.beanFactory.getAliases(beanName)) {
+            if (names.contains(alias)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isExplicitlyConfigured(String beanName) {
+        if (!this.beanFactory.containsBeanDefinition(beanName)) {
+            return false;
+        }
+        BeanDefinition definition = this.beanFactory.getMergedBeanDefinition(beanName);
+        return definition.getPropertyValues().contains(USE_GENERATED_ACCESSORS_PROPERTY);
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -33,6 +33,8 @@ public abstract class BeanIds {
     public static final String REMOTING_ANNOTATION_PROCESSOR = "_flexRemotingAnnotationPostProcessor";
     
     public static final String HIBERNATE_SERIALIZATION_PROCESSOR = "_hibernateSerializationConfigPostProcessor";
+    
+    public static final String AMF_ACCESSORS_POST_PROCESSOR = "_amfAccessorsPostProcessor";
 
     public static final String MESSAGE_BROKER_HANDLER_ADAPTER = "_messageBrokerHandlerAdapter";
 
@@ -52,5 +54,7 @@ public abstract class BeanIds {
     
     public static final String LOGIN_INTERCEPTOR_SUFFIX = "LoginInterceptor";
 
+    public static final String MESSAGE_METRICS_SUFFIX = "MessageMetrics";
+
     public static final String JSON_CONFIG_MAP_EDITOR_CONFIGURER = "_jsonConfigMapEditorConfigurer";
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -42,6 +42,14 @@ public class IntegrationMessageDestinationBeanDefinitionParser extends AbstractM
 
     private static final String EXTRACT_PAYLOAD_ATTR = "extract-payload";
 
+    private static final String PRE_SERIALIZE_BODY_ATTR = "pre-serialize-body";
+
+    private static final String LAST_VALUE_CACHE_ATTR = "last-value-cache";
+
+    private static final String CONSUMER_IDLE_TIMEOUT_ATTR = "consumer-idle-timeout";
+
+    private static final String CONSUMER_WARM_STANDBY_ATTR = "consumer-warm-standby";
+
     // --------------------------- Bean Configuration Properties -------------//
     private static final String SERVICE_ADAPTER_PROPERTY = "serviceAdapter";
 
@@ -54,7 +62,9 @@ public class IntegrationMessageDestinationBeanDefinitionParser extends AbstractM
         BeanDefinitionBuilder adapterBuilder = BeanDefinitionBuilder.genericBeanDefinition(INTEGRATION_ADAPTER_CLASS_NAME);
 
         ParsingUtils.mapRequiredBeanRefAttributes(element, parserContext, adapterBuilder, MESSAGE_CHANNEL_ATTR);
-        ParsingUtils.mapOptionalAttributes(element, parserContext, adapterBuilder, EXTRACT_PAYLOAD_ATTR);
+        ParsingUtils.mapOptionalAttributes(element, parserContext, adapterBuilder, EXTRACT_PAYLOAD_ATTR, PRE_SERIALIZE_BODY_ATTR,
+            CONSUMER_IDLE_TIMEOUT_ATTR, CONSUMER_WARM_STANDBY_ATTR);
+        ParsingUtils.mapOptionalBeanRefAttributes(element, adapterBuilder, parserContext, LAST_VALUE_CACHE_ATTR);
 
         String serviceAdapterId = ParsingUtils.registerInfrastructureComponent(element, parserContext, adapterBuilder);
         destinationBuilder.addPropertyValue(SERVICE_ADAPTER_PROPERTY, serviceAdapterId);
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -54,11 +54,44 @@ public class JmsMessageDestinationBeanDefinitionParser extends AbstractMessageDe
 
     private static final String TRANSACTION_MANAGER_ATTR = "transaction-manager";
 
+    private static final String PRE_SERIALIZE_BODY_ATTR = "pre-serialize-body";
+
+    private static final String LAST_VALUE_CACHE_ATTR = "last-value-cache";
+
+    private static final String SESSION_CACHE_SIZE_ATTR = "session-cache-size";
+
+    private static final String CACHE_PRODUCERS_ATTR = "cache-producers";
+
+    private static final String RECONNECT_ON_EXCEPTION_ATTR = "reconnect-on-exception";
+
+    private static final String CONCURRENT_CONSUMERS_ATTR = "concurrent-consumers";
+
+    private static final String MAX_CONCURRENT_CONSUMERS_ATTR = "max-concurrent-consumers";
+
+    private static final String RECEIVE_TIMEOUT_ATTR = "receive-timeout";
+
+    private static final String CACHE_LEVEL_ATTR = "cache-level";
+
+    private static final String BATCH_SIZE_ATTR = "batch-size";
+
+    private static final String CONSUMER_IDLE_TIMEOUT_ATTR = "consumer-idle-timeout";
+
+    private static final String CONSUMER_WARM_STANDBY_ATTR = "consumer-warm-standby";
+
+    private static final String SELECTOR_PUSHDOWN_ATTR = "selector-pushdown";
+
+    private static final String AMF_BYTES_MESSAGES_ATTR = "amf-bytes-messages";
+
     // --------------------------- Bean Configuration Properties -------------//
     private static final String SERVICE_ADAPTER_PROPERTY = "serviceAdapter";
 
     private static final String CONNECTION_FACTORY_PROPERTY = "connectionFactory";
 
+    private static final String CACHE_LEVEL_NAME_PROPERTY = "cacheLevelName";
+
+    // --------------------------- Cache Level Prefix -------------------------//
+    private static final String CACHE_LEVEL_PREFIX = "CACHE_";
+
     // --------------------------- Default Values ----------------------------//
     private static final String DEFAULT_CONNECTION_FACTORY_REF = "connectionFactory";
 
@@ -81,8 +114,16 @@ public class JmsMessageDestinationBeanDefinitionParser extends AbstractMessageDe
         adapterBuilder.addPropertyReference(CONNECTION_FACTORY_PROPERTY, connectionFactoryId);
 
         ParsingUtils.mapOptionalBeanRefAttributes(element, adapterBuilder, parserContext, JMS_DESTINATION_ATTR, DESTINATION_RESOLVER_ATTR,
-            MESSAGE_CONVERTER_ATTR, TRANSACTION_MANAGER_ATTR);
-        ParsingUtils.mapOptionalAttributes(element, parserContext, adapterBuilder, QUEUE_NAME_ATTR, TOPIC_NAME_ATTR);
+            MESSAGE_CONVERTER_ATTR, TRANSACTION_MANAGER_ATTR, LAST_VALUE_CACHE_ATTR);
+        ParsingUtils.mapOptionalAttributes(element, parserContext, adapterBuilder, QUEUE_NAME_ATTR, TOPIC_NAME_ATTR, PRE_SERIALIZE_BODY_ATTR,
+            SESSION_CACHE_SIZE_ATTR, CACHE_PRODUCERS_ATTR, RECONNECT_ON_EXCEPTION_ATTR, CONCURRENT_CONSUMERS_ATTR, MAX_CONCURRENT_CONSUMERS_ATTR,
+            RECEIVE_TIMEOUT_ATTR, BATCH_SIZE_ATTR, CONSUMER_IDLE_TIMEOUT_ATTR, CONSUMER_WARM_STANDBY_ATTR,
+            SELECTOR_PUSHDOWN_ATTR, AMF_BYTES_MESSAGES_ATTR);
+
+        String cacheLevel = element.getAttribute(CACHE_LEVEL_ATTR);
+        if (StringUtils.hasText(cacheLevel)) {
+            adapterBuilder.addPropertyValue(CACHE_LEVEL_NAME_PROPERTY, CACHE_LEVEL_PREFIX + cacheLevel.trim().toUpperCase());
+        }
 
         String serviceAdapterId = ParsingUtils.registerInfrastructureComponent(element, parserContext, adapterBuilder);
         destinationBuilder.addPropertyValue(SERVICE_ADAPTER_PROPERTY, serviceAdapterId);
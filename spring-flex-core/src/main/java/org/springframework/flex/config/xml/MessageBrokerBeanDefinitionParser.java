@@ -24,6 +24,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 
+import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.beans.factory.config.RuntimeBeanReference;
 import org.springframework.beans.factory.parsing.CompositeComponentDefinition;
 import org.springframework.beans.factory.support.AbstractBeanDefinition;
@@ -80,12 +81,18 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
 
     private static final String HIBERNATE_4_CONFIG_PROCESSOR_CLASS_NAME = "org.springframework.flex.hibernate4.config.HibernateSerializationConfigPostProcessor";
 
+    private static final String AMF_ACCESSORS_POST_PROCESSOR_CLASS_NAME = "org.springframework.flex.config.AmfAccessorsPostProcessor";
+
     private static final String CUSTOM_EDITOR_CONFIGURER_CLASS_NAME = "org.springframework.beans.factory.config.CustomEditorConfigurer";
 
     private static final String JSON_CONFIG_MAP_EDITOR_CLASS_NAME = "org.springframework.flex.config.json.JsonConfigMapPropertyEditor";
     
     private static final String LOGIN_COMMAND_PROCESSOR_CLASS_NAME = "org.springframework.flex.core.LoginCommandConfigProcessor";
 
+    private static final String MESSAGE_METRICS_REGISTRY_CLASS_NAME = "org.springframework.flex.core.metrics.DefaultMessageMetricsRegistry";
+
+    private static final String MESSAGE_METRICS_INTERCEPTOR_CLASS_NAME = "org.springframework.flex.core.metrics.MessageMetricsInterceptor";
+
     private static final String CONFIG_MAP_CLASS_NAME = "flex.messaging.config.ConfigMap";
 
     // --------------------------- XML Config Attributes ---------------------//
@@ -99,6 +106,18 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
 
     private static final String DISABLE_DEFAULT_MAPPING_ATTR = "disable-default-mapping";
 
+    private static final String AMF_ACCESSORS_ATTR = "amf-accessors";
+
+    private static final String RESPONSE_COMPRESSOR_ATTR = "response-compressor";
+
+    private static final String SLOW_REQUEST_THRESHOLD_ATTR = "slow-request-threshold";
+
+    private static final String ENDPOINT_ADVICE_ATTR = "endpoint-advice";
+
+    private static final String MESSAGE_METRICS_ATTR = "message-metrics";
+
+    private static final String METRICS_REGISTRY_ATTR = "metrics-registry";
+
     private static final String PATTERN_ATTR = "pattern";
 
     private static final String REF_ATTR = "ref";
@@ -146,6 +165,12 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
 
     private static final String CUSTOM_EDITORS_PROPERTY = "customEditors";
 
+    private static final String USE_GENERATED_ACCESSORS_PROPERTY = "useGeneratedAccessors";
+
+    private static final String MESSAGE_BROKERS_PROPERTY = "messageBrokers";
+
+    private static final String USE_FILTER_CHAIN_PROPERTY = "useFilterChain";
+
     // --------------------------- XML Child Elements ------------------------//
     private static final String MAPPING_PATTERN_ELEMENT = "mapping";
 
@@ -168,6 +193,10 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
     // --------------------------- Default Values ----------------------------//
     private static final String DEFAULT_MAPPING_PATH = "/*";
 
+    private static final String GENERATED_AMF_ACCESSORS = "generated";
+
+    private static final String FILTER_CHAIN_ENDPOINT_ADVICE = "filter-chain";
+
     private final SpringSecurityConfigHelper securityHelper = SpringSecurityConfigResolver.resolve();
 
     @Override
@@ -215,6 +244,8 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
 
         registerConfigMapEditorIfNecessary(element, parserContext);
 
+        registerAmfAccessorsPostProcessorIfNecessary(element, parserContext);
+
         configureMessageService(element, parserContext, configProcessors, DomUtils.getChildElementByTagName(element, MESSAGE_SERVICE_ELEMENT));
 
         configureRemotingService(element, parserContext, configProcessors, DomUtils.getChildElementByTagName(element, REMOTING_SERVICE_ELEMENT));
@@ -224,6 +255,8 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
 
         configureCustomInterceptors(element, parserContext, advisors, interceptors, DomUtils.getChildElementsByTagName(element,
             MESSAGE_INTERCEPTOR_ELEMENT));
+
+        registerMessageMetricsIfNecessary(element, parserContext, interceptors);
         
         configureSecurity(element, parserContext, configProcessors, advisors, translators, interceptors, DomUtils.getChildElementByTagName(element,
             SECURED_ELEMENT));
@@ -434,6 +467,9 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
         String brokerId) {
         BeanDefinitionBuilder endpointProcessorBuilder = BeanDefinitionBuilder.genericBeanDefinition(ENDPOINT_PROCESSOR_CLASS_NAME);
         endpointProcessorBuilder.addConstructorArgValue(advisors);
+        if (FILTER_CHAIN_ENDPOINT_ADVICE.equals(securedElement.getAttribute(ENDPOINT_ADVICE_ATTR))) {
+            endpointProcessorBuilder.addPropertyValue(USE_FILTER_CHAIN_PROPERTY, true);
+        }
         ParsingUtils.registerInfrastructureComponent(securedElement, parserContext, endpointProcessorBuilder, brokerId
             + BeanIds.ENDPOINT_PROCESSOR_SUFFIX);
         configProcessors.add(new RuntimeBeanReference(brokerId + BeanIds.ENDPOINT_PROCESSOR_SUFFIX));
@@ -483,10 +519,31 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
         }
     }
 
+    @SuppressWarnings("unchecked")
+    private void registerAmfAccessorsPostProcessorIfNecessary(Element element, ParserContext parserContext) {
+        if (!GENERATED_AMF_ACCESSORS.equals(element.getAttribute(AMF_ACCESSORS_ATTR))) {
+            return;
+        }
+        // A single processor is shared by all message brokers that select generated accessors
+        if (parserContext.getRegistry().containsBeanDefinition(BeanIds.AMF_ACCESSORS_POST_PROCESSOR)) {
+            BeanDefinition processorDef = parserContext.getRegistry().getBeanDefinition(BeanIds.AMF_ACCESSORS_POST_PROCESSOR);
+            ((Set<String>) processorDef.getPropertyValues().getPropertyValue(MESSAGE_BROKERS_PROPERTY).getValue()).add(element.getAttribute(ID_ATTRIBUTE));
+        } else {
+            ManagedSet<String> messageBrokers = new ManagedSet<String>();
+            messageBrokers.add(element.getAttribute(ID_ATTRIBUTE));
+            BeanDefinitionBuilder processorBuilder = BeanDefinitionBuilder.genericBeanDefinition(AMF_ACCESSORS_POST_PROCESSOR_CLASS_NAME);
+            processorBuilder.addPropertyValue(USE_GENERATED_ACCESSORS_PROPERTY, true);
+            processorBuilder.addPropertyValue(MESSAGE_BROKERS_PROPERTY, messageBrokers);
+            ParsingUtils.registerInfrastructureComponent(element, parserContext, processorBuilder, BeanIds.AMF_ACCESSORS_POST_PROCESSOR);
+        }
+    }
+
     private void registerHandlerAdapterIfNecessary(Element element, ParserContext parserContext) {
         // Make sure we only ever register one MessageBrokerHandlerAdapter
         if (!parserContext.getRegistry().containsBeanDefinition(BeanIds.MESSAGE_BROKER_HANDLER_ADAPTER)) {
             BeanDefinitionBuilder handlerAdapterBuilder = BeanDefinitionBuilder.genericBeanDefinition(MESSAGE_BROKER_HANDLER_ADAPTER_CLASS_NAME);
+            ParsingUtils.mapOptionalBeanRefAttributes(element, handlerAdapterBuilder, parserContext, RESPONSE_COMPRESSOR_ATTR);
+            ParsingUtils.mapOptionalAttributes(element, parserContext, handlerAdapterBuilder, SLOW_REQUEST_THRESHOLD_ATTR);
 
             ParsingUtils.registerInfrastructureComponent(element, parserContext, handlerAdapterBuilder, BeanIds.MESSAGE_BROKER_HANDLER_ADAPTER);
         }
@@ -570,6 +627,24 @@ public class MessageBrokerBeanDefinitionParser extends AbstractSingleBeanDefinit
         }
     }
 
+    private void registerMessageMetricsIfNecessary(Element element, ParserContext parserContext, Map<Integer, RuntimeBeanReference> interceptors) {
+        String registryId = element.getAttribute(METRICS_REGISTRY_ATTR);
+        if (!StringUtils.hasText(registryId)) {
+            if (!Boolean.parseBoolean(element.getAttribute(MESSAGE_METRICS_ATTR))) {
+                return;
+            }
+            registryId = element.getAttribute(ID_ATTRIBUTE) + BeanIds.MESSAGE_METRICS_SUFFIX;
+            BeanDefinitionBuilder registryBuilder = BeanDefinitionBuilder.genericBeanDefinition(MESSAGE_METRICS_REGISTRY_CLASS_NAME);
+            ParsingUtils.registerInfrastructureComponent(element, parserContext, registryBuilder, registryId);
+        }
+        if (!interceptors.containsKey(MessageInterceptors.METRICS_INTERCEPTOR.getOrder())) {
+            BeanDefinitionBuilder interceptorBuilder = BeanDefinitionBuilder.genericBeanDefinition(MESSAGE_METRICS_INTERCEPTOR_CLASS_NAME);
+            interceptorBuilder.addConstructorArgReference(registryId);
+            String interceptorId = ParsingUtils.registerInfrastructureComponent(element, parserContext, interceptorBuilder);
+            interceptors.put(MessageInterceptors.METRICS_INTERCEPTOR.getOrder(), new RuntimeBeanReference(interceptorId));
+        }
+    }
+
     private void registerMessageInterceptionAdvice(Element element, ParserContext parserContext, ManagedList<RuntimeBeanReference> advisors, ManagedSet<RuntimeBeanReference> interceptors) {
         BeanDefinitionBuilder advisorBuilder = BeanDefinitionBuilder.genericBeanDefinition(SERVICE_MESSAGE_ADVISOR_CLASS_NAME);
         BeanDefinitionBuilder messageInterceptionBuilder = BeanDefinitionBuilder.genericBeanDefinition(MESSAGE_INTERCEPTION_CLASS_NAME);
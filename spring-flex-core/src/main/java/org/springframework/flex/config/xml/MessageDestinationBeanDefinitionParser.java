@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,22 +19,37 @@ package org.springframework.flex.config.xml;
 import org.springframework.beans.factory.support.BeanDefinitionBuilder;
 import org.springframework.beans.factory.xml.BeanDefinitionParser;
 import org.springframework.beans.factory.xml.ParserContext;
+import org.springframework.flex.messaging.ConflatingMessagingAdapter;
 import org.springframework.flex.messaging.MessageDestinationFactory;
+import org.springframework.util.StringUtils;
 import org.w3c.dom.Element;
 
 /**
  * {@link BeanDefinitionParser} implementation for parsing the <code>message-destination</code> element.
  * 
  * <p>
- * Configures the {@link MessageDestinationFactory} bean definition with a custom adapter if specified.
+ * Configures the {@link MessageDestinationFactory} bean definition with a custom adapter if specified, or with a
+ * {@link ConflatingMessagingAdapter} if conflation is enabled.
  * 
  * @author Jeremy Grelle
  */
 public class MessageDestinationBeanDefinitionParser extends AbstractMessageDestinationBeanDefinitionParser {
 
+    // --------------------------- Full qualified class names ----------------//
+    private static final String CONFLATING_ADAPTER_CLASS_NAME = "org.springframework.flex.messaging.ConflatingMessagingAdapter";
+
     // --------------------------- XML Config Attributes ---------------------//
     private static final String SERVICE_ADAPTER_ATTR = "service-adapter";
 
+    private static final String CONFLATE_ATTR = "conflate";
+
+    private static final String CONFLATION_KEY_HEADER_ATTR = "conflation-key-header";
+
+    // --------------------------- Bean Configuration Properties -------------//
+    private static final String SERVICE_ADAPTER_PROPERTY = "serviceAdapter";
+
+    private static final String KEY_HEADER_PROPERTY = "keyHeader";
+
     /**
      * 
      * {@inheritDoc}
@@ -42,7 +57,24 @@ public class MessageDestinationBeanDefinitionParser extends AbstractMessageDesti
     @Override
     protected void parseAdapter(Element element, ParserContext parserContext, BeanDefinitionBuilder destinationBuilder) {
 
-        ParsingUtils.mapOptionalAttributes(element, parserContext, destinationBuilder, SERVICE_ADAPTER_ATTR);
+        if (!Boolean.parseBoolean(element.getAttribute(CONFLATE_ATTR))) {
+            ParsingUtils.mapOptionalAttributes(element, parserContext, destinationBuilder, SERVICE_ADAPTER_ATTR);
+            return;
+        }
+
+        if (StringUtils.hasText(element.getAttribute(SERVICE_ADAPTER_ATTR))) {
+            parserContext.getReaderContext().error("The 'conflate' attribute cannot be combined with a custom 'service-adapter'", element);
+            return;
+        }
+
+        BeanDefinitionBuilder adapterBuilder = BeanDefinitionBuilder.genericBeanDefinition(CONFLATING_ADAPTER_CLASS_NAME);
+        String keyHeader = element.getAttribute(CONFLATION_KEY_HEADER_ATTR);
+        if (StringUtils.hasText(keyHeader)) {
+            adapterBuilder.addPropertyValue(KEY_HEADER_PROPERTY, keyHeader);
+        }
+
+        String serviceAdapterId = ParsingUtils.registerInfrastructureComponent(element, parserContext, adapterBuilder);
+        destinationBuilder.addPropertyValue(SERVICE_ADAPTER_PROPERTY, serviceAdapterId);
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -26,6 +26,7 @@ import org.springframework.flex.core.MessageInterceptor;
 enum MessageInterceptors {
 
 	FIRST,
+    METRICS_INTERCEPTOR,
     PER_CLIENT_AUTH_INTERCEPTOR,
     LOGIN_MESSAGE_INTERCEPTOR,
     ENDPOINT_INTERCEPTOR,
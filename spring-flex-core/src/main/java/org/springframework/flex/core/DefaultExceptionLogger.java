@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,24 +16,126 @@
 
 package org.springframework.flex.core;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
 
 import flex.messaging.MessageException;
 
 /**
  * Default implementation of {@link ExceptionLogger} that logs all {@link MessageException}s at WARN level with Commons Logging.
  *
+ * <p>
+ * With an {@link #setAggregationInterval(long) aggregationInterval}, identical exceptions - those of the same type thrown
+ * from the same place with the same root cause - are only logged with their stack trace once per interval. Further
+ * occurrences within the interval are counted, and the count is logged with the next occurrence after the interval has
+ * elapsed, so that an error storm produces a bounded amount of log output.
+ *
  * @author Jeremy Grelle
  */
 public class DefaultExceptionLogger implements ExceptionLogger {
 
 	private static final Log log = LogFactory.getLog(DefaultExceptionLogger.class);
-	
+
+	private static final int MAX_AGGREGATED_EXCEPTIONS = 1000;
+
+	private final ConcurrentMap<String, Occurrences> occurrences = new ConcurrentHashMap<String, Occurrences>();
+
+	private volatile long aggregationInterval = 0;
+
+	/**
+	 * Sets the interval in milliseconds within which identical exceptions are logged only once.
+	 *
+	 * <p>Default is {@code 0}, meaning that every exception is logged.
+	 */
+	public void setAggregationInterval(long aggregationInterval) {
+		Assert.isTrue(aggregationInterval >= 0, "aggregationInterval must not be negative");
+		this.aggregationInterval = aggregationInterval;
+	}
+
 	public void log(Throwable throwable) {
-		if (log.isWarnEnabled()) {
+		if (!log.isWarnEnabled()) {
+			return;
+		}
+		long interval = this.aggregationInterval;
+		if (interval == 0) {
+			log.warn("The following exception occurred during request processing by the BlazeDS MessageBroker and will be serialized back to the client: ", throwable);
+			return;
+		}
+
+		String key = getAggregationKey(throwable);
+		Occurrences candidate = this.occurrences.get(key);
+		if (candidate == null) {
+			if (this.occurrences.size() >= MAX_AGGREGATED_EXCEPTIONS) {
+				this.occurrences.clear();
+			}
+			candidate = new Occurrences();
+			Occurrences existing = this.occurrences.putIfAbsent(key, candidate);
+			if (existing != null) {
+				candidate = existing;
+			}
+		}
+		int suppressed = candidate.occurred(System.currentTimeMillis(), interval);
+		if (suppressed < 0) {
+			return;
+		}
+		if (suppressed > 0) {
+			log.warn("The following exception occurred during request processing by the BlazeDS MessageBroker and will be serialized back to the client ("
+				+ suppressed + " identical occurrences were not logged): ", throwable);
+		} else {
 			log.warn("The following exception occurred during request processing by the BlazeDS MessageBroker and will be serialized back to the client: ", throwable);
 		}
 	}
 
+	private static String getAggregationKey(Throwable throwable) {
+		Throwable rootCause = throwable;
+		while (rootCause.getCause() != null && rootCause.getCause() != rootCause) {
+			rootCause = rootCause.getCause();
+		}
+		if (throwable instanceof MessageException && ((MessageException) throwable).getRootCause() != null) {
+			rootCause = ((MessageException) throwable).getRootCause();
+		}
+		StringBuilder key = new StringBuilder(throwable.getClass().getName());
+		appendOrigin(key, throwable);
+		if (rootCause != throwable) {
+			key.append('|').append(rootCause.getClass().getName());
+			appendOrigin(key, rootCause);
+		}
+		return key.toString();
+	}
+
+	private static void appendOrigin(StringBuilder key, Throwable throwable) {
+		StackTraceElement[] stackTrace = throwable.getStackTrace();
+		if (stackTrace.length > 0) {
+			key.append('@').append(stackTrace[0]);
+		}
+	}
+
+	/**
+	 * The occurrences of an exception within the current aggregation interval.
+	 */
+	private static final class Occurrences {
+
+		private long intervalStart = Long.MIN_VALUE;
+
+		private int suppressed = 0;
+
+		/**
+		 * Records an occurrence, returning the number of suppressed occurrences to report if it should be logged, or
+		 * {@code -1} if it should be suppressed.
+		 */
+		synchronized int occurred(long now, long interval) {
+			if (this.intervalStart != Long.MIN_VALUE && now - this.intervalStart < interval) {
+				this.suppressed++;
+				return -1;
+			}
+			int result = this.suppressed;
+			this.intervalStart = now;
+			this.suppressed = 0;
+			return result;
+		}
+	}
 }
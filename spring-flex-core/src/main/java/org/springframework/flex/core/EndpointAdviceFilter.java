@@ -0,0 +1,223 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.core;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.List;
+
+import org.springframework.util.Assert;
+
+import flex.messaging.MessageException;
+import flex.messaging.endpoints.Endpoint;
+import flex.messaging.endpoints.amf.AMFFilter;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * {@link AMFFilter} that applies the {@link MessageInterceptionAdvice message interceptors} and the
+ * {@link ExceptionTranslationAdvice exception translation} of the <code>message-broker</code> to the messages of an
+ * endpoint from within its filter chain, as an alternative to advising the endpoint with a Spring AOP proxy.
+ *
+ * <p>
+ * The filter is inserted by the {@link EndpointConfigProcessor} immediately before the last filter of the chain, which
+ * routes the message to its service and converts any exception into an {@link ErrorMessage} response. A message that
+ * failed is therefore seen as such an error response; its root cause is what the interceptors are given on completion
+ * and what the exception translators are applied to.
+ *
+ * @author Jeremy Grelle
+ */
+public class EndpointAdviceFilter extends AMFFilter {
+
+    private static final String SERVER_PROCESSING_CODE = "Server.Processing";
+
+    private static final MessageInterceptionAdvice.MessageInvocation<AMFFilterInvocation> NEXT_FILTER = new MessageInterceptionAdvice.MessageInvocation<AMFFilterInvocation>() {
+
+        public Message proceed(Message inputMessage, AMFFilterInvocation invocation) throws Throwable {
+            return invocation.proceed(inputMessage);
+        }
+    };
+
+    private final Endpoint endpoint;
+
+    private final MessageInterceptionAdvice interceptionAdvice;
+
+    private final ExceptionTranslationAdvice translationAdvice;
+
+    /**
+     * Creates a new filter for the given endpoint.
+     *
+     * @param endpoint the endpoint whose filter chain the filter is part of
+     * @param interceptionAdvice the message interceptors to apply, may be {@code null}
+     * @param translationAdvice the exception translation to apply, may be {@code null}
+     */
+    public EndpointAdviceFilter(Endpoint endpoint, MessageInterceptionAdvice interceptionAdvice, ExceptionTranslationAdvice translationAdvice) {
+        Assert.notNull(endpoint, "endpoint must not be null");
+        this.endpoint = endpoint;
+        this.interceptionAdvice = interceptionAdvice;
+        this.translationAdvice = translationAdvice;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void invoke(ActionContext context) throws IOException {
+        Message inputMessage = extractMessage(context.getRequestMessageBody());
+        if (inputMessage == null || this.next == null) {
+            if (this.next != null) {
+                this.next.invoke(context);
+            }
+            return;
+        }
+
+        AMFFilterInvocation invocation = new AMFFilterInvocation(this.next, context);
+        try {
+            Message outputMessage;
+            if (this.interceptionAdvice != null) {
+                outputMessage = this.interceptionAdvice.process(this.endpoint, inputMessage, NEXT_FILTER, invocation);
+            } else {
+                outputMessage = invocation.proceed(inputMessage);
+            }
+            if (outputMessage != invocation.responseMessage) {
+                context.getResponseMessageBody().setData(outputMessage);
+            }
+        } catch (IOException ex) {
+            throw ex;
+        } catch (FaultResponseException ex) {
+            translateFault(context, ex);
+        } catch (Error ex) {
+            throw ex;
+        } catch (Throwable ex) {
+            writeFault(context, inputMessage, translate(ex));
+        }
+    }
+
+    private void translateFault(ActionContext context, FaultResponseException fault) {
+        if (this.translationAdvice == null) {
+            return;
+        }
+        Throwable translated = this.translationAdvice.translate(fault);
+        if (translated != fault && translated instanceof MessageException) {
+            ErrorMessage original = fault.errorMessage;
+            ErrorMessage errorMessage = ((MessageException) translated).createErrorMessage();
+            errorMessage.setCorrelationId(original.getCorrelationId());
+            errorMessage.setDestination(original.getDestination());
+            errorMessage.setClientId(original.getClientId());
+            context.getResponseMessageBody().setData(errorMessage);
+        }
+    }
+
+    private MessageException translate(Throwable ex) {
+        Throwable translated = this.translationAdvice != null ? this.translationAdvice.translate(ex) : ex;
+        if (translated instanceof MessageException) {
+            return (MessageException) translated;
+        }
+        MessageException me = new MessageException();
+        me.setCode(SERVER_PROCESSING_CODE);
+        me.setMessage(translated.getMessage());
+        me.setRootCause(translated);
+        return me;
+    }
+
+    private void writeFault(ActionContext context, Message inputMessage, MessageException ex) {
+        ErrorMessage errorMessage = ex.createErrorMessage();
+        errorMessage.setCorrelationId(inputMessage.getMessageId());
+        errorMessage.setDestination(inputMessage.getDestination());
+        errorMessage.setClientId(inputMessage.getClientId());
+        MessageBody response = context.getResponseMessageBody();
+        response.setReplyMethod(MessageIOConstants.STATUS_METHOD);
+        response.setData(errorMessage);
+        context.setStatus(MessageIOConstants.STATUS_ERR);
+    }
+
+    private static Message extractMessage(MessageBody body) {
+        Object data = body.getData();
+        if (data instanceof List<?>) {
+            List<?> list = (List<?>) data;
+            data = list.isEmpty() ? null : list.get(0);
+        } else if (data != null && data.getClass().isArray()) {
+            data = Array.getLength(data) == 0 ? null : Array.get(data, 0);
+        }
+        return data instanceof Message ? (Message) data : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void replaceMessage(MessageBody body, Message message) {
+        Object data = body.getData();
+        if (data instanceof List<?>) {
+            ((List<Object>) data).set(0, message);
+        } else if (data != null && data.getClass().isArray()) {
+            Array.set(data, 0, message);
+        } else {
+            body.setData(message);
+        }
+    }
+
+    /**
+     * Invocation of the rest of the filter chain for a single message.
+     */
+    private static final class AMFFilterInvocation {
+
+        private final AMFFilter next;
+
+        private final ActionContext context;
+
+        private Message responseMessage;
+
+        AMFFilterInvocation(AMFFilter next, ActionContext context) {
+            this.next = next;
+            this.context = context;
+        }
+
+        Message proceed(Message inputMessage) throws IOException {
+            MessageBody request = this.context.getRequestMessageBody();
+            if (inputMessage != extractMessage(request)) {
+                replaceMessage(request, inputMessage);
+            }
+            this.next.invoke(this.context);
+            Object data = this.context.getResponseMessageBody().getData();
+            if (this.context.getStatus() == MessageIOConstants.STATUS_ERR && data instanceof ErrorMessage) {
+                throw new FaultResponseException((ErrorMessage) data);
+            }
+            this.responseMessage = data instanceof Message ? (Message) data : null;
+            return this.responseMessage;
+        }
+    }
+
+    /**
+     * Signals the error response written by the rest of the filter chain, carrying its root cause.
+     */
+    @SuppressWarnings("serial")
+    private static final class FaultResponseException extends MessageException {
+
+        private final transient ErrorMessage errorMessage;
+
+        FaultResponseException(ErrorMessage errorMessage) {
+            this.errorMessage = errorMessage;
+            setCode(errorMessage.faultCode);
+            setMessage(errorMessage.faultString);
+            if (errorMessage.rootCause instanceof Throwable) {
+                setRootCause((Throwable) errorMessage.rootCause);
+            }
+        }
+    }
+}
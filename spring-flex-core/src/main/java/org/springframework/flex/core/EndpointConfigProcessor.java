@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -20,6 +20,9 @@ import java.lang.reflect.Field;
 import java.util.Iterator;
 import java.util.List;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.aopalliance.aop.Advice;
 import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.beans.factory.BeanClassLoaderAware;
 import org.springframework.flex.config.MessageBrokerConfigProcessor;
@@ -36,6 +39,14 @@ import flex.messaging.endpoints.amf.AMFFilter;
  * Processor that applies advice to configured BlazeDS (Servlet based) endpoints by wrapping them in Spring AOP proxies.
  * 
  * <p>
+ * With {@link #setUseFilterChain(boolean) useFilterChain} enabled, the advice is instead applied by an
+ * {@link EndpointAdviceFilter} inserted into the AMF filter chain of each endpoint, which avoids the CGLIB proxy and the
+ * rewriting of the filters' endpoint references. This is only possible when all advisors are
+ * {@link EndpointServiceMessagePointcutAdvisor}s for the {@link MessageInterceptionAdvice} and the
+ * {@link ExceptionTranslationAdvice} configured by the <code>message-broker</code> tag; otherwise, and for any endpoint
+ * whose filter chain cannot be extended, the endpoints are proxied as usual.
+ * 
+ * <p>
  * This processor will be automatically configured through the <code>message-broker</code> xml configuration namespace
  * tag.
  * 
@@ -44,20 +55,52 @@ import flex.messaging.endpoints.amf.AMFFilter;
  */
 public class EndpointConfigProcessor implements MessageBrokerConfigProcessor, BeanClassLoaderAware {
 
+    private static final Log log = LogFactory.getLog(EndpointConfigProcessor.class);
+
+    private static final String FILTER_CHAIN_FIELD_NAME = "filterChain";
+
     private final EndpointAdvisor[] advisors;
 
     private ClassLoader proxyClassLoader = ClassUtils.getDefaultClassLoader();
 
+    private boolean useFilterChain = false;
+
     public EndpointConfigProcessor(List<EndpointAdvisor> advisors) {
         Assert.notEmpty(advisors, "A non-empty list of EndpointServiceMessagePointcutAdvisors is required");
         this.advisors = advisors.toArray(new EndpointAdvisor[advisors.size()]);
     }
 
+    /**
+     * Sets whether the advice should be applied by a filter in the AMF filter chain of each endpoint rather than by an AOP
+     * proxy of the endpoint.
+     * 
+     * <p>
+     * Default is {@code false}.
+     */
+    public void setUseFilterChain(boolean useFilterChain) {
+        this.useFilterChain = useFilterChain;
+    }
+
     /**
      * 
      * {@inheritDoc}
      */
     public MessageBroker processAfterStartup(MessageBroker broker) {
+        MessageInterceptionAdvice interceptionAdvice = null;
+        ExceptionTranslationAdvice translationAdvice = null;
+        boolean filterChain = this.useFilterChain;
+        for (int j = 0; filterChain && j < this.advisors.length; j++) {
+            Advice advice = this.advisors[j] instanceof EndpointServiceMessagePointcutAdvisor ? ((EndpointServiceMessagePointcutAdvisor) this.advisors[j]).getAdvice() : null;
+            if (advice instanceof MessageInterceptionAdvice && interceptionAdvice == null) {
+                interceptionAdvice = (MessageInterceptionAdvice) advice;
+            } else if (advice instanceof ExceptionTranslationAdvice && translationAdvice == null) {
+                translationAdvice = (ExceptionTranslationAdvice) advice;
+            } else {
+                log.warn("Endpoint advisor " + this.advisors[j] + " cannot be applied in the filter chain, falling back to proxying the endpoints");
+                filterChain = false;
+            }
+        }
+
         Iterator<String> i = broker.getEndpoints().keySet().iterator();
         while (i.hasNext()) {
             String key = i.next();
@@ -65,6 +108,9 @@ public class EndpointConfigProcessor implements MessageBrokerConfigProcessor, Be
             
             // Use proxy only in case of Servlet based Endpoints
             if (endpoint instanceof BaseHTTPEndpoint) {
+                if (filterChain && insertAdviceFilter(endpoint, interceptionAdvice, translationAdvice)) {
+                    continue;
+                }
                 ProxyFactory factory = new ProxyFactory();
                 factory.setProxyTargetClass(true);
                 factory.addAdvisors(this.advisors);
@@ -94,6 +140,28 @@ public class EndpointConfigProcessor implements MessageBrokerConfigProcessor, Be
         this.proxyClassLoader = classLoader;
     }
 
+    private boolean insertAdviceFilter(Endpoint endpoint, MessageInterceptionAdvice interceptionAdvice, ExceptionTranslationAdvice translationAdvice) {
+        Field filterChainField = ReflectionUtils.findField(endpoint.getClass(), FILTER_CHAIN_FIELD_NAME);
+        if (filterChainField == null || !AMFFilter.class.isAssignableFrom(filterChainField.getType())) {
+            log.warn("Endpoint " + endpoint.getId() + " has no AMF filter chain, falling back to proxying it");
+            return false;
+        }
+        ReflectionUtils.makeAccessible(filterChainField);
+        AMFFilter filter = (AMFFilter) ReflectionUtils.getField(filterChainField, endpoint);
+        if (filter == null || filter.getNext() == null) {
+            log.warn("The AMF filter chain of endpoint " + endpoint.getId() + " cannot be extended, falling back to proxying it");
+            return false;
+        }
+        // The last filter routes the message to its service
+        while (filter.getNext().getNext() != null) {
+            filter = filter.getNext();
+        }
+        EndpointAdviceFilter adviceFilter = new EndpointAdviceFilter(endpoint, interceptionAdvice, translationAdvice);
+        adviceFilter.setNext(filter.getNext());
+        filter.setNext(adviceFilter);
+        return true;
+    }
+
     private void fixFilterChain(Object endpoint, Object proxy) {
         // This is a nasty workaround, required because the advised Endpoint
         // passes a reference to itself to some of the filters in the chain.
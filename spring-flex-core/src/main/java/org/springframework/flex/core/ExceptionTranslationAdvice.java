@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,11 +16,17 @@
 
 package org.springframework.flex.core;
 
+import java.util.AbstractSet;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 
 import org.springframework.aop.ThrowsAdvice;
 import org.springframework.util.ClassUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
 
 import flex.messaging.MessageException;
 
@@ -32,16 +38,24 @@ import flex.messaging.MessageException;
  * If the caught object is an instance of {@link MessageException} with the generic "Server.Processing" fault code, a
  * translator will be looked up for the root cause exception type rather than the generic wrapper MessageException.
  * 
+ * <p>
+ * The translators that handle a given exception type are resolved once per type and cached, including the types that no
+ * translator handles. The cache is discarded whenever the set of translators is replaced through
+ * {@link #setExceptionTranslators(Set)} or modified through the set returned by {@link #getExceptionTranslators()}. Changes
+ * made directly to a set after passing it to {@link #setExceptionTranslators(Set)} are not detected.
+ * 
  * @author Jeremy Grelle
  */
 public class ExceptionTranslationAdvice implements ThrowsAdvice {
 
     private static final String SERVER_PROCESSING_CODE = "Server.Processing";
 
-    private Set<ExceptionTranslator> exceptionTranslators = new HashSet<ExceptionTranslator>();
+    private Set<ExceptionTranslator> exceptionTranslators = new TranslatorSet(new HashSet<ExceptionTranslator>());
     
     private ExceptionLogger exceptionLogger = new DefaultExceptionLogger();
 
+    private volatile TranslatorCache translatorCache;
+
     /**
      * Apply translation to the thrown exception.
      * 
@@ -49,6 +63,17 @@ public class ExceptionTranslationAdvice implements ThrowsAdvice {
      * @throws Throwable the translated exception
      */
     public void afterThrowing(Throwable original) throws Throwable {
+        throw translate(original);
+    }
+
+    /**
+     * Translates the given exception with the first registered {@link ExceptionTranslator} that handles it, and logs the
+     * result.
+     * 
+     * @param original the thrown exception
+     * @return the translated exception, or the original exception if no translator applies
+     */
+    public Throwable translate(Throwable original) {
 
         Class<?> candidateType = original.getClass();
         Throwable candidate = original;
@@ -61,17 +86,15 @@ public class ExceptionTranslationAdvice implements ThrowsAdvice {
             }
         }
 
-        for (ExceptionTranslator translator : this.exceptionTranslators) {
-            if (translator.handles(candidateType)) {
-                MessageException result = translator.translate(candidate);
-                if (result != null) {
-                	exceptionLogger.log(result);
-                    throw result;
-                }
+        for (ExceptionTranslator translator : getTranslatorCache().getTranslators(candidateType)) {
+            MessageException result = translator.translate(candidate);
+            if (result != null) {
+            	exceptionLogger.log(result);
+                return result;
             }
         }
         exceptionLogger.log(original);
-        throw original;
+        return original;
     }
 
     public ExceptionLogger getExceptionLogger() {
@@ -83,7 +106,8 @@ public class ExceptionTranslationAdvice implements ThrowsAdvice {
 	}
 
 	/**
-     * Returns the set of provided exception translators
+     * Returns the set of provided exception translators. Translators added to or removed from the returned set take effect
+     * for the next translated exception.
      * 
      * @return the exception translators
      */
@@ -92,12 +116,116 @@ public class ExceptionTranslationAdvice implements ThrowsAdvice {
     }
 
     /**
-     * Sets the provided exception translators
+     * Sets the provided exception translators. Later changes to the given set are only detected if they are made through
+     * the set returned by {@link #getExceptionTranslators()}; otherwise this method must be called again.
      * 
      * @param translators the exception translators to set
      */
     public void setExceptionTranslators(Set<ExceptionTranslator> translators) {
-        this.exceptionTranslators = translators;
+        this.exceptionTranslators = new TranslatorSet(translators);
+        this.translatorCache = null;
+    }
+
+    private TranslatorCache getTranslatorCache() {
+        TranslatorCache cache = this.translatorCache;
+        if (cache == null) {
+            cache = new TranslatorCache(this.exceptionTranslators);
+            this.translatorCache = cache;
+        }
+        return cache;
+    }
+
+    /**
+     * View of the set of translators that discards the cached translators whenever it is modified.
+     */
+    private final class TranslatorSet extends AbstractSet<ExceptionTranslator> {
+
+        private final Set<ExceptionTranslator> target;
+
+        TranslatorSet(Set<ExceptionTranslator> target) {
+            this.target = target;
+        }
+
+        @Override
+        public Iterator<ExceptionTranslator> iterator() {
+            final Iterator<ExceptionTranslator> iterator = this.target.iterator();
+            return new Iterator<ExceptionTranslator>() {
+
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                public ExceptionTranslator next() {
+                    return iterator.next();
+                }
+
+                public void remove() {
+                    iterator.remove();
+                    ExceptionTranslationAdvice.this.translatorCache = null;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return this.target.size();
+        }
+
+        @Override
+        public boolean contains(Object translator) {
+            return this.target.contains(translator);
+        }
+
+        @Override
+        public boolean add(ExceptionTranslator translator) {
+            boolean added = this.target.add(translator);
+            ExceptionTranslationAdvice.this.translatorCache = null;
+            return added;
+        }
+
+        @Override
+        public boolean remove(Object translator) {
+            boolean removed = this.target.remove(translator);
+            ExceptionTranslationAdvice.this.translatorCache = null;
+            return removed;
+        }
+
+        @Override
+        public void clear() {
+            this.target.clear();
+            ExceptionTranslationAdvice.this.translatorCache = null;
+        }
+    }
+
+    /**
+     * The translators resolved per exception type for a given set of translators.
+     */
+    private static final class TranslatorCache {
+
+        private static final ExceptionTranslator[] NO_TRANSLATORS = new ExceptionTranslator[0];
+
+        private final ExceptionTranslator[] translators;
+
+        private final ConcurrentMap<Class<?>, ExceptionTranslator[]> resolved = new ConcurrentReferenceHashMap<Class<?>, ExceptionTranslator[]>();
+
+        TranslatorCache(Set<ExceptionTranslator> source) {
+            this.translators = source.toArray(new ExceptionTranslator[source.size()]);
+        }
+
+        ExceptionTranslator[] getTranslators(Class<?> exceptionType) {
+            ExceptionTranslator[] result = this.resolved.get(exceptionType);
+            if (result == null) {
+                List<ExceptionTranslator> handling = new ArrayList<ExceptionTranslator>();
+                for (ExceptionTranslator translator : this.translators) {
+                    if (translator.handles(exceptionType)) {
+                        handling.add(translator);
+                    }
+                }
+                result = handling.isEmpty() ? NO_TRANSLATORS : handling.toArray(new ExceptionTranslator[handling.size()]);
+                this.resolved.putIfAbsent(exceptionType, result);
+            }
+            return result;
+        }
     }
 
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,30 +16,52 @@
 
 package org.springframework.flex.core;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
-import java.util.Stack;
 
 import org.aopalliance.intercept.MethodInterceptor;
 import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.flex.core.metrics.RequestTiming;
 
 import flex.messaging.messages.Message;
 
 /**
  * AOP interceptor that applies any provided {@link MessageInterceptor}s to the AMF {@link Message} being processed.
  * 
+ * <p>
+ * The set of interceptors is compiled into an array, along with the positions of the {@link ResourceHandlingMessageInterceptor}s
+ * among them, the first time a message is processed, so that processing a message does not allocate any collections. The
+ * compiled chain is rebuilt after the set has been replaced, retrieved through {@link #getMessageInterceptors()} or has changed
+ * size.
+ * 
  * @author Jeremy Grelle
  */
 public class MessageInterceptionAdvice implements MethodInterceptor {
 
+    private static final InterceptorChain EMPTY_CHAIN = new InterceptorChain(new LinkedHashSet<MessageInterceptor>());
+
+    private static final MessageInvocation<MethodInvocation> METHOD_INVOCATION = new MessageInvocation<MethodInvocation>() {
+
+        public Message proceed(Message inputMessage, MethodInvocation mi) throws Throwable {
+            mi.getArguments()[0] = inputMessage;
+            return (Message) mi.proceed();
+        }
+    };
+
     private Set<MessageInterceptor> messageInterceptors = new LinkedHashSet<MessageInterceptor>();
 
+    private volatile InterceptorChain chain;
+
     /**
      * Returns the chain of provided {@link MessageInterceptor}s
      * 
      * @return the message interceptors
      */
     public Set<MessageInterceptor> getMessageInterceptors() {
+        // The returned set may be modified by the caller
+        this.chain = null;
         return this.messageInterceptors;
     }
 
@@ -48,38 +70,74 @@ public class MessageInterceptionAdvice implements MethodInterceptor {
      * {@inheritDoc}
      */
     public Object invoke(MethodInvocation mi) throws Throwable {
-        MessageProcessingContext context = new MessageProcessingContext(mi.getThis());
-        Message inputMessage = (Message) mi.getArguments()[0];
+        if (getChain().interceptors.length == 0 && RequestTiming.current() == null) {
+            return mi.proceed();
+        }
+        return process(mi.getThis(), (Message) mi.getArguments()[0], METHOD_INVOCATION, mi);
+    }
+
+    /**
+     * Applies the interceptors to the given message, invoking the actual processing of the message in between. The time
+     * taken is recorded with the {@link RequestTiming} of the current request, if it is timed.
+     * 
+     * @param messageTarget the target endpoint of the message
+     * @param inputMessage the message to be processed
+     * @param invocation the callback that processes the message once it has been preprocessed
+     * @param state the state passed to the callback
+     * @return the postprocessed output message
+     * @throws Throwable any exception thrown by an interceptor or by the callback
+     */
+    <S> Message process(Object messageTarget, Message inputMessage, MessageInvocation<S> invocation, S state) throws Throwable {
+        RequestTiming timing = RequestTiming.current();
+        if (timing == null) {
+            return doProcess(messageTarget, inputMessage, invocation, state, null);
+        }
+        timing.messageStarted(inputMessage);
+        try {
+            return doProcess(messageTarget, inputMessage, invocation, state, timing);
+        } finally {
+            timing.messageFinished();
+        }
+    }
+
+    private <S> Message doProcess(Object messageTarget, Message inputMessage, MessageInvocation<S> invocation, S state, RequestTiming timing)
+        throws Throwable {
+        InterceptorChain chain = getChain();
+        MessageInterceptor[] interceptors = chain.interceptors;
+        MessageProcessingContext context = new MessageProcessingContext(messageTarget);
         Message outputMessage = null;
-        Stack<ResourceHandlingMessageInterceptor> resourceHandlerStack = new Stack<ResourceHandlingMessageInterceptor>();
+        int reached = -1;
 
         try {
 
-            for (MessageInterceptor interceptor : this.messageInterceptors) {
-                if (interceptor instanceof ResourceHandlingMessageInterceptor) {
-                    resourceHandlerStack.add((ResourceHandlingMessageInterceptor) interceptor);
-                }
-                inputMessage = interceptor.preProcess(context, inputMessage);
+            for (int i = 0; i < interceptors.length; i++) {
+                reached = i;
+                inputMessage = interceptors[i].preProcess(context, inputMessage);
             }
-            mi.getArguments()[0] = inputMessage;
 
-            outputMessage = (Message) mi.proceed();
+            if (timing != null) {
+                timing.invocationStarted();
+            }
+            try {
+                outputMessage = invocation.proceed(inputMessage, state);
+            } finally {
+                if (timing != null) {
+                    timing.invocationFinished();
+                }
+            }
 
             if (outputMessage != null) {
-                Stack<MessageInterceptor> postProcessStack = new Stack<MessageInterceptor>();
-                postProcessStack.addAll(this.messageInterceptors);
-                while (!postProcessStack.empty()) {
-                    MessageInterceptor interceptor = postProcessStack.pop();
-                    outputMessage = interceptor.postProcess(context, inputMessage, outputMessage);
+                for (int i = interceptors.length - 1; i >= 0; i--) {
+                    outputMessage = interceptors[i].postProcess(context, inputMessage, outputMessage);
                 }
             }
 
         } catch (Exception ex) {
-            doAfterComplete(resourceHandlerStack, context, inputMessage, outputMessage, ex);
+            doAfterComplete(chain, reached, context, inputMessage, outputMessage, ex);
             throw ex;
         }
-        
-        doAfterComplete(resourceHandlerStack, context, inputMessage, outputMessage, null);
+
+        doAfterComplete(chain, reached, context, inputMessage, outputMessage, null);
 
         return outputMessage;
     }
@@ -91,12 +149,66 @@ public class MessageInterceptionAdvice implements MethodInterceptor {
      */
     public void setMessageInterceptors(Set<MessageInterceptor> messageInterceptors) {
         this.messageInterceptors = messageInterceptors;
+        this.chain = null;
+    }
+
+    private InterceptorChain getChain() {
+        InterceptorChain chain = this.chain;
+        Set<MessageInterceptor> interceptors = this.messageInterceptors;
+        if (chain == null || chain.source != interceptors || chain.interceptors.length != interceptors.size()) {
+            chain = interceptors == null || interceptors.isEmpty() ? EMPTY_CHAIN : new InterceptorChain(interceptors);
+            this.chain = chain;
+        }
+        return chain;
+    }
+
+    private void doAfterComplete(InterceptorChain chain, int reached, MessageProcessingContext context, Message inputMessage,
+        Message outputMessage, Exception ex) {
+        for (int i = chain.resourceHandlers.length - 1; i >= 0; i--) {
+            if (chain.resourceHandlerPositions[i] <= reached) {
+                chain.resourceHandlers[i].afterCompletion(context, inputMessage, outputMessage, ex);
+            }
+        }
     }
 
-    private void doAfterComplete(Stack<ResourceHandlingMessageInterceptor> resourceHandlerStack, MessageProcessingContext context,
-        Message inputMessage, Message outputMessage, Exception ex) {
-        while (!resourceHandlerStack.empty()) {
-            resourceHandlerStack.pop().afterCompletion(context, inputMessage, outputMessage, ex);
+    /**
+     * Callback for the processing of a message once it has been preprocessed by the interceptors. Implementations receive
+     * their per-message state as an argument so that they can be shared between messages.
+     */
+    interface MessageInvocation<S> {
+
+        Message proceed(Message inputMessage, S state) throws Throwable;
+    }
+
+    /**
+     * Immutable snapshot of a set of interceptors, in processing order, with the resource handling interceptors among them.
+     */
+    private static final class InterceptorChain {
+
+        private final Set<MessageInterceptor> source;
+
+        private final MessageInterceptor[] interceptors;
+
+        private final ResourceHandlingMessageInterceptor[] resourceHandlers;
+
+        private final int[] resourceHandlerPositions;
+
+        private InterceptorChain(Set<MessageInterceptor> source) {
+            this.source = source;
+            this.interceptors = source.toArray(new MessageInterceptor[source.size()]);
+            List<ResourceHandlingMessageInterceptor> handlers = new ArrayList<ResourceHandlingMessageInterceptor>();
+            List<Integer> positions = new ArrayList<Integer>();
+            for (int i = 0; i < this.interceptors.length; i++) {
+                if (this.interceptors[i] instanceof ResourceHandlingMessageInterceptor) {
+                    handlers.add((ResourceHandlingMessageInterceptor) this.interceptors[i]);
+                    positions.add(i);
+                }
+            }
+            this.resourceHandlers = handlers.toArray(new ResourceHandlingMessageInterceptor[handlers.size()]);
+            this.resourceHandlerPositions = new int[positions.size()];
+            for (int i = 0; i < this.resourceHandlerPositions.length; i++) {
+                this.resourceHandlerPositions[i] = positions.get(i);
+            }
         }
     }
 
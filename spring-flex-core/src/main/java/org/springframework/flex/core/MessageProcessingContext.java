@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -28,7 +28,9 @@ public class MessageProcessingContext {
 
     private final Object messageTarget;
 
-    private final Map<String, Object> attributes = new HashMap<String, Object>();
+    private Map<String, Object> attributes;
+
+    private long startTime;
 
     /**
      * Creates a new MessageProcessingContext with the current message target endpoint
@@ -40,14 +42,36 @@ public class MessageProcessingContext {
     }
 
     /**
-     * Returns any stored attributes for the current request
+     * Returns any stored attributes for the current request. The map is created on first access.
      * 
      * @return the map of attributes
      */
     public Map<String, Object> getAttributes() {
+        if (this.attributes == null) {
+            this.attributes = new HashMap<String, Object>();
+        }
         return this.attributes;
     }
 
+    /**
+     * Returns the time at which the processing of the current message started, as recorded by
+     * {@link #setStartTime(long)}. Kept in a field of its own so that timing a message does not require the attributes map.
+     * 
+     * @return the start time as given by {@link System#nanoTime()}, or <code>0</code> if it has not been recorded
+     */
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * Records the time at which the processing of the current message started.
+     * 
+     * @param startTime the start time as given by {@link System#nanoTime()}
+     */
+    public void setStartTime(long startTime) {
+        this.startTime = startTime;
+    }
+
     /**
      * Returns the intercepted target endpoint of the current message processing request
      * 
@@ -57,6 +57,8 @@ public abstract class AbstractAmfConversionServiceConfigProcessor implements Mes
     
     private boolean useDirectFieldAccess = false;
     
+    private boolean useGeneratedAccessors = false;
+    
     /**
      * 
      * {@inheritDoc}
@@ -100,6 +102,17 @@ public abstract class AbstractAmfConversionServiceConfigProcessor implements Mes
         this.useDirectFieldAccess = useDirectFieldAccess;
     }
     
+    /**
+     * When true, configures the registered {@link SpringPropertyProxy} instances to invoke JavaBean getters and setters through 
+     * a class generated for each registered type instead of through reflection.  Types for which no accessor class can be 
+     * generated fall back to reflection.  Has no effect on direct field access.  Defaults to false.
+     * 
+     * @param useGeneratedAccessors determines whether property accessor classes should be generated
+     */
+    public void setUseGeneratedAccessors(boolean useGeneratedAccessors) {
+        this.useGeneratedAccessors = useGeneratedAccessors;
+    }
+    
     /**
      * Called during initialization, the default implementation configures and registers a {@link SpringPropertyProxy} instance 
      * for each type returned by {@link AbstractAmfConversionServiceConfigProcessor#findTypesToRegister() findTypesToRegister}. 
@@ -112,7 +125,7 @@ public abstract class AbstractAmfConversionServiceConfigProcessor implements Mes
             log.info("Types detected for AMF serialization support: "+typesToRegister.toString());
         }
         for (Class<?> type : typesToRegister) {
-            registerPropertyProxy(SpringPropertyProxy.proxyFor(type, useDirectFieldAccess, conversionService));
+            registerPropertyProxy(SpringPropertyProxy.proxyFor(type, useDirectFieldAccess, this.useGeneratedAccessors, conversionService));
         }
     }
     
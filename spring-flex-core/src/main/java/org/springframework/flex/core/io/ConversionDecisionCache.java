@@ -0,0 +1,163 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.core.io;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.core.convert.ConversionService;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.flex.core.io.PropertyAccessModel.PropertyModel;
+import org.springframework.util.ConcurrentReferenceHashMap;
+
+/**
+ * Caches the outcome of {@link ConversionService#canConvert} for the property values, constructor arguments and instances
+ * seen by a {@link SpringPropertyProxy}.
+ *
+ * <p>
+ * Decisions are keyed by property (and thus by declaring class) or constructor parameter, and by the runtime class of the
+ * value.  Once a decision is cached, values that need no conversion are returned without building any {@link TypeDescriptor},
+ * and values that do are converted using the cached source descriptor.  Values of an assignable type for which no converter is
+ * registered need no conversion, so the {@code ConversionService} is not invoked for them at all.  The decisions assume that the
+ * converters registered with the {@code ConversionService} do not change; call {@link #clear()} if they do.
+ *
+ * @author Jeremy Grelle
+ */
+final class ConversionDecisionCache {
+
+    // Stands in for the runtime class of null values, since no value can be of type void
+    private static final Class<?> NULL_VALUE = void.class;
+
+    // Marker for cached negative decisions; compared by identity only
+    private static final TypeDescriptor NO_CONVERSION = TypeDescriptor.valueOf(Void.class);
+
+    private final ConversionService conversionService;
+
+    private final ConcurrentMap<Object, ConcurrentMap<Class<?>, TypeDescriptor>> valueDecisions = new ConcurrentReferenceHashMap<Object, ConcurrentMap<Class<?>, TypeDescriptor>>();
+
+    private final ConcurrentMap<Class<?>, Boolean> instanceDecisions = new ConcurrentReferenceHashMap<Class<?>, Boolean>();
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    ConversionDecisionCache(ConversionService conversionService) {
+        this.conversionService = conversionService;
+    }
+
+    /**
+     * Converts the given value to the type of the given property if the {@link ConversionService} is able to.
+     * @param property the property the value is read from or written to
+     * @param value the value, may be {@code null}
+     * @return the converted value, or the value itself if no conversion applies
+     */
+    public Object convertPropertyValue(PropertyModel property, Object value) {
+        return convertValue(property, property.getTypeDescriptor(), value);
+    }
+
+    /**
+     * Converts the given value to the given target type if the {@link ConversionService} is able to.
+     * @param key identifies the target (such as a property or constructor parameter) the decision is cached for
+     * @param targetType the type descriptor of the target
+     * @param value the value, may be {@code null}
+     * @return the converted value, or the value itself if no conversion applies
+     */
+    public Object convertValue(Object key, TypeDescriptor targetType, Object value) {
+        TypeDescriptor sourceType = getSourceTypeIfConvertible(key, targetType, value == null ? NULL_VALUE : value.getClass());
+        if (sourceType == NO_CONVERSION) {
+            return value;
+        }
+        return this.conversionService.convert(value, sourceType, targetType);
+    }
+
+    /**
+     * Converts the given instance to the given target type if the {@link ConversionService} is able to.
+     * @param instance the instance to be serialized
+     * @param targetType the type registered with the property proxy
+     * @return the converted instance, or the instance itself if no conversion applies
+     */
+    public Object convertInstance(Object instance, Class<?> targetType) {
+        Class<?> sourceType = instance.getClass();
+        Boolean convertible = this.instanceDecisions.get(sourceType);
+        if (convertible != null) {
+            this.hitCount.incrementAndGet();
+        } else {
+            this.missCount.incrementAndGet();
+            TypeDescriptor sourceDescriptor = TypeDescriptor.valueOf(sourceType);
+            TypeDescriptor targetDescriptor = TypeDescriptor.valueOf(targetType);
+            convertible = this.conversionService.canConvert(sourceDescriptor, targetDescriptor) && !canBypassConvert(sourceDescriptor, targetDescriptor);
+            this.instanceDecisions.putIfAbsent(sourceType, convertible);
+        }
+        return convertible ? this.conversionService.convert(instance, targetType) : instance;
+    }
+
+    /**
+     * The number of conversion decisions served from the cache.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * The number of conversion decisions that had to be resolved through the {@link ConversionService}.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * Discards all cached decisions, for instance after converters have been added to the {@link ConversionService}.
+     */
+    public void clear() {
+        this.valueDecisions.clear();
+        this.instanceDecisions.clear();
+    }
+
+    private TypeDescriptor getSourceTypeIfConvertible(Object key, TypeDescriptor targetType, Class<?> valueType) {
+        ConcurrentMap<Class<?>, TypeDescriptor> decisions = this.valueDecisions.get(key);
+        if (decisions == null) {
+            decisions = new ConcurrentHashMap<Class<?>, TypeDescriptor>(4);
+            ConcurrentMap<Class<?>, TypeDescriptor> existing = this.valueDecisions.putIfAbsent(key, decisions);
+            if (existing != null) {
+                decisions = existing;
+            }
+        }
+        TypeDescriptor sourceType = decisions.get(valueType);
+        if (sourceType != null) {
+            this.hitCount.incrementAndGet();
+            return sourceType;
+        }
+        this.missCount.incrementAndGet();
+        sourceType = valueType == NULL_VALUE ? targetType : TypeDescriptor.valueOf(valueType);
+        if (!this.conversionService.canConvert(sourceType, targetType) || canBypassConvert(sourceType, targetType)) {
+            sourceType = NO_CONVERSION;
+        }
+        decisions.putIfAbsent(valueType, sourceType);
+        return sourceType;
+    }
+
+    /**
+     * Whether values of the source type would be returned unchanged by the {@link ConversionService}, as is the case for
+     * assignable types that no converter is registered for.  Only a {@link GenericConversionService} can tell.
+     */
+    private boolean canBypassConvert(TypeDescriptor sourceType, TypeDescriptor targetType) {
+        return this.conversionService instanceof GenericConversionService
+            && ((GenericConversionService) this.conversionService).canBypassConvert(sourceType, targetType);
+    }
+}
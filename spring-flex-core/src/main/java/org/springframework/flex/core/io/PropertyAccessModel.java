@@ -0,0 +1,347 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.core.io;
+
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.NotReadablePropertyException;
+import org.springframework.beans.NotWritablePropertyException;
+import org.springframework.cglib.reflect.FastClass;
+import org.springframework.core.convert.Property;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.ReflectionUtils.FieldCallback;
+
+/**
+ * Immutable, pre-computed model of the AMF-relevant properties of a single class.
+ *
+ * <p>
+ * Resolves the property names, the getter, setter or field handles, the {@link TypeDescriptor TypeDescriptors}, and the
+ * {@link AmfIgnore} / {@link AmfIgnoreField} flags once per class so that {@link SpringPropertyProxy} does
+ * not have to create a new {@link org.springframework.beans.PropertyAccessor PropertyAccessor} for every property access.
+ *
+ * <p>
+ * When generated accessors are requested, JavaBean getters and setters are invoked through a generated {@link FastClass}
+ * that calls the methods directly instead of through {@link Method#invoke}.  If the class cannot be generated (for instance
+ * because the type is not public), the model falls back to reflection.  Direct field access always uses reflection.
+ *
+ * @author Jeremy Grelle
+ */
+final class PropertyAccessModel {
+
+    private static final Log log = LogFactory.getLog(PropertyAccessModel.class);
+
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Class<?> type;
+
+    private final List<String> propertyNames;
+
+    private final Map<String, PropertyModel> properties;
+
+    private PropertyAccessModel(Class<?> type, List<String> propertyNames, Map<String, PropertyModel> properties) {
+        this.type = type;
+        this.propertyNames = Collections.unmodifiableList(propertyNames);
+        this.properties = Collections.unmodifiableMap(properties);
+        if (log.isDebugEnabled()) {
+            log.debug("Property names for " + type.getName() + " : " + propertyNames);
+        }
+    }
+
+    /**
+     * Builds the model for the given type.
+     * @param type the type to introspect
+     * @param useDirectFieldAccess whether properties map to fields rather than JavaBean getters and setters
+     * @return the property model for the type
+     */
+    public static PropertyAccessModel forType(Class<?> type, boolean useDirectFieldAccess) {
+        return forType(type, useDirectFieldAccess, false);
+    }
+
+    /**
+     * Builds the model for the given type, optionally invoking JavaBean getters and setters through generated code.
+     * @param type the type to introspect
+     * @param useDirectFieldAccess whether properties map to fields rather than JavaBean getters and setters
+     * @param useGeneratedAccessors whether to generate an accessor class for the type's getters and setters
+     * @return the property model for the type
+     */
+    public static PropertyAccessModel forType(Class<?> type, boolean useDirectFieldAccess, boolean useGeneratedAccessors) {
+        return useDirectFieldAccess ? forFields(type) : forBeanProperties(type, useGeneratedAccessors ? generateFastClass(type) : null);
+    }
+
+    private static FastClass generateFastClass(Class<?> type) {
+        if (!Modifier.isPublic(type.getModifiers())) {
+            if (log.isDebugEnabled()) {
+                log.debug("Using reflective property access for non-public type " + type.getName());
+            }
+            return null;
+        }
+        try {
+            return FastClass.create(type);
+        } catch (Throwable ex) {
+            if (log.isWarnEnabled()) {
+                log.warn("Failed to generate AMF property accessors for " + type.getName() + " - falling back to reflection", ex);
+            }
+            return null;
+        }
+    }
+
+    private static int fastIndexOf(FastClass fastClass, Method method) {
+        if (fastClass == null || method == null || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            return -1;
+        }
+        return fastClass.getIndex(method.getName(), method.getParameterTypes());
+    }
+
+    private static PropertyAccessModel forBeanProperties(Class<?> type, FastClass fastClass) {
+        List<String> names = new ArrayList<String>();
+        Map<String, PropertyModel> properties = new HashMap<String, PropertyModel>();
+        for (PropertyDescriptor pd : BeanUtils.getPropertyDescriptors(type)) {
+            if (!pd.getName().equals("class")) {
+                names.add(pd.getName());
+            }
+            Method readMethod = pd.getReadMethod();
+            Method writeMethod = pd.getWriteMethod();
+            if (readMethod == null && writeMethod == null) {
+                continue;
+            }
+            if (readMethod != null) {
+                ReflectionUtils.makeAccessible(readMethod);
+            }
+            if (writeMethod != null) {
+                ReflectionUtils.makeAccessible(writeMethod);
+            }
+            TypeDescriptor typeDescriptor = new TypeDescriptor(new Property(type, readMethod, writeMethod, pd.getName()));
+            boolean readIgnored = readMethod == null || readMethod.getAnnotation(AmfIgnore.class) != null;
+            boolean writeIgnored = writeMethod == null || writeMethod.getAnnotation(AmfIgnore.class) != null;
+            properties.put(pd.getName(), new PropertyModel(pd.getName(), pd.getPropertyType(), typeDescriptor, readMethod, writeMethod, null,
+                readIgnored, writeIgnored, fastClass, fastIndexOf(fastClass, readMethod), fastIndexOf(fastClass, writeMethod)));
+        }
+        return new PropertyAccessModel(type, names, properties);
+    }
+
+    private static PropertyAccessModel forFields(Class<?> type) {
+        final List<String> names = new ArrayList<String>();
+        final Map<String, PropertyModel> properties = new HashMap<String, PropertyModel>();
+        ReflectionUtils.doWithFields(type, new FieldCallback() {
+            public void doWith(Field field) throws IllegalArgumentException, IllegalAccessException {
+                names.add(field.getName());
+                if (properties.containsKey(field.getName())) {
+                    // ignore superclass declarations of fields already found in a subclass
+                    return;
+                }
+                ReflectionUtils.makeAccessible(field);
+                AmfIgnoreField ignoreField = field.getAnnotation(AmfIgnoreField.class);
+                boolean readIgnored = ignoreField != null && ignoreField.onSerialization();
+                boolean writeIgnored = ignoreField != null && ignoreField.onDeserialization();
+                properties.put(field.getName(), new PropertyModel(field.getName(), field.getType(), new TypeDescriptor(field), null, null, field,
+                    readIgnored, writeIgnored, null, -1, -1));
+            }
+        });
+        return new PropertyAccessModel(type, names, properties);
+    }
+
+    /**
+     * The type described by this model.
+     * @return the introspected type
+     */
+    public Class<?> getType() {
+        return this.type;
+    }
+
+    /**
+     * The names of the type's properties, in introspection order.
+     * @return an unmodifiable list of property names
+     */
+    public List<String> getPropertyNames() {
+        return this.propertyNames;
+    }
+
+    /**
+     * Returns the model for the named property.
+     * @param propertyName the name of the property
+     * @return the property model, or {@code null} if the type has no such property
+     */
+    public PropertyModel getProperty(String propertyName) {
+        return this.properties.get(propertyName);
+    }
+
+    /**
+     * Returns the model for the named property, failing if it cannot be read.
+     * @param propertyName the name of the property
+     * @return the readable property model
+     */
+    public PropertyModel getReadableProperty(String propertyName) {
+        PropertyModel property = this.properties.get(propertyName);
+        if (property == null || !property.isReadable()) {
+            throw new NotReadablePropertyException(this.type, propertyName);
+        }
+        return property;
+    }
+
+    /**
+     * Returns the model for the named property, failing if it cannot be written.
+     * @param propertyName the name of the property
+     * @return the writable property model
+     */
+    public PropertyModel getWritableProperty(String propertyName) {
+        PropertyModel property = this.properties.get(propertyName);
+        if (property == null || !property.isWritable()) {
+            throw new NotWritablePropertyException(this.type, propertyName);
+        }
+        return property;
+    }
+
+    /**
+     * Resolved access metadata for a single property.
+     */
+    static final class PropertyModel {
+
+        private final String name;
+
+        private final Class<?> type;
+
+        private final TypeDescriptor typeDescriptor;
+
+        private final Method readMethod;
+
+        private final Method writeMethod;
+
+        private final Field field;
+
+        private final boolean readIgnored;
+
+        private final boolean writeIgnored;
+
+        private final FastClass fastClass;
+
+        private final int fastReadIndex;
+
+        private final int fastWriteIndex;
+
+        private PropertyModel(String name, Class<?> type, TypeDescriptor typeDescriptor, Method readMethod, Method writeMethod, Field field,
+            boolean readIgnored, boolean writeIgnored, FastClass fastClass, int fastReadIndex, int fastWriteIndex) {
+            this.name = name;
+            this.type = type;
+            this.typeDescriptor = typeDescriptor;
+            this.readMethod = readMethod;
+            this.writeMethod = writeMethod;
+            this.field = field;
+            this.readIgnored = readIgnored;
+            this.writeIgnored = writeIgnored;
+            this.fastClass = fastClass;
+            this.fastReadIndex = fastReadIndex;
+            this.fastWriteIndex = fastWriteIndex;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public Class<?> getType() {
+            return this.type;
+        }
+
+        public TypeDescriptor getTypeDescriptor() {
+            return this.typeDescriptor;
+        }
+
+        public Method getReadMethod() {
+            return this.readMethod;
+        }
+
+        public Method getWriteMethod() {
+            return this.writeMethod;
+        }
+
+        public Field getField() {
+            return this.field;
+        }
+
+        public boolean isReadable() {
+            return this.field != null || this.readMethod != null;
+        }
+
+        public boolean isWritable() {
+            return this.field != null || this.writeMethod != null;
+        }
+
+        /**
+         * Whether the property should be skipped during serialization, either because it cannot be read or because it is
+         * marked with {@link AmfIgnore} or {@link AmfIgnoreField}.
+         */
+        public boolean isReadIgnored() {
+            return this.readIgnored;
+        }
+
+        /**
+         * Whether the property should be skipped during deserialization, either because it cannot be written or because it is
+         * marked with {@link AmfIgnore} or {@link AmfIgnoreField}.
+         */
+        public boolean isWriteIgnored() {
+            return this.writeIgnored;
+        }
+
+        /**
+         * Whether the property's getter and setter are invoked through generated code rather than reflection.
+         */
+        public boolean isGenerated() {
+            return this.fastReadIndex >= 0 || this.fastWriteIndex >= 0;
+        }
+
+        public Object getValue(Object instance) {
+            if (this.field != null) {
+                return ReflectionUtils.getField(this.field, instance);
+            }
+            if (this.fastReadIndex >= 0) {
+                return invokeFast(this.fastReadIndex, instance, NO_ARGS);
+            }
+            return ReflectionUtils.invokeMethod(this.readMethod, instance);
+        }
+
+        public void setValue(Object instance, Object value) {
+            if (this.field != null) {
+                ReflectionUtils.setField(this.field, instance, value);
+            } else if (this.fastWriteIndex >= 0) {
+                invokeFast(this.fastWriteIndex, instance, new Object[] { value });
+            } else {
+                ReflectionUtils.invokeMethod(this.writeMethod, instance, value);
+            }
+        }
+
+        private Object invokeFast(int index, Object instance, Object[] args) {
+            try {
+                return this.fastClass.invoke(index, instance, args);
+            } catch (InvocationTargetException ex) {
+                ReflectionUtils.handleInvocationTargetException(ex);
+                throw new IllegalStateException("Should never get here");
+            }
+        }
+    }
+}
@@ -16,35 +16,38 @@
 
 package org.springframework.flex.core.io;
 
-import java.beans.PropertyDescriptor;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Constructor;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.springframework.beans.BeanInstantiationException;
-import org.springframework.beans.BeanUtils;
-import org.springframework.beans.BeanWrapper;
 import org.springframework.beans.PropertyAccessor;
 import org.springframework.core.convert.ConversionService;
 import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.flex.core.io.PropertyAccessModel.PropertyModel;
 import org.springframework.util.Assert;
 import org.springframework.util.ClassUtils;
-import org.springframework.util.CollectionUtils;
+import org.springframework.util.ConcurrentReferenceHashMap;
 
 import flex.messaging.io.BeanProxy;
 import flex.messaging.io.PropertyProxy;
-import flex.messaging.io.amf.ASObject;
 
 /**
  * Spring {@link ConversionService}-aware {@link PropertyProxy} that seeks to find an appropriate converter for 
- * a given bean property during AMF serialization and deserialization.
+ * a given bean property during AMF serialization and deserialization.  Whether a conversion applies is resolved once 
+ * per property and runtime value type, and then cached.
  * 
  * <p>
- * Uses Spring's {@link PropertyAccessor} interface for all property access, allowing for optional direct field access
- * on the objects being serialized/deserialized.
+ * Property access follows the semantics of Spring's {@link PropertyAccessor} interface, allowing for optional direct field access
+ * on the objects being serialized/deserialized.  The getters, setters, fields and {@link AmfIgnore} metadata of each type are 
+ * resolved once per type and reused for every subsequent property access.
  *
  * @author Jeremy Grelle
  * @author Jose Barragan
@@ -55,7 +58,9 @@ public class SpringPropertyProxy extends BeanProxy {
     
     private static final long serialVersionUID = 5374027421774405789L;
     
-    private List<String> propertyNames;
+    private final transient ConcurrentMap<Class<?>, PropertyAccessModel> accessModels = new ConcurrentReferenceHashMap<Class<?>, PropertyAccessModel>();
+    
+    private final transient ConversionDecisionCache conversionDecisions;
     
     protected final ConversionService conversionService;
     
@@ -63,6 +68,8 @@ public class SpringPropertyProxy extends BeanProxy {
     
     protected final boolean useDirectFieldAccess;
     
+    protected final boolean useGeneratedAccessors;
+    
     /**
      * Factory method for creating correctly configured Spring property proxy instances.
      * @param beanType the type being introspected
@@ -71,32 +78,37 @@ public class SpringPropertyProxy extends BeanProxy {
      * @return a properly configured property proxy
      */
     public static SpringPropertyProxy proxyFor(Class<?> beanType, boolean useDirectFieldAccess, ConversionService conversionService) {
+        return proxyFor(beanType, useDirectFieldAccess, false, conversionService);
+    }
+    
+    /**
+     * Factory method for creating correctly configured Spring property proxy instances.
+     * @param beanType the type being introspected
+     * @param useDirectFieldAccess whether to access fields directly
+     * @param useGeneratedAccessors whether to invoke getters and setters through generated code rather than reflection
+     * @param conversionService the conversion service to use for property type conversion
+     * @return a properly configured property proxy
+     */
+    public static SpringPropertyProxy proxyFor(Class<?> beanType, boolean useDirectFieldAccess, boolean useGeneratedAccessors, ConversionService conversionService) {
         if(PropertyProxyUtils.hasAmfCreator(beanType)) {
-            SpringPropertyProxy proxy = new DelayedWriteSpringPropertyProxy(beanType, useDirectFieldAccess, conversionService);
+            SpringPropertyProxy proxy = new DelayedWriteSpringPropertyProxy(beanType, useDirectFieldAccess, useGeneratedAccessors, conversionService);
             return proxy;
         } else {
             Assert.isTrue(beanType.isEnum() || ClassUtils.hasConstructor(beanType), "Failed to create SpringPropertyProxy for "+beanType.getName()+" - Classes mapped " +
                     "for deserialization from AMF must have either a no-arg default constructor, " +
                     "or a constructor annotated with "+AmfCreator.class.getName());
-            SpringPropertyProxy proxy = new SpringPropertyProxy(beanType, useDirectFieldAccess, conversionService);
-            
-            try {
-                //If possible, create an instance to introspect and cache the property names               
-                Object instance = BeanUtils.instantiate(beanType);
-                proxy.setPropertyNames(PropertyProxyUtils.findPropertyNames(conversionService, useDirectFieldAccess, instance));
-            } catch(BeanInstantiationException ex) {
-                //Property names can't be cached, but this is ok
-            }
-            
+            SpringPropertyProxy proxy = new SpringPropertyProxy(beanType, useDirectFieldAccess, useGeneratedAccessors, conversionService);
             return proxy;
         }
     }
     
-    private SpringPropertyProxy(Class<?> beanType, boolean useDirectFieldAccess, ConversionService conversionService){
+    private SpringPropertyProxy(Class<?> beanType, boolean useDirectFieldAccess, boolean useGeneratedAccessors, ConversionService conversionService){
         super(null);
         this.beanType = beanType;
         this.useDirectFieldAccess = useDirectFieldAccess;
+        this.useGeneratedAccessors = useGeneratedAccessors;
         this.conversionService = conversionService;
+        this.conversionDecisions = new ConversionDecisionCache(conversionService);
     }
     
     /**
@@ -114,11 +126,7 @@ public class SpringPropertyProxy extends BeanProxy {
      */
     @Override
     public Object getInstanceToSerialize(Object instance) {
-        if (this.conversionService.canConvert(instance.getClass(), this.beanType)) {
-            return this.conversionService.convert(instance, this.beanType);
-        } else {
-            return instance;
-        }
+        return this.conversionDecisions.convertInstance(instance, this.beanType);
     }
     
     /**
@@ -126,11 +134,7 @@ public class SpringPropertyProxy extends BeanProxy {
      */
     @Override
     public List<String> getPropertyNames(Object instance) {
-        if (!CollectionUtils.isEmpty(propertyNames) && instance.getClass().equals(this.beanType)) { 
-            return this.propertyNames;
-        } else {
-            return PropertyProxyUtils.findPropertyNames(this.conversionService, this.useDirectFieldAccess, instance);
-        }
+        return getAccessModel(instance).getPropertyNames();
     }
 
     /**
@@ -138,7 +142,8 @@ public class SpringPropertyProxy extends BeanProxy {
      */
     @Override
     public Class<?> getType(Object instance, String propertyName) {
-        return PropertyProxyUtils.getPropertyAccessor(this.conversionService, this.useDirectFieldAccess, instance).getPropertyType(propertyName);
+        PropertyModel property = getAccessModel(instance).getProperty(propertyName);
+        return property != null ? property.getType() : null;
     }
 
     /**
@@ -148,19 +153,12 @@ public class SpringPropertyProxy extends BeanProxy {
      */
     @Override
     public Object getValue(Object instance, String propertyName) {
-        PropertyAccessor accessor = PropertyProxyUtils.getPropertyAccessor(this.conversionService, this.useDirectFieldAccess, instance);
-        Object value = accessor.getPropertyValue(propertyName);
+        PropertyModel property = getAccessModel(instance).getReadableProperty(propertyName);
+        Object value = property.getValue(instance);
         if(log.isDebugEnabled()) {
-            getType(instance, propertyName);
             log.debug("Actual type of value for property '"+propertyName+"' on instance "+instance+" is "+(value != null ? value.getClass() : null));
         }
-        
-        TypeDescriptor targetType = accessor.getPropertyTypeDescriptor(propertyName);
-        TypeDescriptor sourceType = value == null ? targetType : TypeDescriptor.valueOf(value.getClass());
-        if (this.conversionService.canConvert(sourceType, targetType)) {
-            value = this.conversionService.convert(value, sourceType, targetType);
-        }
-        return value;
+        return this.conversionDecisions.convertPropertyValue(property, value);
     }
 
     /**
@@ -168,8 +166,8 @@ public class SpringPropertyProxy extends BeanProxy {
      */
     @Override
     public boolean isWriteOnly(Object instance, String propertyName) {
-        PropertyAccessor accessor = PropertyProxyUtils.getPropertyAccessor(this.conversionService, this.useDirectFieldAccess, instance);
-        return isReadIgnored(instance, propertyName) || (!accessor.isReadableProperty(propertyName) && accessor.isWritableProperty(propertyName));
+        PropertyModel property = getAccessModel(instance).getProperty(propertyName);
+        return property == null || property.isReadIgnored() || (!property.isReadable() && property.isWritable());
     }
     
     /**
@@ -179,46 +177,83 @@ public class SpringPropertyProxy extends BeanProxy {
      */
     @Override
     public void setValue(Object instance, String propertyName, Object value) {
-        if (!isWriteIgnored(instance, propertyName)) {
-            PropertyProxyUtils.getPropertyAccessor(this.conversionService, this.useDirectFieldAccess, instance).setPropertyValue(propertyName, value);
+        PropertyModel property = getAccessModel(instance).getProperty(propertyName);
+        if (property != null && !property.isWriteIgnored()) {
+            writeValue(instance, property, value);
         }
     }
 
-    private void setPropertyNames(List<String> propertyNames) {
-        this.propertyNames = propertyNames;
+    /**
+     * The number of type conversion decisions that were served from this proxy's cache rather than resolved through the 
+     * {@link ConversionService}.
+     * @return the conversion cache hit count
+     */
+    public long getConversionCacheHitCount() {
+        return this.conversionDecisions.getHitCount();
+    }
+    
+    /**
+     * The number of type conversion decisions that had to be resolved through the {@link ConversionService}.
+     * @return the conversion cache miss count
+     */
+    public long getConversionCacheMissCount() {
+        return this.conversionDecisions.getMissCount();
+    }
+    
+    /**
+     * Discards the cached type conversion decisions.  Must be called if converters are added to or removed from the 
+     * {@link ConversionService} after this proxy has been used.
+     */
+    public void clearConversionCache() {
+        this.conversionDecisions.clear();
     }
 
-    private boolean isReadIgnored(Object instance, String propertyName) {
-        PropertyAccessor accessor = PropertyProxyUtils.getPropertyAccessor(this.conversionService, this.useDirectFieldAccess, instance);
-        if (!accessor.isReadableProperty(propertyName)) {
-            return true;
-        }
-        if (this.useDirectFieldAccess) {
-            AmfIgnoreField ignoreField = accessor.getPropertyTypeDescriptor(propertyName).getAnnotation(AmfIgnoreField.class);
-            return ignoreField != null && ignoreField.onSerialization();
+    private void writeValue(Object instance, PropertyModel property, Object value) {
+        Object convertedValue = value != null ? this.conversionDecisions.convertPropertyValue(property, value) : null;
+        if (ClassUtils.isAssignableValue(property.getType(), convertedValue)) {
+            property.setValue(instance, convertedValue);
         } else {
-            PropertyDescriptor pd = ((BeanWrapper)accessor).getPropertyDescriptor(propertyName);
-            return pd.getReadMethod().getAnnotation(AmfIgnore.class) != null;
+            //Let a full PropertyAccessor apply its default PropertyEditors (i.e. for primitives and Strings)
+            PropertyProxyUtils.getPropertyAccessor(this.conversionService, this.useDirectFieldAccess, instance).setPropertyValue(property.getName(), value);
         }
     }
-    
-    private boolean isWriteIgnored(Object instance, String propertyName) {
-        PropertyAccessor accessor = PropertyProxyUtils.getPropertyAccessor(this.conversionService, this.useDirectFieldAccess, instance);
-        if (!accessor.isWritableProperty(propertyName)) {
-            return true;
-        }
-        if (this.useDirectFieldAccess) {
-            AmfIgnoreField ignoreField = accessor.getPropertyTypeDescriptor(propertyName).getAnnotation(AmfIgnoreField.class);
-            return ignoreField != null && ignoreField.onDeserialization();
-        } else {
-            PropertyDescriptor pd = ((BeanWrapper)accessor).getPropertyDescriptor(propertyName);
-            return pd.getWriteMethod().getAnnotation(AmfIgnore.class) != null;
+
+    /**
+     * Returns the pre-computed {@link PropertyAccessModel} for the runtime type of the given instance, building it on first use.
+     * Models are cached per runtime type, so subclasses and generated proxy classes are only introspected once.  The cache holds 
+     * its entries through soft references so that it does not pin the classes of redeployed applications.
+     * @param instance the instance being serialized or deserialized
+     * @return the property access model for the instance's type
+     */
+    PropertyAccessModel getAccessModel(Object instance) {
+        return getAccessModelForType(instance.getClass());
+    }
+
+    /**
+     * Returns the cached {@link PropertyAccessModel} for the given type, building it on first use.
+     * @param type the type being serialized or deserialized
+     * @return the property access model for the type
+     */
+    PropertyAccessModel getAccessModelForType(Class<?> type) {
+        PropertyAccessModel model = this.accessModels.get(type);
+        if (model == null) {
+            model = PropertyAccessModel.forType(type, this.useDirectFieldAccess, this.useGeneratedAccessors);
+            PropertyAccessModel existing = this.accessModels.putIfAbsent(type, model);
+            if (existing != null) {
+                model = existing;
+            }
         }
+        return model;
     }
-    
+
     /**
      * Extension to {@link SpringPropertyProxy} that allow for use of classes that lack default no-arg constructors and instead have
      * a constructor annotated with {@link AmfCreator}.
+     * 
+     * <p>
+     * Incoming property values are collected into a fixed-size slot array according to a plan computed once per type, with one slot 
+     * per constructor parameter followed by one slot per remaining writable property.  Slot arrays are recycled through a small 
+     * lock-free pool once the target instance has been created.
      *
      * @author Jeremy Grelle
      */
@@ -226,12 +261,37 @@ public class SpringPropertyProxy extends BeanProxy {
 
         private static final long serialVersionUID = -5330475591068260312L;
         
+        private static final int POOL_SIZE = 16;
+        
+        private static final Object UNSET = new Object();
+        
         private final Constructor<?> amfConstructor;
         private final List<String> paramNames = new ArrayList<String>();
         
-        private DelayedWriteSpringPropertyProxy(Class<?> beanType, boolean useDirectFieldAccess, ConversionService conversionService) {
-            super(beanType, useDirectFieldAccess, conversionService);
+        private final transient ConstructorParameter[] params;
+        private final transient Map<String, Integer> slotIndexes = new HashMap<String, Integer>();
+        private final transient PropertyModel[] slotProperties;
+        private final transient AtomicReferenceArray<PendingInstance> pool = new AtomicReferenceArray<PendingInstance>(POOL_SIZE);
+        
+        private DelayedWriteSpringPropertyProxy(Class<?> beanType, boolean useDirectFieldAccess, boolean useGeneratedAccessors, ConversionService conversionService) {
+            super(beanType, useDirectFieldAccess, useGeneratedAccessors, conversionService);
             this.amfConstructor = findAmfConstructor();
+            this.params = new ConstructorParameter[this.paramNames.size()];
+            Class<?>[] paramTypes = this.amfConstructor.getParameterTypes();
+            for (int i=0; i<this.params.length; i++) {
+                this.params[i] = new ConstructorParameter(this.paramNames.get(i), TypeDescriptor.valueOf(paramTypes[i]));
+                this.slotIndexes.put(this.paramNames.get(i), i);
+            }
+            PropertyAccessModel model = getAccessModelForType(beanType);
+            List<PropertyModel> properties = new ArrayList<PropertyModel>();
+            for (String propertyName : model.getPropertyNames()) {
+                PropertyModel property = model.getProperty(propertyName);
+                if (property != null && !property.isWriteIgnored() && !this.slotIndexes.containsKey(propertyName)) {
+                    this.slotIndexes.put(propertyName, this.params.length + properties.size());
+                    properties.add(property);
+                }
+            }
+            this.slotProperties = properties.toArray(new PropertyModel[properties.size()]);
         }
 
         /**
@@ -240,7 +300,7 @@ public class SpringPropertyProxy extends BeanProxy {
         @Override
         public Object createInstance(String className) {
             Assert.isTrue(this.beanType.getName().equals(className), "Asked to create instance of an unknown type.");
-            return new ASObject(className);
+            return acquirePendingInstance();
         }
 
         /**
@@ -248,52 +308,75 @@ public class SpringPropertyProxy extends BeanProxy {
          */
         @Override
         public Object instanceComplete(Object instance) {
-            Assert.isInstanceOf(ASObject.class, instance, "Expected an instance of "+ASObject.class.getName());
-            ASObject sourceInstance = (ASObject) instance;
-            Assert.notNull(sourceInstance.getType(), "Expected an explicit type to be set on the ASObject instance passed to this PropertyProxy.");
+            Assert.isInstanceOf(PendingInstance.class, instance, "Expected an instance created by this PropertyProxy.");
+            PendingInstance sourceInstance = (PendingInstance) instance;
             Object targetInstance = createTargetInstance(sourceInstance);
             applyPropertyValues(sourceInstance, targetInstance);
+            releasePendingInstance(sourceInstance);
             return targetInstance;
         }
 
         /**
          * {@inheritDoc}
          */
-        @SuppressWarnings("unchecked")
         @Override
         public void setValue(Object instance, String propertyName, Object value) {
-            if (instance instanceof ASObject) {
-                ((ASObject) instance).put(propertyName, value);
+            if (instance instanceof PendingInstance) {
+                //Values for unknown or non-writable properties would be ignored anyway, so they are not collected
+                Integer slot = this.slotIndexes.get(propertyName);
+                if (slot != null) {
+                    ((PendingInstance) instance).slots[slot] = value;
+                }
             } else {
                 super.setValue(instance, propertyName, value);
             }
         }
 
-        private Object createTargetInstance(ASObject sourceInstance) {
-            Object[] params = new Object[this.paramNames.size()];
-            for (int i=0; i<params.length; i++) {
-                Object value = sourceInstance.remove(this.paramNames.get(i));
-                TypeDescriptor targetType = TypeDescriptor.valueOf(this.amfConstructor.getParameterTypes()[i]);
-                TypeDescriptor sourceType = value == null ? targetType : TypeDescriptor.valueOf(value.getClass());
-                if (this.conversionService.canConvert(sourceType, targetType)) {
-                    value = this.conversionService.convert(value, sourceType, targetType);
+        private Object createTargetInstance(PendingInstance sourceInstance) {
+            Object[] args = new Object[this.params.length];
+            for (int i=0; i<args.length; i++) {
+                Object value = sourceInstance.slots[i];
+                if (value == UNSET) {
+                    value = null;
                 }
-                params[i] = value;
+                args[i] = super.conversionDecisions.convertValue(this.params[i], this.params[i].typeDescriptor, value);
             }
             try {
-                return this.amfConstructor.newInstance(params);
+                return this.amfConstructor.newInstance(args);
             } catch (Exception ex) {
                 throw new IllegalArgumentException("Failed to invoke constructor marked with "+AmfCreator.class.getName()+" for type "+this.beanType, ex);
             }
         }
         
-        private Object applyPropertyValues(ASObject sourceInstance, Object targetInstance) {
-            for (Object property : sourceInstance.keySet()) {
-                setValue(targetInstance, property.toString(), sourceInstance.get(property));
+        private Object applyPropertyValues(PendingInstance sourceInstance, Object targetInstance) {
+            for (int i=0; i<this.slotProperties.length; i++) {
+                Object value = sourceInstance.slots[this.params.length + i];
+                if (value != UNSET) {
+                    super.writeValue(targetInstance, this.slotProperties[i], value);
+                }
             }
             return targetInstance;
         }
         
+        private PendingInstance acquirePendingInstance() {
+            for (int i=0; i<POOL_SIZE; i++) {
+                PendingInstance pending = this.pool.get(i);
+                if (pending != null && this.pool.compareAndSet(i, pending, null)) {
+                    return pending;
+                }
+            }
+            return new PendingInstance(this.params.length + this.slotProperties.length);
+        }
+        
+        private void releasePendingInstance(PendingInstance pending) {
+            pending.clear();
+            for (int i=0; i<POOL_SIZE; i++) {
+                if (this.pool.get(i) == null && this.pool.compareAndSet(i, null, pending)) {
+                    return;
+                }
+            }
+        }
+        
         private Constructor<?> findAmfConstructor() {
             for (Constructor<?> c : this.beanType.getConstructors()) {
                 if (c.isAnnotationPresent(AmfCreator.class)) {
@@ -314,5 +397,42 @@ public class SpringPropertyProxy extends BeanProxy {
             }
             throw new IllegalStateException("An instance of "+this.beanType+" could note be created.  Must either have a public no-arg constructor, or a constructor annotated with "+AmfCreator.class.getName()+".");
         }
+        
+        /**
+         * Holds the incoming values of an object being deserialized until its constructor can be invoked.
+         */
+        private static final class PendingInstance {
+            
+            private final Object[] slots;
+            
+            private PendingInstance(int size) {
+                this.slots = new Object[size];
+                clear();
+            }
+            
+            private void clear() {
+                Arrays.fill(this.slots, UNSET);
+            }
+        }
+        
+        /**
+         * A parameter of the {@link AmfCreator} constructor, also used as the key for its cached conversion decisions.
+         */
+        private static final class ConstructorParameter {
+            
+            private final String name;
+            
+            private final TypeDescriptor typeDescriptor;
+            
+            private ConstructorParameter(String name, TypeDescriptor typeDescriptor) {
+                this.name = name;
+                this.typeDescriptor = typeDescriptor;
+            }
+            
+            @Override
+            public String toString() {
+                return this.name;
+            }
+        }
     }
 }
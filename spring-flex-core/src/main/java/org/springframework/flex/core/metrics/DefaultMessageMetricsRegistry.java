@@ -0,0 +1,197 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.util.Assert;
+
+/**
+ * {@link MessageMetricsRegistry} that keeps {@link MessageMetrics} in memory for each combination of destination,
+ * operation and message type.
+ *
+ * <p>
+ * Since destination and operation names are sent by the clients, the number of combinations that are tracked is limited
+ * by {@link #setMaxEntries(int) maxEntries}; messages beyond that limit are recorded under the destination, operation and
+ * message type <code>*</code>.
+ *
+ * <p>
+ * The metrics are looked up by destination, then by operation and then by message type, so that recording a message of a
+ * known combination does not allocate.
+ *
+ * <p>
+ * The metrics are exposed as a JMX MBean by any annotation-driven Spring MBean exporter, such as the one configured by the
+ * <code>context:mbean-export</code> tag.
+ *
+ * @author Jeremy Grelle
+ */
+@ManagedResource(description = "Metrics of the messages processed by a Spring-managed BlazeDS MessageBroker")
+public class DefaultMessageMetricsRegistry implements MessageMetricsRegistry {
+
+    private static final String OVERFLOW = "*";
+
+    private static final Object NULL_KEY = new Object();
+
+    private final ConcurrentMap<Object, ConcurrentMap<Object, ConcurrentMap<Object, MessageMetrics>>> metrics = new ConcurrentHashMap<Object, ConcurrentMap<Object, ConcurrentMap<Object, MessageMetrics>>>();
+
+    private final Queue<MessageMetrics> entries = new ConcurrentLinkedQueue<MessageMetrics>();
+
+    private final AtomicInteger entryCount = new AtomicInteger();
+
+    private volatile int maxEntries = 1000;
+
+    /**
+     * Sets the maximum number of combinations of destination, operation and message type to track.
+     *
+     * <p>Default is {@code 1000}.
+     */
+    public void setMaxEntries(int maxEntries) {
+        Assert.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    public void recordMessage(String destination, String operation, String messageType, long durationNanos, boolean failed) {
+        MessageMetrics candidate = getMetrics(destination, operation, messageType);
+        if (candidate == null) {
+            candidate = addMetrics(destination, operation, messageType);
+        }
+        candidate.record(durationNanos, failed);
+    }
+
+    /**
+     * Returns the metrics recorded so far.
+     */
+    public Collection<MessageMetrics> getMetrics() {
+        return Collections.unmodifiableCollection(this.entries);
+    }
+
+    /**
+     * Returns the metrics recorded for the given destination, operation and message type.
+     *
+     * @return the metrics, or {@code null} if no such message has been recorded
+     */
+    public MessageMetrics getMetrics(String destination, String operation, String messageType) {
+        Map<Object, ConcurrentMap<Object, MessageMetrics>> operations = this.metrics.get(toKey(destination));
+        if (operations == null) {
+            return null;
+        }
+        Map<Object, MessageMetrics> messageTypes = operations.get(toKey(operation));
+        if (messageTypes == null) {
+            return null;
+        }
+        return messageTypes.get(toKey(messageType));
+    }
+
+    /**
+     * Returns a one line summary of the metrics of each destination, operation and message type.
+     */
+    @ManagedAttribute(description = "Request count, error count and latencies in microseconds per destination, operation and message type")
+    public String[] getSummary() {
+        List<String> summary = new ArrayList<String>();
+        for (MessageMetrics candidate : this.entries) {
+            summary.add(candidate.toString());
+        }
+        Collections.sort(summary);
+        return summary.toArray(new String[summary.size()]);
+    }
+
+    /**
+     * Returns the total number of messages processed.
+     */
+    @ManagedAttribute(description = "Total number of messages processed")
+    public long getRequestCount() {
+        long count = 0;
+        for (MessageMetrics candidate : this.entries) {
+            count += candidate.getRequestCount();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the total number of messages whose processing failed.
+     */
+    @ManagedAttribute(description = "Total number of messages whose processing failed")
+    public long getErrorCount() {
+        long count = 0;
+        for (MessageMetrics candidate : this.entries) {
+            count += candidate.getErrorCount();
+        }
+        return count;
+    }
+
+    /**
+     * Discards all recorded metrics.
+     */
+    @ManagedOperation(description = "Discards all recorded metrics")
+    public void reset() {
+        for (MessageMetrics candidate : this.entries) {
+            candidate.reset();
+        }
+    }
+
+    private MessageMetrics addMetrics(String destination, String operation, String messageType) {
+        if (this.entryCount.get() >= this.maxEntries) {
+            MessageMetrics overflow = getMetrics(OVERFLOW, OVERFLOW, OVERFLOW);
+            if (overflow != null) {
+                return overflow;
+            }
+            destination = OVERFLOW;
+            operation = OVERFLOW;
+            messageType = OVERFLOW;
+        }
+        ConcurrentMap<Object, MessageMetrics> messageTypes = getOrAdd(getOrAdd(this.metrics, toKey(destination)), toKey(operation));
+        MessageMetrics candidate = new MessageMetrics(destination, operation, messageType);
+        MessageMetrics existing = messageTypes.putIfAbsent(toKey(messageType), candidate);
+        if (existing != null) {
+            return existing;
+        }
+        this.entries.add(candidate);
+        this.entryCount.incrementAndGet();
+        return candidate;
+    }
+
+    private static <V> ConcurrentMap<Object, V> getOrAdd(ConcurrentMap<Object, ConcurrentMap<Object, V>> map, Object key) {
+        ConcurrentMap<Object, V> candidate = map.get(key);
+        if (candidate == null) {
+            candidate = new ConcurrentHashMap<Object, V>();
+            ConcurrentMap<Object, V> existing = map.putIfAbsent(key, candidate);
+            if (existing != null) {
+                candidate = existing;
+            }
+        }
+        return candidate;
+    }
+
+    private static Object toKey(String name) {
+        return name != null ? name : NULL_KEY;
+    }
+}
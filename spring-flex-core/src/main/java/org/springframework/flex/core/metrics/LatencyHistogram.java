@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.util.Assert;
+
+/**
+ * Fixed-size histogram of latencies in nanoseconds that can be recorded to concurrently without locking.
+ *
+ * <p>
+ * Values are counted in logarithmic buckets that are each divided into 16 linear sub-buckets, so that any recorded value
+ * is reported with a relative error of at most 1/16, whatever its magnitude. The histogram always occupies the same
+ * amount of memory, regardless of the number and range of recorded values.
+ *
+ * @author Jeremy Grelle
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+    private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+    private final AtomicLong totalCount = new AtomicLong();
+
+    private final AtomicLong totalNanos = new AtomicLong();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records a latency.
+     *
+     * @param nanos the latency in nanoseconds, negative values are recorded as {@code 0}
+     */
+    public void record(long nanos) {
+        long value = nanos < 0 ? 0 : nanos;
+        this.counts.incrementAndGet(indexOf(value));
+        this.totalCount.incrementAndGet();
+        this.totalNanos.addAndGet(value);
+        long max = this.maxNanos.get();
+        while (value > max && !this.maxNanos.compareAndSet(max, value)) {
+            max = this.maxNanos.get();
+        }
+    }
+
+    /**
+     * Returns the number of recorded latencies.
+     */
+    public long getCount() {
+        return this.totalCount.get();
+    }
+
+    /**
+     * Returns the mean of the recorded latencies in the given unit, or {@code 0} if none have been recorded.
+     */
+    public double getMean(TimeUnit unit) {
+        long count = this.totalCount.get();
+        return count == 0 ? 0 : (double) this.totalNanos.get() / count / unit.toNanos(1);
+    }
+
+    /**
+     * Returns the largest recorded latency in the given unit.
+     */
+    public long getMax(TimeUnit unit) {
+        return unit.convert(this.maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the latency at the given percentile in the given unit, that is the upper bound of the bucket that contains
+     * the value below which the given percentage of the recorded latencies fall.
+     *
+     * @param percentile the percentile, between {@code 0} and {@code 100}
+     * @param unit the unit of the returned value
+     * @return the latency, or {@code 0} if none have been recorded
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        Assert.isTrue(percentile >= 0 && percentile <= 100, "percentile must be between 0 and 100");
+        long count = this.totalCount.get();
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += this.counts.get(i);
+            if (seen >= target) {
+                return unit.convert(Math.min(highestValueAt(i), this.maxNanos.get()), TimeUnit.NANOSECONDS);
+            }
+        }
+        return unit.convert(this.maxNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Discards all recorded latencies. Latencies recorded concurrently may or may not be discarded.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            this.counts.set(i, 0);
+        }
+        this.totalCount.set(0);
+        this.totalNanos.set(0);
+        this.maxNanos.set(0);
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKET_COUNT - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT + subBucket;
+    }
+
+    static long highestValueAt(int index) {
+        if (index < SUB_BUCKET_COUNT) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKET_COUNT + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKET_COUNT + index % SUB_BUCKET_COUNT) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The request count, error count and latency distribution of the messages of one type sent to one operation of a
+ * destination.
+ *
+ * @author Jeremy Grelle
+ */
+public class MessageMetrics {
+
+    private final String destination;
+
+    private final String operation;
+
+    private final String messageType;
+
+    private final AtomicLong errorCount = new AtomicLong();
+
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    MessageMetrics(String destination, String operation, String messageType) {
+        this.destination = destination;
+        this.operation = operation;
+        this.messageType = messageType;
+    }
+
+    void record(long durationNanos, boolean failed) {
+        this.latencies.record(durationNanos);
+        if (failed) {
+            this.errorCount.incrementAndGet();
+        }
+    }
+
+    void reset() {
+        this.latencies.reset();
+        this.errorCount.set(0);
+    }
+
+    /**
+     * Returns the id of the destination, or {@code null} for messages without destination.
+     */
+    public String getDestination() {
+        return this.destination;
+    }
+
+    /**
+     * Returns the operation, or {@code null} for messages without operation.
+     */
+    public String getOperation() {
+        return this.operation;
+    }
+
+    /**
+     * Returns the type of the messages.
+     */
+    public String getMessageType() {
+        return this.messageType;
+    }
+
+    /**
+     * Returns the number of messages processed.
+     */
+    public long getRequestCount() {
+        return this.latencies.getCount();
+    }
+
+    /**
+     * Returns the number of messages whose processing failed.
+     */
+    public long getErrorCount() {
+        return this.errorCount.get();
+    }
+
+    /**
+     * Returns the distribution of the processing times of the messages.
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    /**
+     * Returns a one line summary of the metrics, with latencies in microseconds.
+     */
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder();
+        summary.append(this.destination).append('/').append(this.operation).append(" [").append(this.messageType).append("]: ");
+        summary.append("requests=").append(getRequestCount());
+        summary.append(", errors=").append(getErrorCount());
+        summary.append(", mean=").append(Math.round(this.latencies.getMean(TimeUnit.MICROSECONDS))).append("us");
+        summary.append(", p50=").append(this.latencies.getPercentile(50, TimeUnit.MICROSECONDS)).append("us");
+        summary.append(", p99=").append(this.latencies.getPercentile(99, TimeUnit.MICROSECONDS)).append("us");
+        summary.append(", max=").append(this.latencies.getMax(TimeUnit.MICROSECONDS)).append("us");
+        return summary.toString();
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.flex.core.MessageProcessingContext;
+import org.springframework.flex.core.ResourceHandlingMessageInterceptor;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * {@link ResourceHandlingMessageInterceptor} that records the processing time and outcome of every message with a
+ * {@link MessageMetricsRegistry}, per destination, operation and message type.
+ *
+ * <p>
+ * The time is measured from the preprocessing of the message by this interceptor to the completion of its processing, and
+ * therefore includes the interceptors that follow this one in the chain. The operation of a <code>RemotingMessage</code> is
+ * the name of the invoked method, and that of a <code>CommandMessage</code> the name of the command. A message counts as
+ * failed if its processing threw an exception or produced an <code>ErrorMessage</code>.
+ *
+ * <p>
+ * This interceptor will be automatically configured through the <code>message-metrics</code> attribute of the
+ * <code>message-broker</code> xml configuration namespace tag.
+ *
+ * @author Jeremy Grelle
+ */
+public class MessageMetricsInterceptor implements ResourceHandlingMessageInterceptor {
+
+    private final ConcurrentMap<Class<?>, String> messageTypes = new ConcurrentHashMap<Class<?>, String>();
+
+    private final MessageMetricsRegistry registry;
+
+    /**
+     * Creates a new interceptor recording to the given registry.
+     *
+     * @param registry the registry to record the message metrics with
+     */
+    public MessageMetricsInterceptor(MessageMetricsRegistry registry) {
+        Assert.notNull(registry, "registry must not be null");
+        this.registry = registry;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    public Message preProcess(MessageProcessingContext context, Message inputMessage) {
+        context.setStartTime(System.nanoTime());
+        return inputMessage;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    public Message postProcess(MessageProcessingContext context, Message inputMessage, Message outputMessage) {
+        return outputMessage;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    public void afterCompletion(MessageProcessingContext context, Message inputMessage, Message outputMessage, Exception ex) {
+        long startTime = context.getStartTime();
+        if (startTime == 0 || inputMessage == null) {
+            return;
+        }
+        long duration = System.nanoTime() - startTime;
+        boolean failed = ex != null || outputMessage instanceof ErrorMessage;
+        this.registry.recordMessage(inputMessage.getDestination(), getOperation(inputMessage), getMessageType(inputMessage), duration, failed);
+    }
+
+    static String getOperation(Message message) {
+        if (message instanceof RemotingMessage) {
+            return ((RemotingMessage) message).getOperation();
+        }
+        if (message instanceof CommandMessage) {
+            return CommandMessage.getOperationAsString(((CommandMessage) message).getOperation());
+        }
+        return null;
+    }
+
+    private String getMessageType(Message message) {
+        Class<?> messageClass = message.getClass();
+        String messageType = this.messageTypes.get(messageClass);
+        if (messageType == null) {
+            messageType = ClassUtils.getShortName(messageClass);
+            this.messageTypes.putIfAbsent(messageClass, messageType);
+        }
+        return messageType;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+/**
+ * Service provider interface for recording the metrics of the messages processed by the MessageBroker, allowing them to
+ * be forwarded to an external metrics library.
+ *
+ * <p>
+ * Implementations are called by the {@link MessageMetricsInterceptor} on the request processing thread for every message,
+ * and must therefore be thread-safe and return quickly.
+ *
+ * @author Jeremy Grelle
+ * @see DefaultMessageMetricsRegistry
+ */
+public interface MessageMetricsRegistry {
+
+    /**
+     * Records the processing of a message.
+     *
+     * @param destination the id of the destination of the message, or {@code null} if the message has none
+     * @param operation the operation requested by the message, or {@code null} if the message type has no operation
+     * @param messageType the type of the message, such as <code>RemotingMessage</code> or <code>CommandMessage</code>
+     * @param durationNanos the time taken to process the message in nanoseconds
+     * @param failed whether processing the message failed
+     */
+    void recordMessage(String destination, String operation, String messageType, long durationNanos, boolean failed);
+}
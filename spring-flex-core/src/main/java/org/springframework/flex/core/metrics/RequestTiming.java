@@ -0,0 +1,232 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import flex.messaging.messages.Message;
+
+/**
+ * Breakdown of the time spent processing a single HTTP request to the MessageBroker into its phases.
+ *
+ * <p>
+ * A timing is started for the current thread by the <code>MessageBrokerHandlerAdapter</code> when a slow request threshold
+ * is configured, and the message interceptor chain records each message of the request with it. The phases are:
+ * <ul>
+ * <li><em>decoding</em> - from the start of the request to the processing of its first message, mostly the AMF
+ * deserialization of the request</li>
+ * <li><em>interceptors</em> - the pre- and postprocessing of the messages by the message interceptors, including security
+ * checks</li>
+ * <li><em>invocation</em> - the routing of the messages to their service and the invocation of the service adapter</li>
+ * <li><em>encoding</em> - from the end of the processing of the last message to the end of the request, mostly the AMF
+ * serialization of the response</li>
+ * <li><em>other</em> - the remaining time, spent between the messages of a batched request</li>
+ * </ul>
+ *
+ * <p>
+ * Instances are confined to the thread processing the request and are not thread-safe.
+ *
+ * @author Jeremy Grelle
+ */
+public final class RequestTiming {
+
+    private static final int MAX_MESSAGE_NAMES = 10;
+
+    private static final ThreadLocal<RequestTiming> currentTiming = new ThreadLocal<RequestTiming>();
+
+    private final long startTime;
+
+    private String endpointId;
+
+    private long endTime;
+
+    private long firstMessageStartTime;
+
+    private long lastMessageEndTime;
+
+    private long messageStartTime;
+
+    private long invocationStartTime;
+
+    private long invocationEndTime;
+
+    private long interceptorNanos;
+
+    private long invocationNanos;
+
+    private int messageCount;
+
+    private final List<String> messageNames = new ArrayList<String>(1);
+
+    private RequestTiming(long startTime) {
+        this.startTime = startTime;
+    }
+
+    /**
+     * Starts timing a request on the current thread.
+     *
+     * @return the timing of the request
+     */
+    public static RequestTiming start() {
+        RequestTiming timing = new RequestTiming(System.nanoTime());
+        currentTiming.set(timing);
+        return timing;
+    }
+
+    /**
+     * Returns the timing of the request processed by the current thread.
+     *
+     * @return the timing, or {@code null} if the current request is not timed
+     */
+    public static RequestTiming current() {
+        return currentTiming.get();
+    }
+
+    /**
+     * Ends the timing of the request and removes it from the current thread.
+     */
+    public void finish() {
+        this.endTime = System.nanoTime();
+        if (currentTiming.get() == this) {
+            currentTiming.remove();
+        }
+    }
+
+    /**
+     * Sets the id of the endpoint that the request is sent to.
+     */
+    public void setEndpointId(String endpointId) {
+        this.endpointId = endpointId;
+    }
+
+    /**
+     * Records the start of the processing of a message by the message interceptors.
+     */
+    public void messageStarted(Message message) {
+        this.messageStartTime = System.nanoTime();
+        this.invocationStartTime = 0;
+        this.invocationEndTime = 0;
+        if (this.messageCount == 0) {
+            this.firstMessageStartTime = this.messageStartTime;
+        }
+        this.messageCount++;
+        if (this.messageNames.size() < MAX_MESSAGE_NAMES) {
+            String operation = MessageMetricsInterceptor.getOperation(message);
+            this.messageNames.add(operation != null ? message.getDestination() + "." + operation : message.getDestination());
+        }
+    }
+
+    /**
+     * Records the start of the invocation of the current message, once it has been preprocessed.
+     */
+    public void invocationStarted() {
+        this.invocationStartTime = System.nanoTime();
+    }
+
+    /**
+     * Records the end of the invocation of the current message, before it is postprocessed.
+     */
+    public void invocationFinished() {
+        this.invocationEndTime = System.nanoTime();
+        this.invocationNanos += this.invocationEndTime - this.invocationStartTime;
+    }
+
+    /**
+     * Records the end of the processing of the current message by the message interceptors.
+     */
+    public void messageFinished() {
+        this.lastMessageEndTime = System.nanoTime();
+        long messageNanos = this.lastMessageEndTime - this.messageStartTime;
+        if (this.invocationStartTime != 0 && this.invocationEndTime != 0) {
+            messageNanos -= this.invocationEndTime - this.invocationStartTime;
+        }
+        this.interceptorNanos += messageNanos;
+    }
+
+    /**
+     * Returns the number of messages processed in the request.
+     */
+    public int getMessageCount() {
+        return this.messageCount;
+    }
+
+    /**
+     * Returns the total time taken by the request in the given unit.
+     */
+    public long getTotal(TimeUnit unit) {
+        return unit.convert(getEnd() - this.startTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time taken to decode the request in the given unit.
+     */
+    public long getDecoding(TimeUnit unit) {
+        return this.messageCount == 0 ? 0 : unit.convert(this.firstMessageStartTime - this.startTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time taken by the message interceptors in the given unit.
+     */
+    public long getInterceptors(TimeUnit unit) {
+        return unit.convert(this.interceptorNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time taken by the invocation of the messages in the given unit.
+     */
+    public long getInvocation(TimeUnit unit) {
+        return unit.convert(this.invocationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the time taken to encode the response in the given unit.
+     */
+    public long getEncoding(TimeUnit unit) {
+        return this.messageCount == 0 ? 0 : unit.convert(getEnd() - this.lastMessageEndTime, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns a description of the request and of the time taken by each phase in milliseconds.
+     */
+    @Override
+    public String toString() {
+        long total = getEnd() - this.startTime;
+        long decoding = getDecoding(TimeUnit.NANOSECONDS);
+        long encoding = getEncoding(TimeUnit.NANOSECONDS);
+        long other = total - decoding - this.interceptorNanos - this.invocationNanos - encoding;
+        StringBuilder description = new StringBuilder();
+        description.append("Request to endpoint ").append(this.endpointId).append(" for ").append(this.messageNames);
+        if (this.messageCount > this.messageNames.size()) {
+            description.append(" and ").append(this.messageCount - this.messageNames.size()).append(" more messages");
+        }
+        description.append(" took ").append(toMillis(total)).append(" ms [decoding=").append(toMillis(decoding));
+        description.append(" ms, interceptors=").append(toMillis(this.interceptorNanos));
+        description.append(" ms, invocation=").append(toMillis(this.invocationNanos));
+        description.append(" ms, encoding=").append(toMillis(encoding));
+        description.append(" ms, other=").append(toMillis(other)).append(" ms]");
+        return description.toString();
+    }
+
+    private long getEnd() {
+        return this.endTime != 0 ? this.endTime : System.nanoTime();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.valueOf(Math.round(nanos / 100000.0) / 10.0);
+    }
+}
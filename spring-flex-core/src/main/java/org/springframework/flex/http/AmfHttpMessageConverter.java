@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,18 +16,27 @@
 
 package org.springframework.flex.http;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 
+import javax.servlet.http.HttpServletRequest;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.flex.http.AmfResponseCache.CachedResponse;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.converter.AbstractHttpMessageConverter;
 import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.util.Assert;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
 
 import flex.messaging.FlexContext;
 import flex.messaging.MessageException;
@@ -51,6 +60,13 @@ import flex.messaging.io.amf.AmfTrace;
  * <p>By default, this converter supports {@code application/x-amf}. This can be overridden by setting the
  * {@link #setSupportedMediaTypes(List) supportedMediaTypes} property.
  *
+ * <p>Responses are serialized into buffers obtained from an {@link AmfOutputBufferPool}, so that the buffers and serializers
+ * can be reused across requests while still setting an exact {@code Content-Length}.  Optionally, responses larger than the
+ * {@link #setStreamingThreshold(int) streamingThreshold} are written directly to the response body without a
+ * {@code Content-Length}, letting the container fall back to chunked transfer encoding.  Responses may also be compressed
+ * by setting an {@link #setResponseCompressor(AmfResponseCompressor) AmfResponseCompressor}, and cached in serialized form
+ * by setting an {@link #setResponseCache(AmfResponseCache) AmfResponseCache}.
+ *
  * @author Jeremy Grelle
  */
 public class AmfHttpMessageConverter extends AbstractHttpMessageConverter<Object> {
@@ -58,11 +74,80 @@ public class AmfHttpMessageConverter extends AbstractHttpMessageConverter<Object
     private static final String AMF_ERROR = "Could not read input message body as AMF";
 	private static final String ACTION_MSG_ERROR = "Could not read input message body as "+ActionMessage.class.getName();
 	private static final Log log = LogFactory.getLog(AmfHttpMessageConverter.class);
+	
+	private AmfOutputBufferPool bufferPool = new AmfOutputBufferPool();
+	
+	private int streamingThreshold = -1;
+	
+	private AmfResponseCompressor responseCompressor;
+	
+	private AmfResponseCache responseCache;
+	
+	private boolean lazyBodyDecoding = false;
     
     public AmfHttpMessageConverter() {
         super(MediaType.parseMediaType(MessageIOConstants.AMF_CONTENT_TYPE));
     }
 
+    /**
+     * Returns the pool of output buffers used when writing responses, for instance to inspect its statistics.
+     */
+    public AmfOutputBufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    /**
+     * Sets the pool of output buffers used when writing responses.  
+     *
+     * <p>By default, each converter uses its own {@link AmfOutputBufferPool} with default settings.
+     */
+    public void setBufferPool(AmfOutputBufferPool bufferPool) {
+        Assert.notNull(bufferPool, "bufferPool must not be null");
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Sets the size in bytes above which responses are streamed to the response body instead of being fully buffered.
+     * Responses up to this size are still buffered so that they are sent with an exact {@code Content-Length}.
+     *
+     * <p>Default is {@code -1}, which disables streaming.
+     */
+    public void setStreamingThreshold(int streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
+
+    /**
+     * Sets the compressor used to compress responses for clients that accept it.  The {@code Accept-Encoding} header is 
+     * read from the request bound to the current thread by Spring MVC.
+     *
+     * <p>By default, responses are not compressed.
+     */
+    public void setResponseCompressor(AmfResponseCompressor responseCompressor) {
+        this.responseCompressor = responseCompressor;
+    }
+
+    /**
+     * Sets the cache used to store the serialized form of responses for which the handler has set the
+     * {@link AmfResponseCache#CACHE_KEY_ATTRIBUTE} request attribute.  Cached responses carry an {@code ETag} and are
+     * answered with {@code 304 Not Modified} when the client's copy is current.
+     *
+     * <p>By default, responses are not cached.
+     */
+    public void setResponseCache(AmfResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Sets whether the bodies of an incoming {@link ActionMessage} are deserialized only when their data is first accessed.
+     * The envelope, headers and body URIs are always read immediately.
+     *
+     * <p>Default is {@code false}.  Errors while deserializing the data of a body are then reported as an
+     * {@link HttpMessageNotReadableException} when the data is accessed rather than when the message is read.
+     */
+    public void setLazyBodyDecoding(boolean lazyBodyDecoding) {
+        this.lazyBodyDecoding = lazyBodyDecoding;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -146,6 +231,15 @@ public class AmfHttpMessageConverter extends AbstractHttpMessageConverter<Object
 	}
 
 	private ActionMessage readActionMessage(HttpInputMessage inputMessage, AmfTrace trace) throws IOException {
+		if (this.lazyBodyDecoding) {
+			try {
+				return LazyActionMessageReader.read(inputMessage.getBody(), trace);
+			} catch (ClassNotFoundException cnfe) {
+				throw new HttpMessageNotReadableException(ACTION_MSG_ERROR, cnfe);
+			} catch (MessageException me) {
+				throw new HttpMessageNotReadableException(ACTION_MSG_ERROR, me);
+			}
+		}
     	AmfMessageDeserializer deserializer = new AmfMessageDeserializer();
     	deserializer.initialize(new SerializationContext(), inputMessage.getBody(), trace);
     	
@@ -164,39 +258,100 @@ public class AmfHttpMessageConverter extends AbstractHttpMessageConverter<Object
 	
 	private void writeActionMessage(ActionMessage message,
 			HttpOutputMessage outputMessage, AmfTrace trace) throws IOException {
-		AmfMessageSerializer serializer = new AmfMessageSerializer();
-		ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
-		serializer.setVersion(message.getVersion());
-		serializer.initialize(new SerializationContext(), outBuffer, trace);
+		AmfResponseWriter writer = createResponseWriter(outputMessage, getCurrentRequest(), this.streamingThreshold);
+		AmfOutputBuffer outBuffer = writer.getBuffer();
+		AmfMessageSerializer serializer = outBuffer.getMessageSerializer(message.getVersion(), trace);
         
 		try {
         	ActionContext context = new ActionContext();
         	context.setVersion(message.getVersion());
         	context.setResponseMessage(message);
         	serializer.writeMessage(message);
-        	outBuffer.flush();
-        	outBuffer.close();
-        	outputMessage.getHeaders().setContentLength(outBuffer.size());
-        	outBuffer.writeTo(outputMessage.getBody());
+        	outBuffer.getOutputStream().flush();
+        	writer.complete();
         } catch (SerializationException se) {
         	throw new HttpMessageNotWritableException("Could not write "+message+" as AMF message.", se);
+        } finally {
+        	writer.release();
         }
 	}
     
     private void writeObject(Object data, HttpOutputMessage outputMessage,
 			AmfTrace trace) throws IOException {
-    	ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
-    	Amf3Output serializer = new Amf3Output(new SerializationContext());
-    	serializer.setOutputStream(outBuffer);
-    	serializer.setDebugTrace(trace);
+        HttpServletRequest request = getCurrentRequest();
+        Object cacheKey = this.responseCache != null && request != null ? request.getAttribute(AmfResponseCache.CACHE_KEY_ATTRIBUTE) : null;
+        // Cacheable responses are never streamed, since the complete content has to be kept
+    	AmfResponseWriter writer = createResponseWriter(outputMessage, request, cacheKey != null ? -1 : this.streamingThreshold);
         try {
-        	serializer.writeObject(data);
-        	outBuffer.flush();
-        	outBuffer.close();
-        	outputMessage.getHeaders().setContentLength(outBuffer.size());
-        	outBuffer.writeTo(outputMessage.getBody());
+            if (cacheKey != null) {
+                outputMessage.getHeaders().setCacheControl("no-cache");
+                CachedResponse cached = this.responseCache.get(cacheKey);
+                if (cached == null) {
+                    serialize(data, writer.getBuffer(), trace);
+                    cached = this.responseCache.put(cacheKey, writer.getBuffer());
+                }
+                writer.complete(cached, request.getHeader(AmfResponseCache.IF_NONE_MATCH_HEADER));
+            } else {
+                serialize(data, writer.getBuffer(), trace);
+                writer.complete();
+            }
         } catch (SerializationException se) {
         	throw new HttpMessageNotWritableException("Could not write "+data+" as AMF message.", se);
+        } finally {
+        	writer.release();
         }
 	}
+    
+    private void serialize(Object data, AmfOutputBuffer outBuffer, AmfTrace trace) throws IOException {
+        Amf3Output serializer = outBuffer.getAmf3Output(trace);
+        serializer.writeObject(data);
+        serializer.flush();
+    }
+    
+    private AmfResponseWriter createResponseWriter(final HttpOutputMessage outputMessage, HttpServletRequest request, int streamingThreshold) {
+        String acceptEncoding = request != null ? request.getHeader(AmfResponseCompressor.ACCEPT_ENCODING_HEADER) : null;
+        return new AmfResponseWriter(this.bufferPool, streamingThreshold, this.responseCompressor, acceptEncoding) {
+
+            @Override
+            protected void setHeader(String name, String value) {
+                outputMessage.getHeaders().set(name, value);
+            }
+
+            @Override
+            protected void addHeader(String name, String value) {
+                outputMessage.getHeaders().add(name, value);
+            }
+
+            @Override
+            protected void setContentLength(int contentLength) {
+                outputMessage.getHeaders().setContentLength(contentLength);
+            }
+
+            @Override
+            protected OutputStream getBody() throws IOException {
+                return outputMessage.getBody();
+            }
+
+            @Override
+            protected boolean setNotModified() {
+                if (outputMessage instanceof ServerHttpResponse) {
+                    ((ServerHttpResponse) outputMessage).setStatusCode(HttpStatus.NOT_MODIFIED);
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    private HttpServletRequest getCurrentRequest() {
+        if (this.responseCompressor == null && this.responseCache == null) {
+            return null;
+        }
+        // HttpOutputMessage does not expose the request, so look up the current one
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes) {
+            return ((ServletRequestAttributes) attributes).getRequest();
+        }
+        return null;
+    }
 }
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.Amf3Output;
+import flex.messaging.io.amf.AmfMessageSerializer;
+import flex.messaging.io.amf.AmfTrace;
+
+/**
+ * Reusable in-memory buffer for serialized AMF content, along with an {@link Amf3Output} and an {@link AmfMessageSerializer}
+ * that write to it.
+ *
+ * <p>When {@link #enableStreaming(int, StreamingTarget) streaming} is enabled, content is buffered only until it exceeds the
+ * given threshold; the buffered bytes are then written to the target stream and all further output goes directly to that
+ * stream.  Serializers must write to {@link #getOutputStream()} rather than to the buffer itself for this to take effect.
+ *
+ * <p>Instances are obtained from and returned to an {@link AmfOutputBufferPool}, and must not be used by more than one thread
+ * at a time.
+ *
+ * @author Jeremy Grelle
+ */
+public final class AmfOutputBuffer extends ByteArrayOutputStream {
+
+    private final OutputStream outputStream = new ThresholdOutputStream();
+
+    private Amf3Output amf3Output;
+
+    private ReusableMessageSerializer messageSerializer;
+
+    private StreamingTarget streamingTarget;
+
+    private int streamingThreshold;
+
+    private OutputStream targetStream;
+
+    AmfOutputBuffer(int initialSize) {
+        super(initialSize);
+    }
+
+    /**
+     * Returns the stream serializers should write to, which buffers content or passes it on to the streaming target.
+     */
+    public OutputStream getOutputStream() {
+        return this.outputStream;
+    }
+
+    /**
+     * Returns an {@link Amf3Output} that writes to this buffer's {@link #getOutputStream() output stream}, creating it on 
+     * first use.
+     * 
+     * @param trace the trace to write debug output to, may be {@code null}
+     * @return the AMF3 serializer for this buffer
+     */
+    public Amf3Output getAmf3Output(AmfTrace trace) {
+        if (this.amf3Output == null) {
+            this.amf3Output = new Amf3Output(new SerializationContext());
+            this.amf3Output.setOutputStream(this.outputStream);
+        }
+        this.amf3Output.setDebugTrace(trace);
+        return this.amf3Output;
+    }
+
+    /**
+     * Returns an {@link AmfMessageSerializer} that writes to this buffer's {@link #getOutputStream() output stream}, creating
+     * it on first use.
+     * 
+     * @param version the AMF version of the message to write
+     * @param trace the trace to write debug output to, may be {@code null}
+     * @return the action message serializer for this buffer
+     */
+    public AmfMessageSerializer getMessageSerializer(int version, AmfTrace trace) {
+        if (this.messageSerializer == null) {
+            this.messageSerializer = new ReusableMessageSerializer();
+        }
+        this.messageSerializer.prepare(version, this.outputStream, trace);
+        return this.messageSerializer;
+    }
+
+    /**
+     * Switches the buffer to streaming mode, so that once more than {@code threshold} bytes have been written, content is
+     * passed on to the stream opened by the given target instead of being buffered.
+     * 
+     * @param threshold the maximum number of bytes to buffer
+     * @param target provides the stream to write to once the threshold is crossed
+     */
+    public void enableStreaming(int threshold, StreamingTarget target) {
+        this.streamingThreshold = threshold;
+        this.streamingTarget = target;
+    }
+
+    /**
+     * Whether the threshold has been crossed and content has been written to the streaming target rather than buffered.
+     */
+    public boolean isStreaming() {
+        return this.targetStream != null;
+    }
+
+    /**
+     * The current capacity of the underlying byte array.
+     */
+    public int capacity() {
+        return this.buf.length;
+    }
+
+    /**
+     * Clears the buffered content and any object references held by the serializer so that the buffer can be reused.
+     */
+    void recycle() {
+        if (this.amf3Output != null) {
+            this.amf3Output.reset();
+            this.amf3Output.setDebugTrace(null);
+        }
+        if (this.messageSerializer != null) {
+            this.messageSerializer.recycle();
+        }
+        this.streamingTarget = null;
+        this.targetStream = null;
+        reset();
+    }
+
+    private OutputStream getTargetStream(int length) throws IOException {
+        if (this.targetStream == null && this.streamingTarget != null && this.count + length > this.streamingThreshold) {
+            this.targetStream = this.streamingTarget.openStream();
+            writeTo(this.targetStream);
+            reset();
+        }
+        return this.targetStream;
+    }
+
+    /**
+     * Callback that provides the stream to write to once a streaming buffer's threshold has been crossed.
+     */
+    public interface StreamingTarget {
+
+        /**
+         * Opens the stream, typically the body of the response, that content should be written to.
+         * 
+         * @return the target stream
+         * @throws IOException if the stream cannot be opened
+         */
+        OutputStream openStream() throws IOException;
+    }
+
+    /**
+     * {@link AmfMessageSerializer} that keeps its {@link flex.messaging.io.amf.Amf0Output Amf0Output} across messages
+     * instead of creating a new one each time it is initialized.
+     */
+    private static final class ReusableMessageSerializer extends AmfMessageSerializer {
+
+        void prepare(int version, OutputStream out, AmfTrace trace) {
+            setVersion(version);
+            if (this.amfOut == null) {
+                initialize(new SerializationContext(), out, trace);
+            } else {
+                this.amfOut.setAvmPlus(version >= MessageIOConstants.AMF3);
+                this.amfOut.setDebugTrace(trace);
+                this.debugTrace = trace;
+                this.isDebug = trace != null;
+            }
+        }
+
+        void recycle() {
+            if (this.amfOut != null) {
+                this.amfOut.reset();
+                this.amfOut.setDebugTrace(null);
+            }
+            this.debugTrace = null;
+            this.isDebug = false;
+        }
+    }
+
+    private final class ThresholdOutputStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            OutputStream target = getTargetStream(1);
+            if (target != null) {
+                target.write(b);
+            } else {
+                AmfOutputBuffer.this.write(b);
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            OutputStream target = getTargetStream(len);
+            if (target != null) {
+                target.write(b, off, len);
+            } else {
+                AmfOutputBuffer.this.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (AmfOutputBuffer.this.targetStream != null) {
+                AmfOutputBuffer.this.targetStream.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.http;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounded, thread-safe pool of {@link AmfOutputBuffer AmfOutputBuffers} used by {@link AmfHttpMessageConverter} and
+ * {@link AmfView} to avoid allocating a new buffer and serializer for every response.
+ *
+ * <p>Buffers that have grown beyond the {@link #setMaxRetainedBufferSize(int) maxRetainedBufferSize} while serializing a
+ * large response are discarded rather than returned to the pool, so that the memory retained by an idle pool stays bounded
+ * by {@code maxPooledBuffers * maxRetainedBufferSize}.
+ *
+ * <p>A single pool may be shared between several converters and views.
+ *
+ * @author Jeremy Grelle
+ */
+public class AmfOutputBufferPool {
+
+    public static final int DEFAULT_MAX_POOLED_BUFFERS = 16;
+
+    public static final int DEFAULT_INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    public static final int DEFAULT_MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private final BlockingQueue<AmfOutputBuffer> buffers;
+
+    private volatile int initialBufferSize = DEFAULT_INITIAL_BUFFER_SIZE;
+
+    private volatile int maxRetainedBufferSize = DEFAULT_MAX_RETAINED_BUFFER_SIZE;
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+
+    private final AtomicLong createdCount = new AtomicLong();
+
+    private final AtomicLong discardedCount = new AtomicLong();
+
+    /**
+     * Creates a pool that retains up to {@link #DEFAULT_MAX_POOLED_BUFFERS} buffers.
+     */
+    public AmfOutputBufferPool() {
+        this(DEFAULT_MAX_POOLED_BUFFERS);
+    }
+
+    /**
+     * Creates a pool that retains up to the given number of buffers.
+     * 
+     * @param maxPooledBuffers the maximum number of idle buffers to retain
+     */
+    public AmfOutputBufferPool(int maxPooledBuffers) {
+        Assert.isTrue(maxPooledBuffers > 0, "maxPooledBuffers must be greater than 0");
+        this.buffers = new ArrayBlockingQueue<AmfOutputBuffer>(maxPooledBuffers);
+    }
+
+    /**
+     * Sets the initial size in bytes of newly created buffers.
+     * 
+     * <p>Default is 8 KB.
+     */
+    public void setInitialBufferSize(int initialBufferSize) {
+        Assert.isTrue(initialBufferSize > 0, "initialBufferSize must be greater than 0");
+        this.initialBufferSize = initialBufferSize;
+    }
+
+    /**
+     * Sets the maximum capacity in bytes of a buffer that will be returned to the pool.  Larger buffers are left for garbage
+     * collection once the response has been written.
+     * 
+     * <p>Default is 1 MB.
+     */
+    public void setMaxRetainedBufferSize(int maxRetainedBufferSize) {
+        this.maxRetainedBufferSize = maxRetainedBufferSize;
+    }
+
+    /**
+     * Takes an idle buffer from the pool, or creates a new one if none is available.
+     * 
+     * @return an empty buffer
+     */
+    public AmfOutputBuffer acquire() {
+        this.acquiredCount.incrementAndGet();
+        AmfOutputBuffer buffer = this.buffers.poll();
+        if (buffer == null) {
+            this.createdCount.incrementAndGet();
+            buffer = new AmfOutputBuffer(this.initialBufferSize);
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool once its content has been written.
+     * 
+     * @param buffer the buffer obtained from {@link #acquire()}
+     */
+    public void release(AmfOutputBuffer buffer) {
+        if (buffer.capacity() > this.maxRetainedBufferSize) {
+            this.discardedCount.incrementAndGet();
+            return;
+        }
+        buffer.recycle();
+        if (!this.buffers.offer(buffer)) {
+            this.discardedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * The number of buffers handed out by this pool.
+     */
+    public long getAcquiredCount() {
+        return this.acquiredCount.get();
+    }
+
+    /**
+     * The number of buffers this pool had to create because no idle buffer was available.
+     */
+    public long getCreatedCount() {
+        return this.createdCount.get();
+    }
+
+    /**
+     * The number of buffers handed out that were reused from the pool.
+     */
+    public long getReusedCount() {
+        return this.acquiredCount.get() - this.createdCount.get();
+    }
+
+    /**
+     * The number of released buffers that were not retained, either because they exceeded the maximum retained size or
+     * because the pool was full.
+     */
+    public long getDiscardedCount() {
+        return this.discardedCount.get();
+    }
+
+    /**
+     * The number of idle buffers currently held by the pool.
+     */
+    public int getPooledCount() {
+        return this.buffers.size();
+    }
+}
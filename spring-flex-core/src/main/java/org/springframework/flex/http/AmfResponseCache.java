@@ -0,0 +1,308 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+import org.springframework.util.DigestUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Size-bounded cache of serialized AMF responses for {@link AmfView} and {@link AmfHttpMessageConverter}.
+ *
+ * <p>A response is cached when the handler sets a cache key as the {@link #CACHE_KEY_ATTRIBUTE} request attribute.  Later
+ * requests with the same key are answered with a copy of the cached bytes instead of serializing the model again, and clients
+ * that send an {@code If-None-Match} header matching the cached entity tag receive a {@code 304 Not Modified} response.
+ * Each content coding of a response has its own entity tag, and the compressed content is kept alongside the cached bytes
+ * the first time a client accepting that coding requests it, so that it is not compressed again on later hits.
+ * It is up to the application to choose keys that identify the content, and to {@link #evict(Object) evict} entries when 
+ * the underlying data changes.
+ *
+ * <p>Entries are evicted in least recently used order once either the {@link #setMaxEntries(int) maxEntries} or the
+ * {@link #setMaxSize(long) maxSize} limit is exceeded, and expire after the {@link #setTimeToLive(long) timeToLive}.
+ *
+ * @author Jeremy Grelle
+ */
+public class AmfResponseCache {
+
+    /**
+     * Name of the request attribute holding the key under which the current response should be cached.
+     */
+    public static final String CACHE_KEY_ATTRIBUTE = AmfResponseCache.class.getName() + ".CACHE_KEY";
+
+    public static final String ETAG_HEADER = "ETag";
+
+    public static final String IF_NONE_MATCH_HEADER = "If-None-Match";
+
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    public static final long DEFAULT_MAX_SIZE = 16 * 1024 * 1024;
+
+    private final LinkedHashMap<Object, CachedResponse> entries = new LinkedHashMap<Object, CachedResponse>(16, 0.75f, true);
+
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private long maxSize = DEFAULT_MAX_SIZE;
+
+    private long timeToLive = 0;
+
+    private long size = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Sets the maximum number of cached responses.
+     *
+     * <p>Default is 256.
+     */
+    public void setMaxEntries(int maxEntries) {
+        Assert.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Sets the maximum combined size in bytes of the cached responses.  Responses larger than this are never cached.  Only 
+     * the uncompressed content is counted; the compressed variants of a response are kept in addition to it.
+     *
+     * <p>Default is 16 MB.
+     */
+    public void setMaxSize(long maxSize) {
+        Assert.isTrue(maxSize > 0, "maxSize must be greater than 0");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a cached response expires.
+     *
+     * <p>Default is {@code 0}, meaning that responses remain cached until evicted.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Returns the cached response for the given key.
+     *
+     * @param key the cache key
+     * @return the cached response, or {@code null} if there is none or it has expired
+     */
+    public CachedResponse get(Object key) {
+        CachedResponse cached;
+        synchronized (this.entries) {
+            cached = this.entries.get(key);
+            if (cached != null && cached.isExpired(System.currentTimeMillis())) {
+                remove(key);
+                cached = null;
+            }
+        }
+        if (cached != null) {
+            this.hitCount.incrementAndGet();
+        } else {
+            this.missCount.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * Caches the serialized content under the given key.
+     *
+     * @param key the cache key
+     * @param content the serialized response
+     * @return the cached response
+     */
+    public CachedResponse put(Object key, ByteArrayOutputStream content) {
+        long expiresAt = this.timeToLive > 0 ? System.currentTimeMillis() + this.timeToLive : Long.MAX_VALUE;
+        CachedResponse cached = new CachedResponse(content.toByteArray(), expiresAt);
+        if (cached.getContentLength() > this.maxSize) {
+            return cached;
+        }
+        synchronized (this.entries) {
+            remove(key);
+            this.entries.put(key, cached);
+            this.size += cached.getContentLength();
+            Iterator<Map.Entry<Object, CachedResponse>> eldest = this.entries.entrySet().iterator();
+            while (this.entries.size() > this.maxEntries || this.size > this.maxSize) {
+                this.size -= eldest.next().getValue().getContentLength();
+                eldest.remove();
+            }
+        }
+        return cached;
+    }
+
+    /**
+     * Removes the response cached under the given key, if any.
+     */
+    public void evict(Object key) {
+        synchronized (this.entries) {
+            remove(key);
+        }
+    }
+
+    /**
+     * Removes all cached responses.
+     */
+    public void clear() {
+        synchronized (this.entries) {
+            this.entries.clear();
+            this.size = 0;
+        }
+    }
+
+    /**
+     * The number of requests answered from the cache.
+     */
+    public long getHitCount() {
+        return this.hitCount.get();
+    }
+
+    /**
+     * The number of requests for which no cached response was available.
+     */
+    public long getMissCount() {
+        return this.missCount.get();
+    }
+
+    /**
+     * The combined size in bytes of the cached responses.
+     */
+    public long getSize() {
+        synchronized (this.entries) {
+            return this.size;
+        }
+    }
+
+    private void remove(Object key) {
+        CachedResponse removed = this.entries.remove(key);
+        if (removed != null) {
+            this.size -= removed.getContentLength();
+        }
+    }
+
+    /**
+     * A serialized AMF response along with its entity tag.
+     */
+    public static final class CachedResponse {
+
+        private final byte[] content;
+
+        private final String eTag;
+
+        private final ConcurrentMap<String, byte[]> encodedContent = new ConcurrentHashMap<String, byte[]>(2);
+
+        private final long expiresAt;
+
+        private CachedResponse(byte[] content, long expiresAt) {
+            this.content = content;
+            this.eTag = "\"" + DigestUtils.md5DigestAsHex(content) + "\"";
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * The quoted entity tag identifying the uncompressed content.
+         */
+        public String getETag() {
+            return this.eTag;
+        }
+
+        /**
+         * The quoted entity tag identifying the content in the given content coding, which is the tag of the uncompressed 
+         * content suffixed with the coding.
+         *
+         * @param contentEncoding the content coding, or {@code null} for the uncompressed content
+         */
+        public String getETag(String contentEncoding) {
+            if (contentEncoding == null) {
+                return this.eTag;
+            }
+            return this.eTag.substring(0, this.eTag.length() - 1) + "-" + contentEncoding + "\"";
+        }
+
+        public int getContentLength() {
+            return this.content.length;
+        }
+
+        /**
+         * Copies the content to the given stream.
+         */
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(this.content);
+        }
+
+        /**
+         * Whether the given {@code If-None-Match} header matches this response's entity tag.
+         *
+         * @param ifNoneMatch the header value, may be {@code null}
+         */
+        public boolean matches(String ifNoneMatch) {
+            return matches(ifNoneMatch, null);
+        }
+
+        /**
+         * Whether the given {@code If-None-Match} header matches the entity tag of this response in the given content coding.
+         *
+         * @param ifNoneMatch the header value, may be {@code null}
+         * @param contentEncoding the content coding, or {@code null} for the uncompressed content
+         */
+        public boolean matches(String ifNoneMatch, String contentEncoding) {
+            if (!StringUtils.hasText(ifNoneMatch)) {
+                return false;
+            }
+            String eTag = getETag(contentEncoding);
+            for (String tag : StringUtils.tokenizeToStringArray(ifNoneMatch, ",")) {
+                if ("*".equals(tag) || eTag.equals(tag) || ("W/" + eTag).equals(tag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the content in the given content coding, compressing it on first use for that coding.
+         */
+        byte[] getContent(String contentEncoding, AmfResponseCompressor compressor) throws IOException {
+            if (contentEncoding == null) {
+                return this.content;
+            }
+            byte[] encoded = this.encodedContent.get(contentEncoding);
+            if (encoded == null) {
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(this.content.length / 2);
+                compressor.compress(this.content, compressed, contentEncoding);
+                encoded = compressed.toByteArray();
+                byte[] existing = this.encodedContent.putIfAbsent(contentEncoding, encoded);
+                if (existing != null) {
+                    encoded = existing;
+                }
+            }
+            return encoded;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= this.expiresAt;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/**
+ * Compresses AMF responses using the {@code gzip} or {@code deflate} content coding, as negotiated from the request's
+ * {@code Accept-Encoding} header.
+ *
+ * <p>An instance may be set on {@link AmfView}, {@link AmfHttpMessageConverter} and 
+ * {@link org.springframework.flex.servlet.MessageBrokerHandlerAdapter MessageBrokerHandlerAdapter}.  Responses smaller than
+ * the {@link #setMinimumSize(int) minimumSize} are sent uncompressed, since compressing them saves little and costs CPU time.
+ *
+ * @author Jeremy Grelle
+ */
+public class AmfResponseCompressor {
+
+    public static final String GZIP = "gzip";
+
+    public static final String DEFLATE = "deflate";
+
+    public static final String ACCEPT_ENCODING_HEADER = "Accept-Encoding";
+
+    public static final String CONTENT_ENCODING_HEADER = "Content-Encoding";
+
+    public static final String VARY_HEADER = "Vary";
+
+    public static final int DEFAULT_MINIMUM_SIZE = 1024;
+
+    private static final int STREAM_BUFFER_SIZE = 8192;
+
+    private int minimumSize = DEFAULT_MINIMUM_SIZE;
+
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Sets the size in bytes below which responses are not compressed.
+     *
+     * <p>Default is 1024.
+     */
+    public void setMinimumSize(int minimumSize) {
+        this.minimumSize = minimumSize;
+    }
+
+    /**
+     * Sets the compression level, from {@code 0} (no compression) to {@code 9} (best compression).
+     *
+     * <p>Default is {@link Deflater#DEFAULT_COMPRESSION}.
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        Assert.isTrue(compressionLevel == Deflater.DEFAULT_COMPRESSION || (compressionLevel >= Deflater.NO_COMPRESSION
+            && compressionLevel <= Deflater.BEST_COMPRESSION), "Invalid compression level " + compressionLevel);
+        this.compressionLevel = compressionLevel;
+    }
+
+    /**
+     * Whether a response of the given size should be compressed.
+     *
+     * @param contentLength the uncompressed size of the response in bytes
+     */
+    public boolean isCompressible(long contentLength) {
+        return contentLength >= this.minimumSize;
+    }
+
+    /**
+     * Selects the content coding to use for a request with the given {@code Accept-Encoding} header.  {@code gzip} is preferred
+     * over {@code deflate} when the client accepts both.
+     *
+     * @param acceptEncoding the value of the request's {@code Accept-Encoding} header, may be {@code null}
+     * @return {@link #GZIP}, {@link #DEFLATE}, or {@code null} if the client accepts neither
+     */
+    public String negotiateContentEncoding(String acceptEncoding) {
+        if (!StringUtils.hasText(acceptEncoding)) {
+            return null;
+        }
+        Boolean gzip = null;
+        Boolean deflate = null;
+        boolean wildcard = false;
+        for (String coding : StringUtils.tokenizeToStringArray(acceptEncoding, ",")) {
+            String[] params = StringUtils.tokenizeToStringArray(coding, ";");
+            String name = params[0].toLowerCase(Locale.ENGLISH);
+            boolean accepted = true;
+            for (int i = 1; i < params.length; i++) {
+                if (params[i].startsWith("q=")) {
+                    accepted = isAcceptableQuality(params[i].substring(2));
+                }
+            }
+            if (GZIP.equals(name) || "x-gzip".equals(name)) {
+                gzip = accepted;
+            } else if (DEFLATE.equals(name)) {
+                deflate = accepted;
+            } else if ("*".equals(name)) {
+                wildcard = accepted;
+            }
+        }
+        if (gzip != null ? gzip : wildcard) {
+            return GZIP;
+        }
+        if (deflate != null ? deflate : wildcard) {
+            return DEFLATE;
+        }
+        return null;
+    }
+
+    /**
+     * Wraps the given stream so that content written to it is compressed using the given content coding.  Callers must
+     * invoke {@link DeflaterOutputStream#finish()} once all content has been written, which also releases the native 
+     * resources held by the compressor, or {@link #discardCompressingStream(DeflaterOutputStream)} if the content cannot be
+     * completed; the target stream is left open.
+     *
+     * @param out the stream to write compressed content to
+     * @param contentEncoding {@link #GZIP} or {@link #DEFLATE}
+     * @return the compressing stream
+     * @throws IOException if the gzip header cannot be written
+     */
+    public DeflaterOutputStream createCompressingStream(OutputStream out, String contentEncoding) throws IOException {
+        if (GZIP.equals(contentEncoding)) {
+            return new GzipStream(out, this.compressionLevel);
+        }
+        Assert.isTrue(DEFLATE.equals(contentEncoding), "Unsupported content encoding " + contentEncoding);
+        return new DeflateStream(out, this.compressionLevel);
+    }
+
+    /**
+     * Releases the native resources held by a compressing stream that will not be finished, for instance because writing its
+     * content failed.  Nothing further is written to the target stream.  Has no effect on a stream that has already been
+     * finished or discarded.
+     *
+     * @param compressingStream a stream created by {@link #createCompressingStream(OutputStream, String)}
+     */
+    public void discardCompressingStream(DeflaterOutputStream compressingStream) {
+        Assert.isInstanceOf(CompressingStream.class, compressingStream);
+        ((CompressingStream) compressingStream).discard();
+    }
+
+    /**
+     * Compresses the content of the given buffer into the given stream.
+     *
+     * @param content the uncompressed content
+     * @param out the stream to write compressed content to
+     * @param contentEncoding {@link #GZIP} or {@link #DEFLATE}
+     * @throws IOException if the content cannot be written
+     */
+    public void compress(ByteArrayOutputStream content, OutputStream out, String contentEncoding) throws IOException {
+        DeflaterOutputStream compressingStream = createCompressingStream(out, contentEncoding);
+        content.writeTo(compressingStream);
+        compressingStream.finish();
+    }
+
+    /**
+     * Compresses the given content into the given stream.
+     *
+     * @param content the uncompressed content
+     * @param out the stream to write compressed content to
+     * @param contentEncoding {@link #GZIP} or {@link #DEFLATE}
+     * @throws IOException if the content cannot be written
+     */
+    public void compress(byte[] content, OutputStream out, String contentEncoding) throws IOException {
+        DeflaterOutputStream compressingStream = createCompressingStream(out, contentEncoding);
+        compressingStream.write(content);
+        compressingStream.finish();
+    }
+
+    private static boolean isAcceptableQuality(String quality) {
+        try {
+            return Double.parseDouble(quality) > 0;
+        } catch (NumberFormatException ex) {
+            return false;
+        }
+    }
+
+    private interface CompressingStream {
+
+        void discard();
+    }
+
+    private static final class GzipStream extends GZIPOutputStream implements CompressingStream {
+
+        private boolean finished = false;
+
+        private GzipStream(OutputStream out, int level) throws IOException {
+            super(out, STREAM_BUFFER_SIZE);
+            this.def.setLevel(level);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!this.finished) {
+                this.finished = true;
+                try {
+                    super.finish();
+                } finally {
+                    this.def.end();
+                }
+            }
+        }
+
+        public void discard() {
+            if (!this.finished) {
+                this.finished = true;
+                this.def.end();
+            }
+        }
+    }
+
+    private static final class DeflateStream extends DeflaterOutputStream implements CompressingStream {
+
+        private boolean finished = false;
+
+        private DeflateStream(OutputStream out, int level) {
+            super(out, new Deflater(level), STREAM_BUFFER_SIZE);
+        }
+
+        @Override
+        public void finish() throws IOException {
+            if (!this.finished) {
+                this.finished = true;
+                try {
+                    super.finish();
+                } finally {
+                    this.def.end();
+                }
+            }
+        }
+
+        public void discard() {
+            if (!this.finished) {
+                this.finished = true;
+                this.def.end();
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.http;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+
+import org.springframework.flex.http.AmfOutputBuffer.StreamingTarget;
+import org.springframework.flex.http.AmfResponseCache.CachedResponse;
+
+/**
+ * Writes serialized AMF content to an HTTP response, shared by {@link AmfView} and {@link AmfHttpMessageConverter}.
+ *
+ * <p>Content is serialized into a pooled {@link AmfOutputBuffer}, streamed once the streaming threshold is crossed (if one is
+ * set), and compressed if a compressor is configured and the client accepts a supported content coding.  Responses taken 
+ * from an {@link AmfResponseCache} are written directly from the cached content.
+ *
+ * @author Jeremy Grelle
+ */
+abstract class AmfResponseWriter implements StreamingTarget {
+
+    private final AmfOutputBufferPool bufferPool;
+
+    private final AmfResponseCompressor compressor;
+
+    private final String contentEncoding;
+
+    private final AmfOutputBuffer buffer;
+
+    private DeflaterOutputStream compressingStream;
+
+    AmfResponseWriter(AmfOutputBufferPool bufferPool, int streamingThreshold, AmfResponseCompressor compressor, String acceptEncoding) {
+        this.bufferPool = bufferPool;
+        this.compressor = compressor;
+        this.contentEncoding = compressor != null ? compressor.negotiateContentEncoding(acceptEncoding) : null;
+        this.buffer = bufferPool.acquire();
+        if (streamingThreshold >= 0) {
+            this.buffer.enableStreaming(streamingThreshold, this);
+        }
+    }
+
+    /**
+     * The buffer to serialize the response into.
+     */
+    AmfOutputBuffer getBuffer() {
+        return this.buffer;
+    }
+
+    /**
+     * Opens the response body once the streaming threshold has been crossed.  Streamed content is compressed whenever the
+     * client accepts it, since its size is known to exceed the threshold.
+     */
+    public OutputStream openStream() throws IOException {
+        if (this.contentEncoding == null) {
+            addVaryHeaderIfNecessary();
+            return getBody();
+        }
+        setEncodingHeaders();
+        this.compressingStream = this.compressor.createCompressingStream(getBody(), this.contentEncoding);
+        return this.compressingStream;
+    }
+
+    /**
+     * Writes the buffered content, or finishes the streamed content, once serialization is complete.
+     */
+    void complete() throws IOException {
+        if (this.buffer.isStreaming()) {
+            if (this.compressingStream != null) {
+                this.compressingStream.finish();
+            }
+            return;
+        }
+        if (this.contentEncoding != null && this.compressor.isCompressible(this.buffer.size())) {
+            AmfOutputBuffer compressed = this.bufferPool.acquire();
+            try {
+                this.compressor.compress(this.buffer, compressed, this.contentEncoding);
+                setEncodingHeaders();
+                setContentLength(compressed.size());
+                compressed.writeTo(getBody());
+            } finally {
+                this.bufferPool.release(compressed);
+            }
+            return;
+        }
+        addVaryHeaderIfNecessary();
+        setContentLength(this.buffer.size());
+        this.buffer.writeTo(getBody());
+    }
+
+    /**
+     * Writes a cached response, or a {@code 304 Not Modified} response if the client already holds the current content.  The
+     * content is written from the cached response in the negotiated content coding, whose compressed form is kept by the 
+     * cached response, and carries the entity tag of that coding.
+     */
+    void complete(CachedResponse cached, String ifNoneMatch) throws IOException {
+        String encoding = this.contentEncoding != null && this.compressor.isCompressible(cached.getContentLength()) ? this.contentEncoding : null;
+        setHeader(AmfResponseCache.ETAG_HEADER, cached.getETag(encoding));
+        addVaryHeaderIfNecessary();
+        if (cached.matches(ifNoneMatch, encoding) && setNotModified()) {
+            return;
+        }
+        if (encoding != null) {
+            setHeader(AmfResponseCompressor.CONTENT_ENCODING_HEADER, encoding);
+        }
+        byte[] content = cached.getContent(encoding, this.compressor);
+        setContentLength(content.length);
+        getBody().write(content);
+    }
+
+    /**
+     * Returns the buffer to the pool, and releases the compressor of a streamed response that was not completed because 
+     * serialization failed.
+     */
+    void release() {
+        if (this.compressingStream != null) {
+            this.compressor.discardCompressingStream(this.compressingStream);
+        }
+        this.bufferPool.release(this.buffer);
+    }
+
+    private void setEncodingHeaders() {
+        setHeader(AmfResponseCompressor.CONTENT_ENCODING_HEADER, this.contentEncoding);
+        addVaryHeaderIfNecessary();
+    }
+
+    private void addVaryHeaderIfNecessary() {
+        // the response depends on Accept-Encoding whenever compression is configured, even if this one is not compressed
+        if (this.compressor != null) {
+            addHeader(AmfResponseCompressor.VARY_HEADER, AmfResponseCompressor.ACCEPT_ENCODING_HEADER);
+        }
+    }
+
+    protected abstract void setHeader(String name, String value);
+
+    protected abstract void addHeader(String name, String value);
+
+    protected abstract void setContentLength(int contentLength);
+
+    protected abstract OutputStream getBody() throws IOException;
+
+    /**
+     * Sets the {@code 304 Not Modified} status on the response.
+     * 
+     * @return {@code false} if the status cannot be set, in which case the full response is written
+     */
+    protected abstract boolean setNotModified();
+}
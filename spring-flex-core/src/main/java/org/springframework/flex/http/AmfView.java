@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,7 +16,8 @@
 
 package org.springframework.flex.http;
 
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -26,6 +27,8 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.flex.http.AmfResponseCache.CachedResponse;
+import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.servlet.View;
@@ -44,6 +47,13 @@ import flex.messaging.io.amf.AmfTrace;
  * encoded as AMF. For cases where the contents of the map need to be filtered, users may specify a specific set of
  * model attributes to encode via the {@link #setRenderedAttributes(Set) renderedAttributes} property.
  *
+ * <p>The model is serialized into a buffer obtained from an {@link AmfOutputBufferPool}, which may be shared between views
+ * via the {@link #setBufferPool(AmfOutputBufferPool) bufferPool} property.  Models that serialize to more than the
+ * {@link #setStreamingThreshold(int) streamingThreshold} are optionally streamed to the response without a
+ * {@code Content-Length}, and may be compressed by setting an 
+ * {@link #setResponseCompressor(AmfResponseCompressor) AmfResponseCompressor}.  The serialized form of frequently requested
+ * models may be cached by setting an {@link #setResponseCache(AmfResponseCache) AmfResponseCache}.
+ *
  * @author Jeremy Grelle
  */
 public class AmfView extends AbstractView {
@@ -56,6 +66,14 @@ public class AmfView extends AbstractView {
 
     private boolean disableCaching = true;
     
+    private AmfOutputBufferPool bufferPool = new AmfOutputBufferPool();
+    
+    private int streamingThreshold = -1;
+    
+    private AmfResponseCompressor responseCompressor;
+    
+    private AmfResponseCache responseCache;
+    
     public AmfView() {
         setContentType(DEFAULT_CONTENT_TYPE);
     }
@@ -84,6 +102,53 @@ public class AmfView extends AbstractView {
         this.disableCaching = disableCaching;
     }
     
+    /**
+     * Returns the pool of output buffers used when rendering, for instance to inspect its statistics.
+     */
+    public AmfOutputBufferPool getBufferPool() {
+        return this.bufferPool;
+    }
+
+    /**
+     * Sets the pool of output buffers used when rendering.
+     *
+     * <p>By default, each view uses its own {@link AmfOutputBufferPool} with default settings.
+     */
+    public void setBufferPool(AmfOutputBufferPool bufferPool) {
+        Assert.notNull(bufferPool, "bufferPool must not be null");
+        this.bufferPool = bufferPool;
+    }
+    
+    /**
+     * Sets the size in bytes above which the rendered model is streamed to the response instead of being fully buffered.
+     * Smaller responses are still buffered so that they are sent with an exact {@code Content-Length}.
+     *
+     * <p>Default is {@code -1}, which disables streaming.
+     */
+    public void setStreamingThreshold(int streamingThreshold) {
+        this.streamingThreshold = streamingThreshold;
+    }
+    
+    /**
+     * Sets the compressor used to compress the rendered model for clients that accept it.
+     *
+     * <p>By default, responses are not compressed.
+     */
+    public void setResponseCompressor(AmfResponseCompressor responseCompressor) {
+        this.responseCompressor = responseCompressor;
+    }
+    
+    /**
+     * Sets the cache used to store the serialized form of models for which the handler has set the
+     * {@link AmfResponseCache#CACHE_KEY_ATTRIBUTE} request attribute.  Cached responses carry an {@code ETag} and are
+     * answered with {@code 304 Not Modified} when the client's copy is current.
+     *
+     * <p>By default, responses are not cached.
+     */
+    public void setResponseCache(AmfResponseCache responseCache) {
+        this.responseCache = responseCache;
+    }
+    
     /**
      * {@inheritDoc}
      */
@@ -112,20 +177,28 @@ public class AmfView extends AbstractView {
                 trace = new AmfTrace();
             }
             
-            ByteArrayOutputStream outBuffer = new ByteArrayOutputStream();
-            SerializationContext context = new SerializationContext();
-            Amf3Output out = new Amf3Output(context);
-            if (trace != null) {
-            	out.setDebugTrace(trace);
+            Object cacheKey = this.responseCache != null ? request.getAttribute(AmfResponseCache.CACHE_KEY_ATTRIBUTE) : null;
+            // Cacheable responses are never streamed, since the complete content has to be kept
+            AmfResponseWriter writer = createResponseWriter(request, response, cacheKey != null ? -1 : this.streamingThreshold);
+            try {
+                if (cacheKey != null) {
+                    if (this.disableCaching) {
+                        // Let the client keep the response, but revalidate it using the ETag
+                        response.setHeader("Cache-Control", "no-cache");
+                    }
+                    CachedResponse cached = this.responseCache.get(cacheKey);
+                    if (cached == null) {
+                        serialize(value, writer.getBuffer(), trace);
+                        cached = this.responseCache.put(cacheKey, writer.getBuffer());
+                    }
+                    writer.complete(cached, request.getHeader(AmfResponseCache.IF_NONE_MATCH_HEADER));
+                } else {
+                    serialize(value, writer.getBuffer(), trace);
+                    writer.complete();
+                }
+            } finally {
+                writer.release();
             }
-            out.setOutputStream(outBuffer);
-            out.writeObject(value);
-            out.flush();
-            
-            outBuffer.flush();
-            
-            response.setContentLength(outBuffer.size());
-            outBuffer.writeTo(response.getOutputStream());
             
             if (log.isDebugEnabled()) {
                 log.debug("Wrote AMF message:\n" + trace);
@@ -136,6 +209,44 @@ public class AmfView extends AbstractView {
         }
     }
     
+    private void serialize(Object value, AmfOutputBuffer outBuffer, AmfTrace trace) throws IOException {
+        Amf3Output out = outBuffer.getAmf3Output(trace);
+        out.writeObject(value);
+        out.flush();
+    }
+    
+    private AmfResponseWriter createResponseWriter(HttpServletRequest request, final HttpServletResponse response, int streamingThreshold) {
+        return new AmfResponseWriter(this.bufferPool, streamingThreshold, this.responseCompressor, 
+            request.getHeader(AmfResponseCompressor.ACCEPT_ENCODING_HEADER)) {
+
+            @Override
+            protected void setHeader(String name, String value) {
+                response.setHeader(name, value);
+            }
+
+            @Override
+            protected void addHeader(String name, String value) {
+                response.addHeader(name, value);
+            }
+
+            @Override
+            protected void setContentLength(int contentLength) {
+                response.setContentLength(contentLength);
+            }
+
+            @Override
+            protected OutputStream getBody() throws IOException {
+                return response.getOutputStream();
+            }
+
+            @Override
+            protected boolean setNotModified() {
+                response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return true;
+            }
+        };
+    }
+    
     /**
      * Filters out undesired attributes from the given model. The return value can be either another {@link Map}, or a
      * single value object.  If only a single attribute is present in the model map, that value will be returned instead 
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import flex.messaging.MessageException;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.RecoverableSerializationException;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.ActionMessage;
+import flex.messaging.io.amf.Amf0Input;
+import flex.messaging.io.amf.AmfTrace;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.io.amf.MessageHeader;
+import flex.messaging.messages.Message;
+
+/**
+ * Reads an {@link ActionMessage} envelope without deserializing the data of its bodies.
+ *
+ * <p>The headers, and the target and response URIs of each body, are read immediately.  The data of each body is kept as raw
+ * AMF and only deserialized when it is first accessed, so that requests that are rejected or only partially inspected do
+ * not pay for building their object graphs.  Bodies whose length is not given in the envelope are deserialized immediately,
+ * as are any bodies that follow them, and all bodies are deserialized immediately when a trace is given so that it is complete.
+ *
+ * <p>As with BlazeDS's {@link flex.messaging.io.amf.AmfMessageDeserializer AmfMessageDeserializer}, a body whose data cannot be
+ * deserialized because of a {@link RecoverableSerializationException} gets an error message as its data instead, so that only
+ * that body fails.
+ *
+ * @author Jeremy Grelle
+ */
+final class LazyActionMessageReader {
+
+    private static final int UNKNOWN_LENGTH = -1;
+
+    private static final String MESSAGE_ENCODING_ERROR_CODE = "Client.Message.Encoding";
+
+    private LazyActionMessageReader() {
+    }
+
+    static ActionMessage read(InputStream inputStream, AmfTrace trace) throws IOException, ClassNotFoundException {
+        DataInputStream in = new DataInputStream(inputStream);
+        Amf0Input eagerInput = new Amf0Input(new SerializationContext());
+        eagerInput.setInputStream(in);
+        eagerInput.setDebugTrace(trace);
+
+        ActionMessage message = new ActionMessage();
+        if (trace != null) {
+            trace.startRequest("Deserializing AMF/HTTP request");
+        }
+        message.setVersion(in.readUnsignedShort());
+        if (trace != null) {
+            trace.version(message.getVersion());
+        }
+
+        int headerCount = in.readUnsignedShort();
+        for (int i = 0; i < headerCount; i++) {
+            String name = in.readUTF();
+            boolean mustUnderstand = in.readBoolean();
+            in.readInt();
+            if (trace != null) {
+                trace.startHeader(name, mustUnderstand, i);
+            }
+            eagerInput.reset();
+            message.addHeader(new MessageHeader(name, mustUnderstand, eagerInput.readObject()));
+            if (trace != null) {
+                trace.endHeader();
+            }
+        }
+
+        boolean lazy = trace == null;
+        int bodyCount = in.readUnsignedShort();
+        for (int i = 0; i < bodyCount; i++) {
+            String targetURI = in.readUTF();
+            String responseURI = in.readUTF();
+            int length = in.readInt();
+            lazy = lazy && length != UNKNOWN_LENGTH;
+            if (lazy) {
+                byte[] content = new byte[length];
+                in.readFully(content);
+                message.addBody(new LazyMessageBody(targetURI, responseURI, content));
+            } else {
+                if (trace != null) {
+                    trace.startMessage(targetURI, responseURI, i);
+                }
+                MessageBody body = new MessageBody(targetURI, responseURI, null);
+                eagerInput.reset();
+                body.setData(readBodyData(eagerInput, body));
+                message.addBody(body);
+                if (trace != null) {
+                    trace.endMessage();
+                }
+            }
+        }
+        return message;
+    }
+
+    /**
+     * Reads the data of the given body, turning a {@link RecoverableSerializationException} into an error message for the
+     * body the way {@link flex.messaging.io.amf.AmfMessageDeserializer AmfMessageDeserializer} does.
+     */
+    private static Object readBodyData(Amf0Input input, MessageBody body) throws IOException, ClassNotFoundException {
+        try {
+            return input.readObject();
+        } catch (RecoverableSerializationException ex) {
+            ex.setCode(MESSAGE_ENCODING_ERROR_CODE);
+            body.setReplyMethod(MessageIOConstants.STATUS_METHOD);
+            return ex.createErrorMessage();
+        } catch (MessageException ex) {
+            ex.setCode(MESSAGE_ENCODING_ERROR_CODE);
+            throw ex;
+        }
+    }
+
+    /**
+     * {@link MessageBody} that deserializes its data on first access.
+     */
+    static final class LazyMessageBody extends MessageBody {
+
+        private static final long serialVersionUID = -2587124906143547425L;
+
+        private byte[] content;
+
+        private LazyMessageBody(String targetURI, String responseURI, byte[] content) {
+            super(targetURI, responseURI, null);
+            this.content = content;
+        }
+
+        /**
+         * Whether the data of this body has been deserialized.
+         */
+        boolean isDecoded() {
+            return this.content == null;
+        }
+
+        @Override
+        public Object getData() {
+            decode();
+            return super.getData();
+        }
+
+        @Override
+        public Message getDataAsMessage() {
+            decode();
+            return super.getDataAsMessage();
+        }
+
+        @Override
+        public void setData(Object data) {
+            this.content = null;
+            super.setData(data);
+        }
+
+        private void decode() {
+            if (this.content == null) {
+                return;
+            }
+            Amf0Input input = new Amf0Input(new SerializationContext());
+            input.setInputStream(new ByteArrayInputStream(this.content));
+            try {
+                super.setData(readBodyData(input, this));
+            } catch (ClassNotFoundException ex) {
+                throw new HttpMessageNotReadableException("Could not decode body data for target " + getTargetURI(), ex);
+            } catch (IOException ex) {
+                throw new HttpMessageNotReadableException("Could not decode body data for target " + getTargetURI(), ex);
+            } catch (MessageException ex) {
+                throw new HttpMessageNotReadableException("Could not decode body data for target " + getTargetURI(), ex);
+            }
+            this.content = null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flex.messaging.MessageBroker;
+import flex.messaging.client.FlexClientOutboundQueueProcessor;
+import flex.messaging.endpoints.AbstractEndpoint;
+import flex.messaging.endpoints.Endpoint;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.services.messaging.adapters.ActionScriptAdapter;
+
+/**
+ * {@link ActionScriptAdapter} for high-frequency, last-value feeds such as price updates, where subscribers are only
+ * interested in the latest value for each key.
+ *
+ * <p>
+ * Each pushed message is stamped with a conflation key before it is delivered. The key is the value of the configured
+ * {@link #setKeyHeader(String) key header}, if present, or else the message's subtopic. Messages that carry neither are
+ * not stamped, and are delivered without conflation. While a message for a key is still
+ * waiting in a client's outbound queue, a newer message for the same key replaces it, so a slow polling client receives
+ * only the latest value at its next poll or streaming flush. Each client's queue for the destination thus holds at most
+ * one message per key, however fast the feed publishes.
+ *
+ * <p>
+ * Conflation is performed by the {@link ConflatingOutboundQueueProcessor}. When the adapter starts, it installs the processor
+ * on the endpoints of the destination's channels, unless an endpoint has been configured with a custom outbound queue
+ * processor, in which case a warning is logged and messages are delivered through that endpoint without conflation. BlazeDS
+ * creates the outbound queue processor of a FlexClient when the FlexClient first uses the endpoint, so only FlexClients
+ * created after the adapter has started get the conflating processor; messages to FlexClients that already existed, for
+ * instance when a destination is added to a running broker, are delivered without conflation.
+ *
+ * <p>
+ * This adapter is enabled with the <code>conflate</code> attribute of the <code>message-destination</code> xml config
+ * namespace tag.
+ *
+ * @author Jeremy Grelle
+ */
+public class ConflatingMessagingAdapter extends ActionScriptAdapter {
+
+    private static final Log log = LogFactory.getLog(ConflatingMessagingAdapter.class);
+
+    private String keyHeader;
+
+    /**
+     * Sets the name of the message header whose value the messages are conflated by. If not set, or if a message does not
+     * carry the header, messages are conflated by subtopic.
+     *
+     * @param keyHeader the name of the key header
+     */
+    public void setKeyHeader(String keyHeader) {
+        this.keyHeader = keyHeader;
+    }
+
+    /**
+     * Returns the name of the message header whose value the messages are conflated by.
+     *
+     * @return the name of the key header, or <code>null</code> if messages are conflated by subtopic
+     */
+    public String getKeyHeader() {
+        return this.keyHeader;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public Object invoke(Message message) {
+        String key = getConflationKey(message);
+        if (key != null) {
+            message.setHeader(ConflatingOutboundQueueProcessor.CONFLATION_KEY_HEADER, key);
+        }
+        return super.invoke(message);
+    }
+
+    /**
+     * Installs the {@link ConflatingOutboundQueueProcessor} on the endpoints of the destination's channels before starting
+     * the adapter. The processor only applies to FlexClients created after this point.
+     */
+    @Override
+    public void start() {
+        if (!isStarted()) {
+            installQueueProcessor();
+        }
+        super.start();
+    }
+
+    /**
+     * Determines the key that the given message is conflated by.
+     *
+     * @param message the message being pushed
+     * @return the conflation key, or <code>null</code> if the message should not be conflated
+     */
+    protected String getConflationKey(Message message) {
+        Object key = this.keyHeader != null ? message.getHeader(this.keyHeader) : null;
+        if (key == null) {
+            key = message.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME);
+        }
+        return key != null ? key.toString() : null;
+    }
+
+    private void installQueueProcessor() {
+        MessageBroker broker = getDestination().getService().getMessageBroker();
+        List<String> channelIds = getDestination().getChannels();
+        if (channelIds == null) {
+            return;
+        }
+        for (String channelId : channelIds) {
+            Endpoint endpoint = broker.getEndpoint(channelId);
+            if (!(endpoint instanceof AbstractEndpoint)) {
+                continue;
+            }
+            AbstractEndpoint abstractEndpoint = (AbstractEndpoint) endpoint;
+            Class<?> processorClass = abstractEndpoint.getFlexClientOutboundQueueProcessorClass();
+            if (processorClass == null || processorClass == FlexClientOutboundQueueProcessor.class) {
+                abstractEndpoint.setFlexClientOutboundQueueProcessorClass(ConflatingOutboundQueueProcessor.class);
+            } else if (!ConflatingOutboundQueueProcessor.class.isAssignableFrom(processorClass) && log.isWarnEnabled()) {
+                log.warn("Endpoint '" + endpoint.getId() + "' uses the custom outbound queue processor " + processorClass.getName()
+                    + " - messages for destination '" + getDestination().getId() + "' will not be conflated on this endpoint.");
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import java.util.Iterator;
+import java.util.List;
+
+import org.springframework.util.ObjectUtils;
+
+import flex.messaging.client.FlexClientOutboundQueueProcessor;
+import flex.messaging.messages.Message;
+
+/**
+ * {@link FlexClientOutboundQueueProcessor} that replaces a message still waiting in a client's outbound queue with a newer
+ * message for the same conflation key, so that only the latest value is delivered at the next poll or streaming flush.
+ *
+ * <p>
+ * Only messages carrying the {@link #CONFLATION_KEY_HEADER} header, as stamped by the {@link ConflatingMessagingAdapter}, are
+ * conflated. Two queued messages are conflated when they are addressed to the same destination and subscription and carry
+ * the same key. All other messages are queued as usual, so the processor may safely be shared by the endpoints of
+ * destinations that do not use conflation.
+ *
+ * @author Jeremy Grelle
+ */
+public class ConflatingOutboundQueueProcessor extends FlexClientOutboundQueueProcessor {
+
+    /**
+     * Header holding the key that a pushed message is conflated by.
+     */
+    public static final String CONFLATION_KEY_HEADER = "SFConflationKey";
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    public void add(List<Message> outboundQueue, Message message) {
+        Object key = message.getHeader(CONFLATION_KEY_HEADER);
+        if (key != null) {
+            for (Iterator<Message> queued = outboundQueue.iterator(); queued.hasNext();) {
+                if (isConflated(queued.next(), message, key)) {
+                    queued.remove();
+                    break;
+                }
+            }
+        }
+        super.add(outboundQueue, message);
+    }
+
+    private boolean isConflated(Message queued, Message message, Object key) {
+        return key.equals(queued.getHeader(CONFLATION_KEY_HEADER)) && ObjectUtils.nullSafeEquals(queued.getDestination(), message.getDestination())
+            && ObjectUtils.nullSafeEquals(queued.getClientId(), message.getClientId());
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.Assert;
+
+/**
+ * Controls when the upstream consumer of a messaging adapter, such as a JMS listener container or a Spring Integration
+ * consumer endpoint, is started and stopped as Flex clients subscribe and unsubscribe.
+ *
+ * <p>By default the consumer is stopped as soon as the last subscription is removed.  With an
+ * {@link #setIdleTimeout(long) idleTimeout} the consumer is only stopped once the destination has had no subscriptions for
+ * that period, so that clients that unsubscribe and subscribe again on reconnect do not make the consumer restart every
+ * time.  In {@link #setWarmStandby(boolean) warmStandby} mode the consumer is never stopped for lack of subscriptions.
+ * The number of restarts avoided this way is available from {@link #getAvoidedRestarts()}.
+ *
+ * <p>Adapters must call {@link #subscribed()} after registering a subscription and {@link #idle()} once they have no
+ * subscriptions left, and {@link #shutdown()} when they are stopped.
+ *
+ * @author Jeremy Grelle
+ */
+public class IdleConsumerMonitor {
+
+    private static final Log log = LogFactory.getLog(IdleConsumerMonitor.class);
+
+    private String name;
+
+    private final Consumer consumer;
+
+    private final AtomicLong avoidedRestarts = new AtomicLong();
+
+    private long idleTimeout = 0;
+
+    private boolean warmStandby = false;
+
+    private boolean idle = false;
+
+    private ScheduledExecutorService scheduler;
+
+    private ScheduledFuture<?> pendingStop;
+
+    /**
+     * Creates a new monitor for the given consumer.
+     *
+     * @param name the name of the consumer, used for logging and for naming the timer thread
+     * @param consumer the consumer to start and stop
+     */
+    public IdleConsumerMonitor(String name, Consumer consumer) {
+        Assert.notNull(consumer, "consumer must not be null");
+        this.name = name;
+        this.consumer = consumer;
+    }
+
+    /**
+     * Sets the name of the consumer, typically the id of the destination of the adapter once it is known, so that the timer
+     * threads of the adapters of different destinations can be told apart.  Only applies to a timer thread that is started
+     * afterwards.
+     *
+     * @param name the name of the consumer, used for logging and for naming the timer thread
+     */
+    public synchronized void setName(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Sets the time in milliseconds that the consumer is kept running after the last subscription has been removed.
+     *
+     * <p>Default is {@code 0}, meaning that the consumer is stopped immediately.
+     */
+    public synchronized void setIdleTimeout(long idleTimeout) {
+        Assert.isTrue(idleTimeout >= 0, "idleTimeout must not be negative");
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets whether the consumer should be kept running while there are no subscriptions, until the adapter is stopped.
+     *
+     * <p>Default is {@code false}.
+     */
+    public synchronized void setWarmStandby(boolean warmStandby) {
+        this.warmStandby = warmStandby;
+    }
+
+    /**
+     * Starts the consumer for a new subscription unless it is still running, in which case any pending stop is cancelled and
+     * the avoided restart is counted.
+     */
+    public synchronized void subscribed() {
+        if (this.pendingStop != null) {
+            this.pendingStop.cancel(false);
+            this.pendingStop = null;
+        }
+        boolean running = this.consumer.isConsumerRunning();
+        if (this.idle && running) {
+            long avoided = this.avoidedRestarts.incrementAndGet();
+            if (log.isDebugEnabled()) {
+                log.debug("Consumer of [" + this.name + "] was still running, " + avoided + " restarts avoided so far");
+            }
+        }
+        this.idle = false;
+        if (!running) {
+            this.consumer.startConsumer();
+        }
+    }
+
+    /**
+     * Stops the consumer, immediately or after the idle timeout, unless in warm standby mode. To be called once no
+     * subscriptions are left.
+     */
+    public synchronized void idle() {
+        if (this.idle) {
+            return;
+        }
+        this.idle = true;
+        if (this.warmStandby) {
+            return;
+        }
+        if (this.idleTimeout == 0) {
+            stopIfIdle();
+            return;
+        }
+        this.pendingStop = getScheduler().schedule(new Runnable() {
+
+            public void run() {
+                stopIfIdle();
+            }
+        }, this.idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels any pending stop and releases the timer thread. The consumer itself is left for the adapter to stop.
+     */
+    public synchronized void shutdown() {
+        if (this.pendingStop != null) {
+            this.pendingStop.cancel(false);
+            this.pendingStop = null;
+        }
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+        this.idle = false;
+    }
+
+    /**
+     * The number of times a subscription found the consumer still running after all previous subscriptions had been removed,
+     * each of which would otherwise have stopped and restarted the consumer.
+     */
+    public long getAvoidedRestarts() {
+        return this.avoidedRestarts.get();
+    }
+
+    private synchronized void stopIfIdle() {
+        this.pendingStop = null;
+        if (this.idle && this.consumer.isConsumerRunning()) {
+            this.consumer.stopConsumer();
+        }
+    }
+
+    private ScheduledExecutorService getScheduler() {
+        if (this.scheduler == null) {
+            this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "IdleConsumerMonitor-" + IdleConsumerMonitor.this.name);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.scheduler;
+    }
+
+    /**
+     * The consumer controlled by an {@link IdleConsumerMonitor}.
+     */
+    public interface Consumer {
+
+        /**
+         * Whether the consumer is currently running.
+         */
+        boolean isConsumerRunning();
+
+        /**
+         * Starts the consumer.
+         */
+        void startConsumer();
+
+        /**
+         * Stops the consumer.
+         */
+        void stopConsumer();
+    }
+}
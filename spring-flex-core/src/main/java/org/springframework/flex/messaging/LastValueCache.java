@@ -0,0 +1,278 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import flex.messaging.MessageClient;
+import flex.messaging.MessageClientListener;
+import flex.messaging.MessageDestination;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.services.MessageService;
+
+/**
+ * Bounded cache of the last message pushed to each subtopic of a message destination, used to send the current state of a
+ * feed to a client as soon as it subscribes instead of leaving it waiting for the next upstream message.
+ *
+ * <p>The {@link org.springframework.flex.messaging.jms.JmsAdapter JmsAdapter} and
+ * {@link org.springframework.flex.messaging.integration.IntegrationAdapter IntegrationAdapter} populate the cache from the
+ * messages they push, and send the cached messages matching the subtopic and selector of each new subscription to the
+ * subscribing client.  Each adapter needs its own cache instance.
+ *
+ * <p>Once the {@link #setMaxEntries(int) maxEntries} limit is exceeded, the subtopic that was least recently updated is
+ * evicted.  Cached messages expire after the {@link #setTimeToLive(long) timeToLive}.
+ *
+ * <p>BlazeDS hands a subscribe command to the adapter before it registers the subscriber, so the cached messages for a new
+ * subscriber are only pushed once its {@link MessageClient} has been created.  The adapters register the cache as a
+ * {@link MessageClientListener} for that purpose while they are started.
+ *
+ * @author Jeremy Grelle
+ */
+public class LastValueCache implements MessageClientListener {
+
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    private static final String NO_SUBTOPIC = "";
+
+    private static final String SUBTOPIC_WILDCARD = "*";
+
+    private static final long PENDING_SUBSCRIPTION_TIMEOUT = 60000;
+
+    private static final Comparator<CachedValue> UPDATE_ORDER = new Comparator<CachedValue>() {
+
+        public int compare(CachedValue value1, CachedValue value2) {
+            return value1.sequence < value2.sequence ? -1 : value1.sequence == value2.sequence ? 0 : 1;
+        }
+    };
+
+    private final ConcurrentMap<String, CachedValue> entries = new ConcurrentHashMap<String, CachedValue>();
+
+    private final ConcurrentMap<Object, PendingSubscription> pendingSubscriptions = new ConcurrentHashMap<Object, PendingSubscription>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    private volatile long timeToLive = 0;
+
+    /**
+     * Sets the maximum number of subtopics for which a message is cached.
+     *
+     * <p>Default is 1024.
+     */
+    public void setMaxEntries(int maxEntries) {
+        Assert.isTrue(maxEntries > 0, "maxEntries must be greater than 0");
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Sets the time in milliseconds after which a cached message expires.
+     *
+     * <p>Default is {@code 0}, meaning that messages remain cached until they are replaced or evicted.
+     */
+    public void setTimeToLive(long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Caches a copy of the given message as the last value of its subtopic.
+     *
+     * <p>Messages for different subtopics are cached without contending for a common lock; the least recently updated
+     * subtopic is only looked up when the cache has grown past its limit.
+     *
+     * @param message the message being pushed to subscribers
+     */
+    public void put(Message message) {
+        String subtopic = getSubtopic(message.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME));
+        long expiresAt = this.timeToLive > 0 ? System.currentTimeMillis() + this.timeToLive : Long.MAX_VALUE;
+        this.entries.put(subtopic, new CachedValue((Message) message.clone(), expiresAt, this.sequence.incrementAndGet()));
+        while (this.entries.size() > this.maxEntries) {
+            evictLeastRecentlyUpdated();
+        }
+    }
+
+    /**
+     * Returns the cached messages for a subscription to the given subtopic.
+     *
+     * @param subtopic the subscribed subtopic, which may contain wildcards, or {@code null} if the subscription has none
+     * @return the cached messages, which for wildcard subtopics include the last value of every cached subtopic in the
+     *         order in which they were updated
+     */
+    public List<Message> getLastValues(String subtopic) {
+        long now = System.currentTimeMillis();
+        List<Message> lastValues = new ArrayList<Message>();
+        if (subtopic != null && subtopic.contains(SUBTOPIC_WILDCARD)) {
+            List<CachedValue> values = new ArrayList<CachedValue>();
+            for (Map.Entry<String, CachedValue> entry : this.entries.entrySet()) {
+                if (entry.getValue().isExpired(now)) {
+                    this.entries.remove(entry.getKey(), entry.getValue());
+                } else {
+                    values.add(entry.getValue());
+                }
+            }
+            Collections.sort(values, UPDATE_ORDER);
+            for (CachedValue value : values) {
+                lastValues.add(value.message);
+            }
+        } else {
+            String key = getSubtopic(subtopic);
+            CachedValue value = this.entries.get(key);
+            if (value != null && value.isExpired(now)) {
+                this.entries.remove(key, value);
+            } else if (value != null) {
+                lastValues.add(value.message);
+            }
+        }
+        return lastValues;
+    }
+
+    /**
+     * Pushes the cached messages matching the subtopic of the given subscribe command to the subscribing client. Messages
+     * that do not match the subscription's selector or subtopic are filtered out by the {@link MessageService}.
+     *
+     * <p>If the subscriber has not been registered with the destination yet, which is the case while the adapter handles
+     * the subscribe command of a new client, the messages are pushed as soon as its {@link MessageClient} is
+     * {@link #messageClientCreated(MessageClient) created}.
+     *
+     * @param messageService the message service of the destination
+     * @param subscribeMessage the subscribe command
+     */
+    public void pushLastValues(MessageService messageService, CommandMessage subscribeMessage) {
+        if (getLastValues((String) subscribeMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME)).isEmpty()) {
+            return;
+        }
+        MessageDestination destination = (MessageDestination) messageService.getDestination(subscribeMessage);
+        if (destination.getSubscriptionManager().getSubscriber(subscribeMessage.getClientId()) != null) {
+            doPushLastValues(messageService, subscribeMessage);
+        } else {
+            removeStalePendingSubscriptions();
+            this.pendingSubscriptions.put(subscribeMessage.getClientId(), new PendingSubscription(messageService, subscribeMessage));
+        }
+    }
+
+    /**
+     * Pushes the cached messages to a new subscriber whose subscribe command was passed to
+     * {@link #pushLastValues(MessageService, CommandMessage)} before it was registered.
+     */
+    public void messageClientCreated(MessageClient messageClient) {
+        PendingSubscription pending = this.pendingSubscriptions.remove(messageClient.getClientId());
+        if (pending != null) {
+            doPushLastValues(pending.messageService, pending.subscribeMessage);
+        }
+    }
+
+    /**
+     * Discards the pending push for a subscriber that is destroyed before it could take place.
+     */
+    public void messageClientDestroyed(MessageClient messageClient) {
+        this.pendingSubscriptions.remove(messageClient.getClientId());
+    }
+
+    /**
+     * Removes all cached messages.
+     */
+    public void clear() {
+        this.entries.clear();
+    }
+
+    /**
+     * The number of subtopics for which a message is cached.
+     */
+    public int size() {
+        return this.entries.size();
+    }
+
+    private void doPushLastValues(MessageService messageService, CommandMessage subscribeMessage) {
+        List<Message> lastValues = getLastValues((String) subscribeMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME));
+        Set<Object> subscriber = Collections.singleton(subscribeMessage.getClientId());
+        for (Message message : lastValues) {
+            messageService.pushMessageToClients(subscriber, message, true);
+        }
+    }
+
+    private void evictLeastRecentlyUpdated() {
+        Map.Entry<String, CachedValue> eldest = null;
+        for (Map.Entry<String, CachedValue> entry : this.entries.entrySet()) {
+            if (eldest == null || entry.getValue().sequence < eldest.getValue().sequence) {
+                eldest = entry;
+            }
+        }
+        if (eldest != null) {
+            this.entries.remove(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void removeStalePendingSubscriptions() {
+        long staleBefore = System.currentTimeMillis() - PENDING_SUBSCRIPTION_TIMEOUT;
+        for (Iterator<PendingSubscription> pending = this.pendingSubscriptions.values().iterator(); pending.hasNext();) {
+            if (pending.next().createdAt < staleBefore) {
+                pending.remove();
+            }
+        }
+    }
+
+    private static String getSubtopic(Object subtopic) {
+        return subtopic != null && StringUtils.hasText(subtopic.toString()) ? subtopic.toString() : NO_SUBTOPIC;
+    }
+
+    private static final class CachedValue {
+
+        private final Message message;
+
+        private final long expiresAt;
+
+        private final long sequence;
+
+        private CachedValue(Message message, long expiresAt, long sequence) {
+            this.message = message;
+            this.expiresAt = expiresAt;
+            this.sequence = sequence;
+        }
+
+        private boolean isExpired(long now) {
+            return now >= this.expiresAt;
+        }
+    }
+
+    private static final class PendingSubscription {
+
+        private final MessageService messageService;
+
+        private final CommandMessage subscribeMessage;
+
+        private final long createdAt = System.currentTimeMillis();
+
+        private PendingSubscription(MessageService messageService, CommandMessage subscribeMessage) {
+            this.messageService = messageService;
+            this.subscribeMessage = subscribeMessage;
+        }
+    }
+}
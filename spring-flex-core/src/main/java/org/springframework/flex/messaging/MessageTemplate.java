@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,9 @@
 
 package org.springframework.flex.messaging;
 
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.springframework.beans.BeansException;
@@ -26,10 +29,12 @@ import org.springframework.beans.factory.ListableBeanFactory;
 import org.springframework.flex.config.BeanIds;
 import org.springframework.util.Assert;
 
+import flex.messaging.Destination;
 import flex.messaging.FlexContext;
 import flex.messaging.MessageBroker;
 import flex.messaging.MessageDestination;
 import flex.messaging.messages.AsyncMessage;
+import flex.messaging.services.MessageService;
 import flex.messaging.services.messaging.adapters.ActionScriptAdapter;
 import flex.messaging.services.messaging.adapters.MessagingAdapter;
 import flex.messaging.util.UUIDUtils;
@@ -66,6 +71,10 @@ public class MessageTemplate implements InitializingBean, BeanFactoryAware {
 
     private final AsyncMessageCreator defaultMessageCreator = new DefaultAsyncMessageCreator();
 
+    private boolean preSerializeBody = false;
+
+    private final ConcurrentMap<String, Boolean> preSerializableDestinations = new ConcurrentHashMap<String, Boolean>();
+
     /**
      * 
      * {@inheritDoc}
@@ -142,7 +151,7 @@ public class MessageTemplate implements InitializingBean, BeanFactoryAware {
      * @param creator the message creator
      */
     public void send(AsyncMessageCreator creator) {
-        getMessageBroker().routeMessageToService(creator.createMessage(), null);
+        route(creator.createMessage());
     }
 
     /**
@@ -165,7 +174,7 @@ public class MessageTemplate implements InitializingBean, BeanFactoryAware {
         AsyncMessage message = this.defaultMessageCreator.createMessage();
         message.setDestination(destination);
         message.setBody(body);
-        getMessageBroker().routeMessageToService(message, null);
+        route(message);
     }
 
     /**
@@ -185,6 +194,19 @@ public class MessageTemplate implements InitializingBean, BeanFactoryAware {
         this.defaultDestination = defaultDestination;
     }
 
+    /**
+     * Sets whether the body of each sent message should be serialized to AMF3 once, before the message is routed, so that
+     * the same bytes can be delivered to every subscriber. This changes the body that subscribing clients receive. Bodies
+     * are not pre-serialized for destinations that an endpoint with a custom outbound queue processor delivers. The default
+     * is <code>false</code>.
+     * 
+     * @param preSerializeBody whether message bodies should be pre-serialized
+     * @see PreSerializedMessages
+     */
+    public void setPreSerializeBody(boolean preSerializeBody) {
+        this.preSerializeBody = preSerializeBody;
+    }
+
     /**
      * Sets the {@link MessageBroker} for routing messages
      * 
@@ -194,6 +216,28 @@ public class MessageTemplate implements InitializingBean, BeanFactoryAware {
         this.messageBroker = messageBroker;
     }
 
+    private void route(AsyncMessage message) {
+        if (this.preSerializeBody && isPreSerializable(message.getDestination())) {
+            PreSerializedMessages.preSerialize(message);
+        }
+        getMessageBroker().routeMessageToService(message, null);
+    }
+
+    private boolean isPreSerializable(String destinationId) {
+        Boolean preSerializable = this.preSerializableDestinations.get(destinationId);
+        if (preSerializable == null) {
+            MessageService messageService = (MessageService) getMessageBroker().getServiceByType(MessageService.class.getName());
+            Destination destination = messageService != null ? messageService.getDestination(destinationId) : null;
+            if (destination == null) {
+                // Left to the message broker to report
+                return true;
+            }
+            preSerializable = PreSerializedMessages.isPreSerializable(destination);
+            this.preSerializableDestinations.put(destinationId, preSerializable);
+        }
+        return preSerializable;
+    }
+
     private final class DefaultAsyncMessageCreator implements AsyncMessageCreator {
 
         public AsyncMessage createMessage() {
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import flex.messaging.Destination;
+import flex.messaging.FlexContext;
+import flex.messaging.MessageBroker;
+import flex.messaging.client.FlexClientOutboundQueueProcessor;
+import flex.messaging.endpoints.AbstractEndpoint;
+import flex.messaging.endpoints.Endpoint;
+import flex.messaging.io.SerializationContext;
+import flex.messaging.io.amf.Amf3Input;
+import flex.messaging.io.amf.Amf3Output;
+import flex.messaging.messages.Message;
+
+/**
+ * Helpers for encoding the body of a pushed {@link Message} to AMF3 once, before it is fanned out to subscribers.
+ *
+ * <p>
+ * BlazeDS serializes each message separately for every client it is delivered to. When a message is pushed to many
+ * subscribers, encoding a large object graph over and over again dominates the cost of the push. A pre-serialized message
+ * instead carries its body as a <code>byte[]</code>, which is written to each client as an AMF3 <code>ByteArray</code> by
+ * a plain copy, and is marked with the {@link #PRE_SERIALIZED_HEADER} header.
+ *
+ * <p>
+ * <strong>Pre-serialization changes the wire contract of a destination.</strong> Its subscribers no longer receive the
+ * original object as the message body, but an AMF3 <code>ByteArray</code>, and every Flex client consuming the destination
+ * must check for the {@link #PRE_SERIALIZED_HEADER} header and restore the body with <code>ByteArray.readObject()</code>.
+ * Clients that are not updated accordingly will fail on the unexpected body type, so pre-serialization should only be
+ * enabled for destinations whose consumers all follow this contract. This applies to every option built on this class:
+ * the <code>preSerializeBody</code> property of the messaging adapters and of the {@link MessageTemplate}, and the
+ * <code>amfBytesMessages</code> property of the JMS adapter and message converter.
+ *
+ * <p>
+ * A pre-serialized body can no longer be tailored per client. Bodies are therefore not pre-serialized for a destination
+ * that an endpoint with a custom outbound queue processor may deliver, as determined by {@link #isPreSerializable(Destination)},
+ * and individual messages can be excluded by setting the {@link #CLIENT_TRANSFORM_HEADER} header.
+ *
+ * <p>
+ * Bodies are encoded and decoded with a {@link SerializationContext} created for the purpose with the default settings,
+ * rather than with whatever context happens to be bound to the current thread, which on listener threads is a stale
+ * or default context that is never cleared. The context is bound to the thread while the body is encoded or decoded, for
+ * the property proxies that look it up, and the thread is left as it was found afterwards.
+ *
+ * @author Jeremy Grelle
+ */
+public abstract class PreSerializedMessages {
+
+    private static final Log log = LogFactory.getLog(PreSerializedMessages.class);
+
+    /**
+     * Header set to <code>true</code> on messages whose body has been pre-serialized to AMF3.
+     */
+    public static final String PRE_SERIALIZED_HEADER = "SFPreSerializedBody";
+
+    /**
+     * Header that, when set to <code>true</code>, indicates that the message is transformed per client and must not be
+     * pre-serialized.
+     */
+    public static final String CLIENT_TRANSFORM_HEADER = "SFClientTransform";
+
+    /**
+     * Encodes the body of the given message to AMF3 and replaces it with the encoded bytes, unless the message has no body,
+     * is already pre-serialized, or is marked for client-specific transformation.
+     *
+     * @param message the message to be pushed
+     * @return <code>true</code> if the body was replaced with its serialized form
+     */
+    public static boolean preSerialize(Message message) {
+        Object body = message.getBody();
+        if (body == null || body instanceof byte[] || isPreSerialized(message) || isTrue(message.getHeader(CLIENT_TRANSFORM_HEADER))) {
+            return false;
+        }
+        try {
+            message.setBody(encode(body));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not pre-serialize the body of message " + message.getMessageId(), ex);
+        }
+        message.setHeader(PRE_SERIALIZED_HEADER, Boolean.TRUE);
+        return true;
+    }
+
+    /**
+     * Marks the given message as carrying a body that was already encoded to AMF3 elsewhere, for instance by the sender of a
+     * JMS message.
+     *
+     * @param message the message
+     * @param body the AMF3 encoded body
+     */
+    public static void setPreSerializedBody(Message message, byte[] body) {
+        message.setBody(body);
+        message.setHeader(PRE_SERIALIZED_HEADER, Boolean.TRUE);
+    }
+
+    /**
+     * Determines whether the messages of the given destination may be pre-serialized. This is not the case if an endpoint
+     * of one of its channels uses a custom outbound queue processor, which may tailor each client's copy of a message. The
+     * {@link ConflatingOutboundQueueProcessor} only replaces superseded messages, and does not prevent pre-serialization.
+     * A warning is logged for each endpoint with a custom outbound queue processor.
+     *
+     * @param destination the destination that messages are pushed to
+     * @return <code>true</code> if the messages of the destination may be pre-serialized
+     */
+    public static boolean isPreSerializable(Destination destination) {
+        List<String> channelIds = destination.getChannels();
+        if (channelIds == null) {
+            return true;
+        }
+        MessageBroker broker = destination.getService().getMessageBroker();
+        boolean preSerializable = true;
+        for (String channelId : channelIds) {
+            Endpoint endpoint = broker.getEndpoint(channelId);
+            if (!(endpoint instanceof AbstractEndpoint)) {
+                continue;
+            }
+            Class<?> processorClass = ((AbstractEndpoint) endpoint).getFlexClientOutboundQueueProcessorClass();
+            if (processorClass != null && processorClass != FlexClientOutboundQueueProcessor.class
+                && !ConflatingOutboundQueueProcessor.class.isAssignableFrom(processorClass)) {
+                if (log.isWarnEnabled()) {
+                    log.warn("Endpoint '" + endpoint.getId() + "' uses the custom outbound queue processor " + processorClass.getName()
+                        + " - message bodies for destination '" + destination.getId() + "' will not be pre-serialized.");
+                }
+                preSerializable = false;
+            }
+        }
+        return preSerializable;
+    }
+
+    /**
+     * Replaces the pre-serialized body of the given message with the decoded object, for a destination whose messages may
+     * not be pre-serialized. Has no effect if the message has not been pre-serialized.
+     *
+     * @param message the message to be pushed
+     */
+    public static void restoreBody(Message message) {
+        if (isPreSerialized(message)) {
+            message.setBody(getBody(message));
+            message.getHeaders().remove(PRE_SERIALIZED_HEADER);
+        }
+    }
+
+    /**
+     * Encodes the given object to AMF3.
+     *
+     * @param body the object to encode
+     * @return the AMF3 encoded bytes
+     * @throws IOException if the object could not be encoded
+     */
+    public static byte[] encode(Object body) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        SerializationContext context = new SerializationContext();
+        SerializationContext previous = bindSerializationContext(context);
+        try {
+            Amf3Output out = new Amf3Output(context);
+            out.setOutputStream(bytes);
+            out.writeObject(body);
+            out.flush();
+        } finally {
+            restoreSerializationContext(previous);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes an object from the given AMF3 encoded bytes.
+     *
+     * @param bytes the AMF3 encoded bytes
+     * @return the decoded object
+     * @throws IOException if the bytes could not be decoded
+     * @throws ClassNotFoundException if the class of the encoded object could not be found
+     */
+    public static Object decode(byte[] bytes) throws IOException, ClassNotFoundException {
+        SerializationContext context = new SerializationContext();
+        SerializationContext previous = bindSerializationContext(context);
+        try {
+            Amf3Input in = new Amf3Input(context);
+            in.setInputStream(new ByteArrayInputStream(bytes));
+            return in.readObject();
+        } finally {
+            restoreSerializationContext(previous);
+        }
+    }
+
+    /**
+     * Whether the body of the given message has been pre-serialized.
+     *
+     * @param message the message
+     * @return <code>true</code> if the message body holds AMF3 encoded bytes
+     */
+    public static boolean isPreSerialized(Message message) {
+        return isTrue(message.getHeader(PRE_SERIALIZED_HEADER)) && message.getBody() instanceof byte[];
+    }
+
+    /**
+     * Decodes the body of the given message, for Java code that needs to inspect a message after it has been pre-serialized.
+     *
+     * @param message the message
+     * @return the decoded body, or the body itself if the message has not been pre-serialized
+     */
+    public static Object getBody(Message message) {
+        if (!isPreSerialized(message)) {
+            return message.getBody();
+        }
+        try {
+            return decode((byte[]) message.getBody());
+        } catch (ClassNotFoundException ex) {
+            throw new IllegalStateException("Could not decode the body of message " + message.getMessageId(), ex);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Could not decode the body of message " + message.getMessageId(), ex);
+        }
+    }
+
+    /**
+     * Binds the given context to the current thread, returning the context that BlazeDS bound for the request being
+     * processed by this thread, if any.
+     */
+    private static SerializationContext bindSerializationContext(SerializationContext context) {
+        SerializationContext previous = FlexContext.getMessageBroker() != null ? SerializationContext.getSerializationContext() : null;
+        SerializationContext.setSerializationContext(context);
+        return previous;
+    }
+
+    private static void restoreSerializationContext(SerializationContext previous) {
+        if (previous != null) {
+            SerializationContext.setSerializationContext(previous);
+        } else {
+            SerializationContext.clearThreadLocalObjects();
+        }
+    }
+
+    private static boolean isTrue(Object headerValue) {
+        return Boolean.TRUE.equals(headerValue) || "true".equals(headerValue);
+    }
+}
@@ -0,0 +1,333 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+/**
+ * Thread-safe registry of the subscriptions managed by a messaging adapter, indexed by subtopic and by FlexClient.
+ *
+ * <p>The registry is safe for concurrent subscribe and unsubscribe operations without any global lock.  Subscriptions are
+ * indexed by their subtopic, so that the subscribers of a subtopic can be found without walking every subscription, and
+ * by the id of the FlexClient that owns them, so that the subscriptions of the sender of a message can be excluded.
+ * Subscriptions with wildcard subtopics are kept apart and matched individually.
+ *
+ * <p>As in BlazeDS, a message client may hold several subscriptions to the destination that differ by subtopic or selector.
+ * A subscription is identified by its client id, subtopic and selector, and is removed on its own.
+ *
+ * <p>The subscribers of each subtopic are published as an immutable snapshot that is only rebuilt after the subscriptions
+ * to the subtopic have changed, so that a high rate of messages to a stable set of subscribers does not copy the subscribers
+ * for every message.
+ *
+ * @author Jeremy Grelle
+ */
+public class SubscriptionRegistry {
+
+    private static final String DEFAULT_SUBTOPIC_SEPARATOR = ".";
+
+    private static final String SUBTOPIC_WILDCARD = "*";
+
+    private static final String NO_SUBTOPIC = "";
+
+    private static final String NO_SELECTOR = "";
+
+    private final ConcurrentMap<Subscription, Subscription> subscriptions = new ConcurrentHashMap<Subscription, Subscription>();
+
+    private final ConcurrentMap<Object, Subscribers> subtopicIndex = new ConcurrentHashMap<Object, Subscribers>();
+
+    private final ConcurrentMap<Object, Subscribers> flexClientIndex = new ConcurrentHashMap<Object, Subscribers>();
+
+    private final Set<Subscription> wildcardSubscriptions = newConcurrentSet();
+
+    private volatile String subtopicSeparator = DEFAULT_SUBTOPIC_SEPARATOR;
+
+    /**
+     * Sets the separator between the tokens of a subtopic, used when matching wildcard subtopics.
+     *
+     * <p>Default is ".", which is also used if the given separator is empty.
+     */
+    public void setSubtopicSeparator(String subtopicSeparator) {
+        this.subtopicSeparator = StringUtils.hasLength(subtopicSeparator) ? subtopicSeparator : DEFAULT_SUBTOPIC_SEPARATOR;
+    }
+
+    /**
+     * Registers a subscription without a selector.
+     *
+     * @see #subscribe(Object, String, String, String)
+     */
+    public void subscribe(Object clientId, String flexClientId, String subtopic) {
+        subscribe(clientId, flexClientId, subtopic, null);
+    }
+
+    /**
+     * Registers a subscription, replacing any previous subscription with the same client id, subtopic and selector.  The
+     * other subscriptions of the client id are kept.
+     *
+     * @param clientId the id of the subscribing message client
+     * @param flexClientId the id of the FlexClient that owns the subscription, may be {@code null}
+     * @param subtopic the subscribed subtopic, may be {@code null}
+     * @param selector the selector of the subscription, may be {@code null}
+     */
+    public void subscribe(Object clientId, String flexClientId, String subtopic, String selector) {
+        Subscription subscription = new Subscription(clientId, flexClientId, subtopic, selector);
+        Subscription previous = this.subscriptions.put(subscription, subscription);
+        if (previous != null) {
+            unindex(previous);
+        }
+        if (subscription.subtopic.contains(SUBTOPIC_WILDCARD)) {
+            this.wildcardSubscriptions.add(subscription);
+        } else {
+            addToIndex(this.subtopicIndex, subscription.subtopic, subscription);
+        }
+        if (flexClientId != null) {
+            addToIndex(this.flexClientIndex, flexClientId, subscription);
+        }
+    }
+
+    /**
+     * Removes the subscription with the given client id, subtopic and selector.
+     *
+     * @param clientId the id of the subscribed message client
+     * @param subtopic the subscribed subtopic, may be {@code null}
+     * @param selector the selector of the subscription, may be {@code null}
+     * @return the id of the FlexClient that owned the subscription, or {@code null} if there was no such subscription
+     */
+    public String unsubscribe(Object clientId, String subtopic, String selector) {
+        Subscription removed = this.subscriptions.remove(new Subscription(clientId, null, subtopic, selector));
+        if (removed == null) {
+            return null;
+        }
+        unindex(removed);
+        return removed.flexClientId;
+    }
+
+    /**
+     * Whether there are no subscriptions.
+     */
+    public boolean isEmpty() {
+        return this.subscriptions.isEmpty();
+    }
+
+    /**
+     * Returns the client ids of the subscriptions that match the given subtopic, including those subscribed with a matching
+     * wildcard subtopic.
+     *
+     * <p>Unless wildcard subscriptions are present, the returned set is an immutable snapshot that is shared between calls
+     * until the subscriptions to the subtopic change, so that repeated publishing does not copy the subscribers.
+     *
+     * @param subtopic the subtopic of a message, may be {@code null}
+     * @return an unmodifiable set of the matching client ids
+     */
+    public Set<Object> getSubscriberIds(String subtopic) {
+        String key = StringUtils.hasText(subtopic) ? subtopic : NO_SUBTOPIC;
+        Subscribers exact = this.subtopicIndex.get(key);
+        Set<Object> subscriberIds = exact != null ? exact.getSnapshot() : Collections.<Object> emptySet();
+        if (key == NO_SUBTOPIC || this.wildcardSubscriptions.isEmpty()) {
+            return subscriberIds;
+        }
+        Set<Object> matching = null;
+        for (Subscription subscription : this.wildcardSubscriptions) {
+            if (!subscriberIds.contains(subscription.clientId) && matches(subscription.subtopic, key)) {
+                if (matching == null) {
+                    matching = new HashSet<Object>(subscriberIds);
+                }
+                matching.add(subscription.clientId);
+            }
+        }
+        return matching != null ? Collections.unmodifiableSet(matching) : subscriberIds;
+    }
+
+    /**
+     * Returns the client ids of the subscriptions that match the given subtopic, excluding those owned by the given FlexClient.
+     * The exclusion only costs a lookup per subscription of the excluded FlexClient, and the shared snapshot of the matching
+     * subscribers is returned as is when the FlexClient has none of them.
+     *
+     * @param subtopic the subtopic of a message, may be {@code null}
+     * @param excludedFlexClientId the id of the FlexClient whose subscriptions are excluded, typically the sender of the message
+     * @return an unmodifiable set of the matching client ids
+     * @see #getSubscriberIds(String)
+     */
+    public Set<Object> getSubscriberIds(String subtopic, String excludedFlexClientId) {
+        Set<Object> subscriberIds = getSubscriberIds(subtopic);
+        Subscribers excluded = this.flexClientIndex.get(excludedFlexClientId);
+        if (excluded == null) {
+            return subscriberIds;
+        }
+        Set<Object> remaining = null;
+        for (Subscription subscription : excluded.subscriptions) {
+            if (subscriberIds.contains(subscription.clientId)) {
+                if (remaining == null) {
+                    remaining = new HashSet<Object>(subscriberIds);
+                }
+                remaining.remove(subscription.clientId);
+            }
+        }
+        return remaining != null ? Collections.unmodifiableSet(remaining) : subscriberIds;
+    }
+
+    private void unindex(Subscription subscription) {
+        if (subscription.subtopic.contains(SUBTOPIC_WILDCARD)) {
+            this.wildcardSubscriptions.remove(subscription);
+        } else {
+            removeFromIndex(this.subtopicIndex, subscription.subtopic, subscription);
+        }
+        if (subscription.flexClientId != null) {
+            removeFromIndex(this.flexClientIndex, subscription.flexClientId, subscription);
+        }
+    }
+
+    private boolean matches(String pattern, String subtopic) {
+        String[] patternTokens = StringUtils.delimitedListToStringArray(pattern, this.subtopicSeparator);
+        String[] tokens = StringUtils.delimitedListToStringArray(subtopic, this.subtopicSeparator);
+        for (int i = 0; i < patternTokens.length; i++) {
+            if (SUBTOPIC_WILDCARD.equals(patternTokens[i]) && i == patternTokens.length - 1) {
+                return tokens.length >= patternTokens.length;
+            }
+            if (i >= tokens.length || !(SUBTOPIC_WILDCARD.equals(patternTokens[i]) || patternTokens[i].equals(tokens[i]))) {
+                return false;
+            }
+        }
+        return tokens.length == patternTokens.length;
+    }
+
+    private static void addToIndex(ConcurrentMap<Object, Subscribers> index, Object key, Subscription subscription) {
+        while (true) {
+            Subscribers subscribers = index.get(key);
+            if (subscribers == null) {
+                Subscribers created = new Subscribers();
+                subscribers = index.putIfAbsent(key, created);
+                if (subscribers == null) {
+                    subscribers = created;
+                }
+            }
+            subscribers.add(subscription);
+            // An empty entry may have been removed from the index concurrently, in which case the subscription must be added again
+            if (index.get(key) == subscribers) {
+                return;
+            }
+        }
+    }
+
+    private static void removeFromIndex(ConcurrentMap<Object, Subscribers> index, Object key, Subscription subscription) {
+        Subscribers subscribers = index.get(key);
+        if (subscribers != null && subscribers.remove(subscription) && subscribers.subscriptions.isEmpty()) {
+            index.remove(key, subscribers);
+        }
+    }
+
+    private static <T> Set<T> newConcurrentSet() {
+        return Collections.newSetFromMap(new ConcurrentHashMap<T, Boolean>());
+    }
+
+    /**
+     * The subscriptions of an index entry, along with an immutable snapshot of their client ids that is rebuilt lazily after
+     * the subscriptions have changed.
+     */
+    private static final class Subscribers {
+
+        private final Set<Subscription> subscriptions = newConcurrentSet();
+
+        private final AtomicLong version = new AtomicLong();
+
+        private volatile Snapshot snapshot;
+
+        private void add(Subscription subscription) {
+            this.subscriptions.add(subscription);
+            this.version.incrementAndGet();
+        }
+
+        private boolean remove(Subscription subscription) {
+            boolean removed = this.subscriptions.remove(subscription);
+            this.version.incrementAndGet();
+            return removed;
+        }
+
+        private Set<Object> getSnapshot() {
+            Snapshot current = this.snapshot;
+            long version = this.version.get();
+            if (current == null || current.version != version) {
+                // Copied after reading the version, so the snapshot holds at least every change up to that version
+                Set<Object> clientIds = new HashSet<Object>();
+                for (Subscription subscription : this.subscriptions) {
+                    clientIds.add(subscription.clientId);
+                }
+                current = new Snapshot(version, Collections.unmodifiableSet(clientIds));
+                this.snapshot = current;
+            }
+            return current.clientIds;
+        }
+    }
+
+    private static final class Snapshot {
+
+        private final long version;
+
+        private final Set<Object> clientIds;
+
+        private Snapshot(long version, Set<Object> clientIds) {
+            this.version = version;
+            this.clientIds = clientIds;
+        }
+    }
+
+    /**
+     * A subscription, identified by its client id, subtopic and selector.
+     */
+    private static final class Subscription {
+
+        private final Object clientId;
+
+        private final String flexClientId;
+
+        private final String subtopic;
+
+        private final String selector;
+
+        private Subscription(Object clientId, String flexClientId, String subtopic, String selector) {
+            this.clientId = clientId;
+            this.flexClientId = flexClientId;
+            this.subtopic = StringUtils.hasText(subtopic) ? subtopic : NO_SUBTOPIC;
+            this.selector = StringUtils.hasText(selector) ? selector : NO_SELECTOR;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Subscription)) {
+                return false;
+            }
+            Subscription subscription = (Subscription) other;
+            return ObjectUtils.nullSafeEquals(this.clientId, subscription.clientId) && this.subtopic.equals(subscription.subtopic)
+                && this.selector.equals(subscription.selector);
+        }
+
+        @Override
+        public int hashCode() {
+            return (ObjectUtils.nullSafeHashCode(this.clientId) * 31 + this.subtopic.hashCode()) * 31 + this.selector.hashCode();
+        }
+    }
+}
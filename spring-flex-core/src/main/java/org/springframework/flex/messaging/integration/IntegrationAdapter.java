@@ -17,8 +17,6 @@
 package org.springframework.flex.messaging.integration;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -29,7 +27,11 @@ import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.flex.messaging.IdleConsumerMonitor;
+import org.springframework.flex.messaging.LastValueCache;
+import org.springframework.flex.messaging.PreSerializedMessages;
 import org.springframework.flex.messaging.SubscribeEvent;
+import org.springframework.flex.messaging.SubscriptionRegistry;
 import org.springframework.flex.messaging.UnsubscribeEvent;
 import org.springframework.integration.Message;
 import org.springframework.integration.MessageChannel;
@@ -45,7 +47,8 @@ import org.springframework.integration.support.MessageBuilder;
 import org.springframework.util.Assert;
 
 import flex.messaging.FlexContext;
-import flex.messaging.client.FlexClient;
+import flex.messaging.MessageClient;
+import flex.messaging.MessageDestination;
 import flex.messaging.messages.AsyncMessage;
 import flex.messaging.messages.CommandMessage;
 import flex.messaging.services.MessageService;
@@ -68,14 +71,33 @@ public class IntegrationAdapter extends MessagingAdapter implements MessageHandl
     private volatile boolean extractPayload = true;
     
     private volatile boolean filterSender = true;
+
+    private volatile boolean preSerializeBody = false;
+
+    private volatile boolean preSerializing = false;
+
+    private volatile LastValueCache lastValueCache;
     
     private volatile ApplicationEventPublisher applicationEventPublisher;
 
-    private final Set<Object> subscriberIds = new HashSet<Object>();
-    
-    private final Map<Object, String> clientSubscriptions = new HashMap<Object, String>();
+    private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
 
     private volatile AbstractEndpoint consumerEndpoint;
+
+    private final IdleConsumerMonitor consumerMonitor = new IdleConsumerMonitor("IntegrationAdapter", new IdleConsumerMonitor.Consumer() {
+
+        public boolean isConsumerRunning() {
+            return IntegrationAdapter.this.consumerEndpoint.isRunning();
+        }
+
+        public void startConsumer() {
+            IntegrationAdapter.this.consumerEndpoint.start();
+        }
+
+        public void stopConsumer() {
+            IntegrationAdapter.this.consumerEndpoint.stop();
+        }
+    });
     
     static {
     	filteredHeaders = new ArrayList<String>(FlexHeaders.ignored());
@@ -94,6 +116,54 @@ public class IntegrationAdapter extends MessagingAdapter implements MessageHandl
         this.extractPayload = extractPayload;
     }
 
+    /**
+     * Specify whether the payload of each Spring Integration Message should be serialized
+     * to AMF3 once and the resulting bytes delivered to every subscribed Flex client.
+     * This changes the body that clients receive. Payloads are not pre-serialized if an
+     * endpoint of the destination uses a custom outbound queue processor.
+     * The default is <code>false</code>.
+     * @see PreSerializedMessages
+     */
+    public void setPreSerializeBody(boolean preSerializeBody) {
+        this.preSerializeBody = preSerializeBody;
+    }
+
+    /**
+     * Specify a {@link LastValueCache} that keeps the last message received for
+     * each subtopic, so that it can be sent to Flex clients as soon as they subscribe.
+     */
+    public void setLastValueCache(LastValueCache lastValueCache) {
+        this.lastValueCache = lastValueCache;
+    }
+
+    /**
+     * Specify the time in milliseconds that the consumer of the message channel
+     * keeps running after the last subscription has been removed, so that
+     * clients resubscribing within that period do not cause it to be stopped
+     * and restarted. The default is 0, meaning that it is stopped immediately.
+     */
+    public void setConsumerIdleTimeout(long consumerIdleTimeout) {
+        this.consumerMonitor.setIdleTimeout(consumerIdleTimeout);
+    }
+
+    /**
+     * Specify whether the consumer of the message channel should keep running
+     * while there are no subscriptions, until the adapter is stopped.
+     * The default is <code>false</code>.
+     */
+    public void setConsumerWarmStandby(boolean consumerWarmStandby) {
+        this.consumerMonitor.setWarmStandby(consumerWarmStandby);
+    }
+
+    /**
+     * Returns the number of times a subscription found the consumer of the
+     * message channel still running after all previous subscriptions had been
+     * removed, each of which would otherwise have stopped and restarted it.
+     */
+    public long getAvoidedConsumerRestarts() {
+        return this.consumerMonitor.getAvoidedRestarts();
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -133,18 +203,22 @@ public class IntegrationAdapter extends MessagingAdapter implements MessageHandl
             }
         }
         flexMessage.setDestination(this.getDestination().getId());
+        if (this.preSerializing) {
+            PreSerializedMessages.preSerialize(flexMessage);
+        }
+        if (this.lastValueCache != null) {
+            this.lastValueCache.put(flexMessage);
+        }
         MessageService messageService = (MessageService) getDestination().getService();
+        String subtopic = (String) flexMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME);
+        Set<Object> subscribers;
         if (filterSender && headers.containsKey(FlexHeaders.FLEX_CLIENT_ID)) {
-        	Set<Object> subscribers = new HashSet<Object>(this.subscriberIds);
-        	FlexClient flexClient = messageService.getMessageBroker().getFlexClientManager().getFlexClient(headers.get(FlexHeaders.FLEX_CLIENT_ID).toString());
-        	for (Object subscriberId : this.subscriberIds) {
-        		if (flexClient.getMessageClient(subscriberId.toString()) != null) {
-        			subscribers.remove(subscriberId);
-        		}
-        	}
-        	messageService.pushMessageToClients(subscribers, flexMessage, true);
+        	subscribers = this.subscriptions.getSubscriberIds(subtopic, headers.get(FlexHeaders.FLEX_CLIENT_ID).toString());
         } else {
-        	messageService.pushMessageToClients(flexMessage, true);
+        	subscribers = this.subscriptions.getSubscriberIds(subtopic);
+        }
+        if (!subscribers.isEmpty()) {
+        	messageService.pushMessageToClients(subscribers, flexMessage, true);
         }
         messageService.sendPushMessageFromPeer(flexMessage, true);
     }
@@ -198,29 +272,28 @@ public class IntegrationAdapter extends MessagingAdapter implements MessageHandl
     public Object manage(CommandMessage commandMessage) {
         String clientId = (String) commandMessage.getClientId();
         if (commandMessage.getOperation() == CommandMessage.SUBSCRIBE_OPERATION) {
-            this.subscriberIds.add(clientId);
-            synchronized (this.consumerEndpoint) {
-                if (!this.consumerEndpoint.isRunning()) {
-                    this.consumerEndpoint.start();
-                }
-            }
+            String flexClientId = FlexContext.getFlexClient().getId();
+            this.subscriptions.subscribe(clientId, flexClientId, (String) commandMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME),
+                (String) commandMessage.getHeader(CommandMessage.SELECTOR_HEADER));
+            this.consumerMonitor.subscribed();
             if (this.logger.isInfoEnabled()) {
                 this.logger.info("client [" + clientId + "] subscribed to destination [" + this.getDestination().getId() + "]");
             }
-            String flexClientId = FlexContext.getFlexClient().getId();
-            this.clientSubscriptions.put(clientId, flexClientId);
             this.applicationEventPublisher.publishEvent(new SubscribeEvent(flexClientId, clientId, this.getDestination().getId()));
+            if (this.lastValueCache != null) {
+                this.lastValueCache.pushLastValues((MessageService) getDestination().getService(), commandMessage);
+            }
         } else if (commandMessage.getOperation() == CommandMessage.UNSUBSCRIBE_OPERATION) {
-            this.subscriberIds.remove(clientId);
-            synchronized (this.consumerEndpoint) {
-                if (this.subscriberIds.isEmpty() && this.consumerEndpoint.isRunning()) {
-                    this.consumerEndpoint.stop();
+            String flexClientId = this.subscriptions.unsubscribe(clientId, (String) commandMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME),
+                (String) commandMessage.getHeader(CommandMessage.SELECTOR_HEADER));
+            synchronized (this.consumerMonitor) {
+                if (this.subscriptions.isEmpty()) {
+                    this.consumerMonitor.idle();
                 }
             }
             if (this.logger.isInfoEnabled()) {
                 this.logger.info("client [" + clientId + "] unsubscribed from destination [" + this.getDestination().getId() + "]");
             }
-            String flexClientId = this.clientSubscriptions.remove(clientId);
             this.applicationEventPublisher.publishEvent(new UnsubscribeEvent(flexClientId, clientId, this.getDestination().getId()));
         }
         return null;
@@ -249,9 +322,31 @@ public class IntegrationAdapter extends MessagingAdapter implements MessageHandl
      */
     @Override
     public void start() {
+        this.consumerMonitor.setName(getDestination().getId());
+        this.subscriptions.setSubtopicSeparator(((MessageDestination) getDestination()).getServerSettings().getSubtopicSeparator());
+        this.preSerializing = this.preSerializeBody && PreSerializedMessages.isPreSerializable(getDestination());
+        if (this.lastValueCache != null) {
+            MessageClient.addMessageClientCreatedListener(this.lastValueCache);
+        }
         super.start();
     }
 
+    /**
+     * 
+     * {@inheritDoc}
+     */
+    @Override
+    public void stop() {
+        this.consumerMonitor.shutdown();
+        if (this.lastValueCache != null) {
+            MessageClient.removeMessageClientCreatedListener(this.lastValueCache);
+        }
+        if (this.consumerEndpoint != null && this.consumerEndpoint.isRunning()) {
+            this.consumerEndpoint.stop();
+        }
+        super.stop();
+    }
+
 	public void setApplicationEventPublisher(
 			ApplicationEventPublisher applicationEventPublisher) {
 		this.applicationEventPublisher = applicationEventPublisher;
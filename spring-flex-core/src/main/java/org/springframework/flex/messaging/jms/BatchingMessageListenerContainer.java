@@ -0,0 +1,126 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging.jms;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.transaction.TransactionStatus;
+
+/**
+ * {@link DefaultMessageListenerContainer} that can drain up to {@link #setBatchSize(int) batchSize} messages from its
+ * consumer in a single receive cycle, handing them to a {@link BatchMessageListener} at once and committing or
+ * acknowledging them together.
+ *
+ * <p>
+ * Batches are only received on the cached sessions and consumers of the container, without an external transaction
+ * manager, and only if the sessions are transacted or use <code>CLIENT_ACKNOWLEDGE</code>, so that a batch whose listener
+ * fails is rolled back or recovered as a whole. With <code>AUTO_ACKNOWLEDGE</code> or <code>DUPS_OK_ACKNOWLEDGE</code>
+ * each message would be acknowledged as soon as it is received, and the rest of a failed batch would be lost. Otherwise
+ * messages are received and dispatched to the regular message listener one at a time.
+ *
+ * @author Jeremy Grelle
+ */
+class BatchingMessageListenerContainer extends DefaultMessageListenerContainer {
+
+    private volatile int batchSize = 1;
+
+    private volatile BatchMessageListener batchMessageListener;
+
+    /**
+     * Sets the maximum number of messages received in a single batch. Values greater than 1 enable batch receive.
+     *
+     * @param batchSize the maximum number of messages per batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * Sets the listener that batches of messages are dispatched to.
+     *
+     * @param batchMessageListener the batch listener
+     */
+    public void setBatchMessageListener(BatchMessageListener batchMessageListener) {
+        this.batchMessageListener = batchMessageListener;
+    }
+
+    /**
+     *
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean doReceiveAndExecute(Object invoker, Session session, MessageConsumer consumer, TransactionStatus status)
+        throws JMSException {
+        if (this.batchSize <= 1 || this.batchMessageListener == null || session == null || consumer == null || status != null
+            || !(session.getTransacted() || isClientAcknowledge(session))) {
+            return super.doReceiveAndExecute(invoker, session, consumer, status);
+        }
+        Message message = receiveMessage(consumer);
+        if (message == null) {
+            noMessageReceived(invoker, session);
+            return false;
+        }
+        List<Message> messages = new ArrayList<Message>(this.batchSize);
+        messages.add(message);
+        while (messages.size() < this.batchSize && (message = consumer.receiveNoWait()) != null) {
+            messages.add(message);
+        }
+        messageReceived(invoker, session);
+        if (!isAcceptMessagesWhileStopping() && !isRunning()) {
+            if (logger.isWarnEnabled()) {
+                logger.warn("Rejecting batch of " + messages.size() + " received messages because of the listener container "
+                    + "having been stopped in the meantime");
+            }
+            rollbackIfNecessary(session);
+            return false;
+        }
+        try {
+            this.batchMessageListener.onMessages(messages);
+        } catch (Throwable ex) {
+            rollbackOnExceptionIfNecessary(session, ex);
+            handleListenerException(ex);
+            return true;
+        }
+        commitIfNecessary(session, messages.get(messages.size() - 1));
+        return true;
+    }
+
+    /**
+     * Callback for batches of messages received by a {@link BatchingMessageListenerContainer}.
+     */
+    interface BatchMessageListener {
+
+        /**
+         * Handles a batch of received messages, in the order they were received.
+         *
+         * @param messages the received messages
+         * @throws JMSException if the messages could not be handled
+         */
+        void onMessages(List<Message> messages) throws JMSException;
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,15 +16,18 @@
 
 package org.springframework.flex.messaging.jms;
 
+import java.io.IOException;
 import java.util.Enumeration;
 import java.util.Map;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.flex.messaging.PreSerializedMessages;
 import org.springframework.jms.support.converter.MessageConversionException;
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.converter.SimpleMessageConverter;
@@ -41,8 +44,15 @@ import flex.messaging.messages.AsyncMessage;
  * <em>body</em>. If no target converter is passed to the constructor, then it will create and delegate to a
  * {@link SimpleMessageConverter} instance by default.
  * </p>
+ * <p>
+ * In {@link #setAmfBytesMessages(boolean) AMF mode}, bodies are instead encoded to AMF3 in a JMS {@link BytesMessage}, which
+ * avoids Java serialization of the body on the JMS hop. AMF3 encoded bodies received from JMS are passed on as
+ * {@link PreSerializedMessages pre-serialized} bodies in AMF mode, so that they are pushed to Flex clients without being
+ * decoded and encoded again, and are decoded otherwise.
+ * </p>
  * 
  * @author Mark Fisher
+ * @author Jeremy Grelle
  */
 public class FlexMessageConverter implements MessageConverter {
 
@@ -52,10 +62,19 @@ public class FlexMessageConverter implements MessageConverter {
 
     private static final String FLEX_TIME_TO_LIVE = HEADER_PREFIX + "timeToLive";
 
+    private static final String FLEX_CONTENT_TYPE = HEADER_PREFIX + "contentType";
+
+    /**
+     * The value of the content type property of JMS messages with an AMF3 encoded body.
+     */
+    public static final String AMF3_CONTENT_TYPE = "application/x-amf3";
+
     private final Log logger = LogFactory.getLog(getClass());
 
     private final MessageConverter targetConverter;
 
+    private volatile boolean amfBytesMessages = false;
+
     public FlexMessageConverter() {
         this(null);
     }
@@ -65,13 +84,37 @@ public class FlexMessageConverter implements MessageConverter {
     }
 
     /**
+     * Sets whether message bodies should be sent as AMF3 encoded {@link BytesMessage}s rather than being converted by the
+     * target converter, and whether AMF3 encoded bodies received should be kept encoded for pushing them to Flex clients.
+     * Bodies that are already pre-serialized are always sent as they are. The default is <code>false</code>.
      * 
-     * {@inheritDoc}
+     * @param amfBytesMessages whether to use AMF3 encoded bytes messages
+     * @see PreSerializedMessages
+     */
+    public void setAmfBytesMessages(boolean amfBytesMessages) {
+        this.amfBytesMessages = amfBytesMessages;
+    }
+
+    /**
+     * Converts a JMS message to a Flex message, copying its properties to the Flex message headers.
+     * 
+     * <p>In {@link #setAmfBytesMessages(boolean) AMF mode}, the AMF3 encoded body of a {@link BytesMessage} is kept encoded as
+     * a {@link PreSerializedMessages pre-serialized} body.
      */
     public Object fromMessage(Message message) throws JMSException, MessageConversionException {
-        Object messageBody = this.targetConverter.fromMessage(message);
         AsyncMessage flexMessage = new AsyncMessage();
-        flexMessage.setBody(messageBody);
+        if (message instanceof BytesMessage && AMF3_CONTENT_TYPE.equals(message.getStringProperty(FLEX_CONTENT_TYPE))) {
+            BytesMessage bytesMessage = (BytesMessage) message;
+            byte[] body = new byte[(int) bytesMessage.getBodyLength()];
+            bytesMessage.readBytes(body);
+            if (this.amfBytesMessages) {
+                PreSerializedMessages.setPreSerializedBody(flexMessage, body);
+            } else {
+                flexMessage.setBody(decode(body));
+            }
+        } else {
+            flexMessage.setBody(this.targetConverter.fromMessage(message));
+        }
         flexMessage.setMessageId(message.getJMSMessageID());
         flexMessage.setClientId(message.getObjectProperty(FLEX_CLIENT_ID));
         flexMessage.setTimestamp(message.getJMSTimestamp());
@@ -82,7 +125,7 @@ public class FlexMessageConverter implements MessageConverter {
         Enumeration<?> propertyNames = message.getPropertyNames();
         while (propertyNames.hasMoreElements()) {
             String name = (String) propertyNames.nextElement();
-            if (!name.startsWith(HEADER_PREFIX)) {
+            if (!name.startsWith(HEADER_PREFIX) && !PreSerializedMessages.PRE_SERIALIZED_HEADER.equals(name)) {
                 flexMessage.setHeader(name, message.getObjectProperty(name));
             }
         }
@@ -96,12 +139,15 @@ public class FlexMessageConverter implements MessageConverter {
     public Message toMessage(Object object, Session session) throws JMSException, MessageConversionException {
         Assert.state(object instanceof flex.messaging.messages.Message, "FlexMessageConverter can only handle Flex Messages");
         flex.messaging.messages.Message flexMessage = (flex.messaging.messages.Message) object;
-        Object messageBody = flexMessage.getBody();
-        Message jmsMessage = this.targetConverter.toMessage(messageBody, session);
+        boolean amfBody = this.amfBytesMessages || PreSerializedMessages.isPreSerialized(flexMessage);
+        Message jmsMessage = amfBody ? toBytesMessage(flexMessage, session) : this.targetConverter.toMessage(flexMessage.getBody(), session);
         jmsMessage.setObjectProperty(FLEX_CLIENT_ID, flexMessage.getClientId());
         jmsMessage.setLongProperty(FLEX_TIME_TO_LIVE, flexMessage.getTimeToLive());
         Map<String, Object> headers = this.getFlexMessageHeaderMap(flexMessage);
         for (String key : headers.keySet()) {
+            if (PreSerializedMessages.PRE_SERIALIZED_HEADER.equals(key)) {
+                continue;
+            }
             Object value = flexMessage.getHeader(key);
             try {
                 jmsMessage.setObjectProperty(key, value);
@@ -114,6 +160,33 @@ public class FlexMessageConverter implements MessageConverter {
         return jmsMessage;
     }
 
+    private BytesMessage toBytesMessage(flex.messaging.messages.Message flexMessage, Session session) throws JMSException {
+        byte[] body;
+        if (PreSerializedMessages.isPreSerialized(flexMessage)) {
+            body = (byte[]) flexMessage.getBody();
+        } else {
+            try {
+                body = PreSerializedMessages.encode(flexMessage.getBody());
+            } catch (IOException ex) {
+                throw new MessageConversionException("Could not encode the body of message " + flexMessage.getMessageId() + " to AMF3", ex);
+            }
+        }
+        BytesMessage bytesMessage = session.createBytesMessage();
+        bytesMessage.writeBytes(body);
+        bytesMessage.setStringProperty(FLEX_CONTENT_TYPE, AMF3_CONTENT_TYPE);
+        return bytesMessage;
+    }
+
+    private Object decode(byte[] body) {
+        try {
+            return PreSerializedMessages.decode(body);
+        } catch (IOException ex) {
+            throw new MessageConversionException("Could not decode AMF3 message body", ex);
+        } catch (ClassNotFoundException ex) {
+            throw new MessageConversionException("Could not decode AMF3 message body", ex);
+        }
+    }
+
     @SuppressWarnings("unchecked")
     private Map<String, Object> getFlexMessageHeaderMap(flex.messaging.messages.Message flexMessage) {
         return flexMessage.getHeaders();
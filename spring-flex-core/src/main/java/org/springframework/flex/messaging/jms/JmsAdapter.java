@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,13 +16,19 @@
 
 package org.springframework.flex.messaging.jms;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+import javax.jms.Connection;
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Session;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
@@ -30,17 +36,31 @@ import org.springframework.beans.factory.BeanNameAware;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
+import org.springframework.flex.messaging.IdleConsumerMonitor;
+import org.springframework.flex.messaging.LastValueCache;
+import org.springframework.flex.messaging.PreSerializedMessages;
 import org.springframework.flex.messaging.SubscribeEvent;
+import org.springframework.flex.messaging.SubscriptionRegistry;
 import org.springframework.flex.messaging.UnsubscribeEvent;
+import org.springframework.flex.messaging.jms.BatchingMessageListenerContainer.BatchMessageListener;
+import org.springframework.jms.InvalidSelectorException;
+import org.springframework.jms.JmsException;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.connection.SingleConnectionFactory;
 import org.springframework.jms.core.JmsTemplate;
 import org.springframework.jms.listener.DefaultMessageListenerContainer;
 import org.springframework.jms.listener.adapter.MessageListenerAdapter;
+import org.springframework.jms.support.JmsUtils;
 import org.springframework.jms.support.converter.MessageConverter;
 import org.springframework.jms.support.destination.DestinationResolver;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
 
 import flex.messaging.FlexContext;
+import flex.messaging.MessageClient;
+import flex.messaging.MessageDestination;
+import flex.messaging.messages.AsyncMessage;
 import flex.messaging.messages.CommandMessage;
 import flex.messaging.messages.Message;
 import flex.messaging.services.MessageService;
@@ -54,6 +74,11 @@ import flex.messaging.services.messaging.adapters.MessagingAdapter;
  */
 public class JmsAdapter extends MessagingAdapter implements InitializingBean, BeanNameAware, ApplicationEventPublisherAware {
 
+    /**
+     * The default number of JMS sessions cached for sending messages.
+     */
+    public static final int DEFAULT_SESSION_CACHE_SIZE = 10;
+
     private final Log logger = LogFactory.getLog(getClass());
 
     private volatile ConnectionFactory connectionFactory;
@@ -66,13 +91,66 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
     
     private volatile ApplicationEventPublisher applicationEventPublisher;
 
+    private volatile boolean preSerializeBody = false;
+
+    private volatile boolean preSerializing = false;
+
+    private volatile boolean restoringBodies = false;
+
+    private volatile LastValueCache lastValueCache;
+
+    private volatile int sessionCacheSize = DEFAULT_SESSION_CACHE_SIZE;
+
+    private volatile boolean cacheProducers = true;
+
+    private volatile boolean reconnectOnException = true;
+
+    private volatile CachingConnectionFactory cachingConnectionFactory;
+
+    private volatile boolean selectorPushdown = false;
+
+    private volatile boolean amfBytesMessages = false;
+
+    private final SubscriptionMessageSelector subscriptionMessageSelector = new SubscriptionMessageSelector();
+
     private final JmsTemplate jmsTemplate = new JmsTemplate();
 
-    private final DefaultMessageListenerContainer messageListenerContainer = new DefaultMessageListenerContainer();
+    private final BatchingMessageListenerContainer messageListenerContainer = new BatchingMessageListenerContainer();
 
-    private final Set<Object> subscriberIds = new HashSet<Object>();
-    
-    private final Map<Object, String> clientSubscriptions = new HashMap<Object, String>();
+    private final SubscriptionRegistry subscriptions = new SubscriptionRegistry();
+
+    private final Object consumerLifecycleMonitor = new Object();
+
+    private final AtomicBoolean consumerRestartPending = new AtomicBoolean();
+
+    private volatile boolean consumerSelectorStale = false;
+
+    private ExecutorService consumerRestartExecutor;
+
+    private final IdleConsumerMonitor consumerMonitor = new IdleConsumerMonitor("JmsAdapter", new IdleConsumerMonitor.Consumer() {
+
+        public boolean isConsumerRunning() {
+            return JmsAdapter.this.messageListenerContainer.isActive() && JmsAdapter.this.messageListenerContainer.isRunning();
+        }
+
+        public void startConsumer() {
+            synchronized (JmsAdapter.this.consumerLifecycleMonitor) {
+                if (!JmsAdapter.this.messageListenerContainer.isActive()) {
+                    JmsAdapter.this.consumerSelectorStale = false;
+                    JmsAdapter.this.messageListenerContainer.initialize();
+                }
+                if (!JmsAdapter.this.messageListenerContainer.isRunning()) {
+                    JmsAdapter.this.messageListenerContainer.start();
+                }
+            }
+        }
+
+        public void stopConsumer() {
+            synchronized (JmsAdapter.this.consumerLifecycleMonitor) {
+                JmsAdapter.this.messageListenerContainer.shutdown();
+            }
+        }
+    });
 
     /**
      * 
@@ -81,17 +159,38 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
     public void afterPropertiesSet() {
         Assert.notNull(this.connectionFactory, "connectionFactory is required");
         Assert.notNull(this.destination, "destination or destination name is required");
-        this.jmsTemplate.setConnectionFactory(this.connectionFactory);
+        this.jmsTemplate.setConnectionFactory(createSendConnectionFactory());
         MessageConverter converterToSet = this.messageConverter;
         if (converterToSet == null || !(converterToSet instanceof FlexMessageConverter)) {
             converterToSet = new FlexMessageConverter(converterToSet);
         }
+        if (this.amfBytesMessages) {
+            ((FlexMessageConverter) converterToSet).setAmfBytesMessages(true);
+        }
+        final MessageConverter batchConverter = converterToSet;
         this.jmsTemplate.setMessageConverter(converterToSet);
         MessageListenerAdapter messageListenerAdapter = new MessageListenerAdapter();
         messageListenerAdapter.setMessageConverter(converterToSet);
         messageListenerAdapter.setDelegate(this);
         this.messageListenerContainer.setConnectionFactory(this.connectionFactory);
         this.messageListenerContainer.setMessageListener(messageListenerAdapter);
+        this.messageListenerContainer.setBatchMessageListener(new BatchMessageListener() {
+
+            public void onMessages(List<javax.jms.Message> messages) throws JMSException {
+                // A message that cannot be converted is skipped, as redelivering its batch would not convert it either
+                List<Message> flexMessages = new ArrayList<Message>(messages.size());
+                for (javax.jms.Message message : messages) {
+                    try {
+                        flexMessages.add((Message) batchConverter.fromMessage(message));
+                    } catch (JMSException ex) {
+                        logConversionFailure(ex);
+                    } catch (RuntimeException ex) {
+                        logConversionFailure(ex);
+                    }
+                }
+                handleMessages(flexMessages);
+            }
+        });
         this.messageListenerContainer.setAutoStartup(false);
         if (this.destination instanceof Destination) {
             this.jmsTemplate.setDefaultDestination((Destination) this.destination);
@@ -141,37 +240,57 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
     public Object manage(CommandMessage commandMessage) {
         String clientId = (String) commandMessage.getClientId();
         if (commandMessage.getOperation() == CommandMessage.SUBSCRIBE_OPERATION) {
-            this.subscriberIds.add(clientId);
-            synchronized (this.messageListenerContainer) {
-                if (!this.messageListenerContainer.isActive()) {
-                    this.messageListenerContainer.initialize();
-                }
-                if (!this.messageListenerContainer.isRunning()) {
-                    this.messageListenerContainer.start();
-                }
+            String flexClientId = FlexContext.getFlexClient().getId();
+            String subtopic = (String) commandMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME);
+            String selector = (String) commandMessage.getHeader(CommandMessage.SELECTOR_HEADER);
+            this.subscriptions.subscribe(clientId, flexClientId, subtopic, selector);
+            if (this.selectorPushdown) {
+                this.subscriptionMessageSelector.add(clientId, subtopic, selector);
+                updateMessageSelector();
             }
+            this.consumerMonitor.subscribed();
             if (this.logger.isInfoEnabled()) {
                 this.logger.info("client [" + clientId + "] subscribed to destination [" + this.getDestination().getId() + "]");
             }
-            String flexClientId = FlexContext.getFlexClient().getId();
-            this.clientSubscriptions.put(clientId, flexClientId);
             this.applicationEventPublisher.publishEvent(new SubscribeEvent(flexClientId, clientId, this.getDestination().getId()));
+            if (this.lastValueCache != null) {
+                this.lastValueCache.pushLastValues((MessageService) getDestination().getService(), commandMessage);
+            }
         } else if (commandMessage.getOperation() == CommandMessage.UNSUBSCRIBE_OPERATION) {
-            this.subscriberIds.remove(clientId);
-            synchronized (this.messageListenerContainer) {
-                if (this.subscriberIds.isEmpty() && this.messageListenerContainer.isActive()){ 
-                    this.messageListenerContainer.shutdown();
+            String subtopic = (String) commandMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME);
+            String selector = (String) commandMessage.getHeader(CommandMessage.SELECTOR_HEADER);
+            String flexClientId = this.subscriptions.unsubscribe(clientId, subtopic, selector);
+            if (this.selectorPushdown) {
+                this.subscriptionMessageSelector.remove(clientId, subtopic, selector);
+                if (!this.subscriptions.isEmpty()) {
+                    updateMessageSelector();
+                }
+            }
+            synchronized (this.consumerMonitor) {
+                if (this.subscriptions.isEmpty()) {
+                    this.consumerMonitor.idle();
                 }
             }
             if (this.logger.isInfoEnabled()) {
                 this.logger.info("client [" + clientId + "] unsubscribed from destination [" + this.getDestination().getId() + "]");
             }
-            String flexClientId = this.clientSubscriptions.remove(clientId);
             this.applicationEventPublisher.publishEvent(new UnsubscribeEvent(flexClientId, clientId, this.getDestination().getId()));
         }
         return null;
     }
 
+    /**
+     * Returns the number of times a subscription found the JMS listener container still running after all previous
+     * subscriptions had been removed, each of which would otherwise have shut down and restarted the JMS consumers.
+     * 
+     * @return the number of avoided consumer restarts
+     * @see #setConsumerIdleTimeout(long)
+     * @see #setConsumerWarmStandby(boolean)
+     */
+    public long getAvoidedConsumerRestarts() {
+        return this.consumerMonitor.getAvoidedRestarts();
+    }
+
     /**
      * 
      * {@inheritDoc}
@@ -180,6 +299,77 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
         this.setId(beanName);
     }
 
+    /**
+     * Sets whether the JMS <code>MessageProducer</code>s of the cached sessions used for sending messages should be cached
+     * as well. The default is <code>true</code>.
+     * 
+     * @param cacheProducers whether message producers should be cached
+     * @see #setSessionCacheSize(int)
+     */
+    public void setCacheProducers(boolean cacheProducers) {
+        this.cacheProducers = cacheProducers;
+    }
+
+    /**
+     * Sets the maximum number of messages received from JMS and pushed to Flex clients in a single batch. Values greater than 1
+     * enable batch receive, in which each consumer drains up to this number of already available messages per receive cycle,
+     * pushes them to the subscribed clients in one pass and acknowledges them together. To that end the consumer sessions use
+     * <code>CLIENT_ACKNOWLEDGE</code> when batch receive is enabled, and a batch that fails to be pushed is recovered and
+     * redelivered as a whole. A message that cannot be converted is logged and skipped, as it is when messages are received
+     * one at a time, rather than failing its batch. Batches are received on cached consumers only, so batch receive does not apply if a transaction
+     * manager is set or the cache level is lower than <code>CACHE_CONSUMER</code>. The default is 1.
+     * 
+     * @param batchSize the maximum number of messages per batch
+     */
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batchSize must be greater than 0");
+        this.messageListenerContainer.setBatchSize(batchSize);
+        this.messageListenerContainer.setSessionAcknowledgeMode(batchSize > 1 ? Session.CLIENT_ACKNOWLEDGE : Session.AUTO_ACKNOWLEDGE);
+    }
+
+    /**
+     * Sets the level of caching of JMS resources by the listener container, by the name of the corresponding constant of
+     * {@link DefaultMessageListenerContainer}, e.g. "CACHE_CONSUMER".
+     * 
+     * @param cacheLevelName the name of the cache level
+     * @see DefaultMessageListenerContainer#setCacheLevelName(String)
+     */
+    public void setCacheLevelName(String cacheLevelName) {
+        this.messageListenerContainer.setCacheLevelName(cacheLevelName);
+    }
+
+    /**
+     * Sets the number of concurrent consumers that receive messages from JMS. Concurrent consumers should only be used with
+     * queues, as each consumer of a topic receives its own copy of every message. The default is 1.
+     * 
+     * @param concurrentConsumers the number of concurrent consumers
+     * @see DefaultMessageListenerContainer#setConcurrentConsumers(int)
+     */
+    public void setConcurrentConsumers(int concurrentConsumers) {
+        this.messageListenerContainer.setConcurrentConsumers(concurrentConsumers);
+    }
+
+    /**
+     * Sets the time in milliseconds that the JMS listener container keeps running after the last subscription has been
+     * removed, so that clients resubscribing within that period do not cause the JMS consumers to be shut down and
+     * recreated. The default is 0, meaning that the listener container is shut down immediately.
+     * 
+     * @param consumerIdleTimeout the idle timeout in milliseconds
+     */
+    public void setConsumerIdleTimeout(long consumerIdleTimeout) {
+        this.consumerMonitor.setIdleTimeout(consumerIdleTimeout);
+    }
+
+    /**
+     * Sets whether the JMS listener container should keep running while there are no subscriptions, until the adapter is
+     * stopped. The default is <code>false</code>.
+     * 
+     * @param consumerWarmStandby whether to keep the JMS consumers running without subscriptions
+     */
+    public void setConsumerWarmStandby(boolean consumerWarmStandby) {
+        this.consumerMonitor.setWarmStandby(consumerWarmStandby);
+    }
+
     /**
      * Sets the {@link ConnectionFactory} to use for sending and receiving JMS messages
      * 
@@ -209,6 +399,17 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
         this.destination = destination;
     }
 
+    /**
+     * Sets the maximum number of concurrent consumers that receive messages from JMS, scaled up from the number of
+     * concurrent consumers according to the load. The default is 1.
+     * 
+     * @param maxConcurrentConsumers the maximum number of concurrent consumers
+     * @see DefaultMessageListenerContainer#setMaxConcurrentConsumers(int)
+     */
+    public void setMaxConcurrentConsumers(int maxConcurrentConsumers) {
+        this.messageListenerContainer.setMaxConcurrentConsumers(maxConcurrentConsumers);
+    }
+
     /**
      * Sets the {@link MessageConverter} for messages sent and received by this adapter.
      * 
@@ -218,6 +419,28 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
         this.messageConverter = messageConverter;
     }
 
+    /**
+     * Sets whether the body of each message received from JMS should be serialized to AMF3 once and the resulting bytes
+     * delivered to every subscribed client. This changes the body that clients receive. Bodies are not pre-serialized if
+     * an endpoint of the destination uses a custom outbound queue processor. The default is <code>false</code>.
+     * 
+     * @param preSerializeBody whether message bodies should be pre-serialized
+     * @see PreSerializedMessages
+     */
+    public void setPreSerializeBody(boolean preSerializeBody) {
+        this.preSerializeBody = preSerializeBody;
+    }
+
+    /**
+     * Sets the {@link LastValueCache} that keeps the last message received for each subtopic, so that it can be sent to
+     * clients as soon as they subscribe.
+     * 
+     * @param lastValueCache the last value cache
+     */
+    public void setLastValueCache(LastValueCache lastValueCache) {
+        this.lastValueCache = lastValueCache;
+    }
+
     /**
      * Sets the JMS queue name for messages sent and received by this adapter.
      * 
@@ -237,6 +460,85 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
         this.destination = topicName;
     }
 
+    /**
+     * Sets the timeout in milliseconds for each attempt of the listener container to receive a message from JMS. The default
+     * is 1000.
+     * 
+     * @param receiveTimeout the receive timeout
+     * @see DefaultMessageListenerContainer#setReceiveTimeout(long)
+     */
+    public void setReceiveTimeout(long receiveTimeout) {
+        this.messageListenerContainer.setReceiveTimeout(receiveTimeout);
+    }
+
+    /**
+     * Sets whether the JMS listener container should only receive the messages matching the subtopics and selectors of the
+     * current subscriptions. If enabled, a JMS message selector is computed from the union of the subscribed subtopics and
+     * Flex selectors, so that the JMS provider filters out the messages no client is interested in before they are received
+     * and converted. The subtopic of a message is expected in the JMS property named after the Flex subtopic header, and Flex
+     * selectors must be valid JMS message selectors over the message properties. Each Flex selector is checked in the
+     * background, by creating a JMS consumer with it on a connection of its own, before it is combined into the message
+     * selector. Until then, and for good if the JMS provider rejects the selector, the listener container receives all
+     * messages.
+     * <p>
+     * As JMS consumers cannot change their selector, cached consumers are recreated whenever the subscriptions change the
+     * selector. The consumers are recreated in the background rather than on the thread of the subscribe or unsubscribe
+     * request, but messages sent to a topic while they are being recreated, which takes up to the receive timeout, are not
+     * received. This is therefore meant for destinations whose subscriptions change far less often than messages arrive,
+     * and that can tolerate such gaps. The default is <code>false</code>.
+     * 
+     * @param selectorPushdown whether to filter messages with a JMS message selector
+     */
+    public void setSelectorPushdown(boolean selectorPushdown) {
+        this.selectorPushdown = selectorPushdown;
+        this.subscriptionMessageSelector.setSelectorValidator(selectorPushdown ? new SubscriptionMessageSelector.SelectorValidator() {
+
+            public boolean isValid(String selector) {
+                return isValidMessageSelector(selector);
+            }
+        } : null);
+    }
+
+    /**
+     * Sets whether the shared connection used for sending messages should be reset when the JMS provider reports an exception
+     * on it, so that the next message is sent on a fresh connection. The default is <code>true</code>.
+     * 
+     * @param reconnectOnException whether to reconnect after a connection failure
+     * @see CachingConnectionFactory#setReconnectOnException(boolean)
+     */
+    public void setReconnectOnException(boolean reconnectOnException) {
+        this.reconnectOnException = reconnectOnException;
+    }
+
+    /**
+     * Sets whether message bodies should be exchanged with JMS as AMF3 encoded <code>BytesMessage</code>s instead of being
+     * converted by the message converter, which typically uses Java serialization for complex types. AMF3 encoded bodies
+     * received from JMS are pushed to Flex clients as pre-serialized bodies, without being decoded and encoded again. The
+     * default is <code>false</code>.
+     * 
+     * <p>This changes the body that clients receive. If an endpoint of the destination uses a custom outbound queue
+     * processor, received bodies are decoded before they are pushed instead.
+     * 
+     * @param amfBytesMessages whether to use AMF3 encoded bytes messages
+     * @see FlexMessageConverter#setAmfBytesMessages(boolean)
+     * @see PreSerializedMessages
+     */
+    public void setAmfBytesMessages(boolean amfBytesMessages) {
+        this.amfBytesMessages = amfBytesMessages;
+    }
+
+    /**
+     * Sets the number of JMS sessions cached for sending messages. Messages from Flex clients are sent over a single shared
+     * connection, reusing cached sessions and producers rather than opening a connection for every message. A value of 0
+     * disables caching, for instance when the configured {@link ConnectionFactory} is already pooled. Caching is also skipped
+     * if the connection factory is a {@link SingleConnectionFactory}. The default is 10.
+     * 
+     * @param sessionCacheSize the number of sessions to cache
+     */
+    public void setSessionCacheSize(int sessionCacheSize) {
+        this.sessionCacheSize = sessionCacheSize;
+    }
+
     /**
      * Sets the {@link PlatformTransactionManager} to be used when sending and receiving messages
      * 
@@ -253,9 +555,19 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
      */
     @Override
     public void start() {
+        this.consumerMonitor.setName(getDestination().getId());
+        String subtopicSeparator = ((MessageDestination) getDestination()).getServerSettings().getSubtopicSeparator();
+        this.subscriptions.setSubtopicSeparator(subtopicSeparator);
+        this.subscriptionMessageSelector.setSubtopicSeparator(subtopicSeparator);
+        boolean preSerializable = !(this.preSerializeBody || this.amfBytesMessages) || PreSerializedMessages.isPreSerializable(getDestination());
+        this.preSerializing = this.preSerializeBody && preSerializable;
+        this.restoringBodies = this.amfBytesMessages && !preSerializable;
         if (!this.messageListenerContainer.isActive()) {
             this.messageListenerContainer.initialize();
         }
+        if (this.lastValueCache != null) {
+            MessageClient.addMessageClientCreatedListener(this.lastValueCache);
+        }
         super.start();
     }
     
@@ -265,21 +577,184 @@ public class JmsAdapter extends MessagingAdapter implements InitializingBean, Be
      */
     @Override
     public void stop() {
-        this.messageListenerContainer.shutdown();
+        this.consumerMonitor.shutdown();
+        synchronized (this.consumerRestartPending) {
+            if (this.consumerRestartExecutor != null) {
+                this.consumerRestartExecutor.shutdownNow();
+                this.consumerRestartExecutor = null;
+            }
+        }
+        if (this.lastValueCache != null) {
+            MessageClient.removeMessageClientCreatedListener(this.lastValueCache);
+        }
+        synchronized (this.consumerLifecycleMonitor) {
+            this.messageListenerContainer.shutdown();
+        }
+        if (this.cachingConnectionFactory != null) {
+            this.cachingConnectionFactory.resetConnection();
+        }
         super.stop();
     }
 
+    private ConnectionFactory createSendConnectionFactory() {
+        if (this.sessionCacheSize <= 0 || this.connectionFactory instanceof SingleConnectionFactory) {
+            return this.connectionFactory;
+        }
+        CachingConnectionFactory cachingConnectionFactory = new CachingConnectionFactory(this.connectionFactory);
+        cachingConnectionFactory.setSessionCacheSize(this.sessionCacheSize);
+        cachingConnectionFactory.setCacheProducers(this.cacheProducers);
+        cachingConnectionFactory.setReconnectOnException(this.reconnectOnException);
+        this.cachingConnectionFactory = cachingConnectionFactory;
+        return cachingConnectionFactory;
+    }
+
+    private void updateMessageSelector() {
+        synchronized (this.consumerRestartPending) {
+            // New consumers pick up the selector right away, while Flex selectors are validated and cached consumers are
+            // recreated in the background
+            boolean changed = applyMessageSelector();
+            boolean cachedConsumers = this.messageListenerContainer.getCacheLevel() >= DefaultMessageListenerContainer.CACHE_CONSUMER;
+            if ((this.subscriptionMessageSelector.hasUnvalidatedSelectors() || (changed && cachedConsumers))
+                && this.consumerRestartPending.compareAndSet(false, true)) {
+                getConsumerRestartExecutor().execute(new Runnable() {
+
+                    public void run() {
+                        updateConsumers();
+                    }
+                });
+            }
+        }
+    }
+
+    private boolean applyMessageSelector() {
+        String messageSelector = this.subscriptionMessageSelector.getMessageSelector();
+        if (ObjectUtils.nullSafeEquals(messageSelector, this.messageListenerContainer.getMessageSelector())) {
+            return false;
+        }
+        this.messageListenerContainer.setMessageSelector(messageSelector);
+        this.consumerSelectorStale = true;
+        if (this.logger.isDebugEnabled()) {
+            this.logger.debug("JMS message selector of destination [" + this.getDestination().getId() + "] changed to [" + messageSelector + "]");
+        }
+        return true;
+    }
+
+    private void updateConsumers() {
+        // Subscription changes made from now on need another update
+        this.consumerRestartPending.set(false);
+        this.subscriptionMessageSelector.validateSelectors();
+        synchronized (this.consumerRestartPending) {
+            applyMessageSelector();
+        }
+        if (this.messageListenerContainer.getCacheLevel() >= DefaultMessageListenerContainer.CACHE_CONSUMER) {
+            restartConsumers();
+        }
+    }
+
+    private void restartConsumers() {
+        // Serialized with the consumer being started and stopped, without blocking subscriptions that find it running
+        synchronized (this.consumerLifecycleMonitor) {
+            if (this.consumerSelectorStale && this.messageListenerContainer.isActive()) {
+                this.consumerSelectorStale = false;
+                boolean running = this.messageListenerContainer.isRunning();
+                this.messageListenerContainer.shutdown();
+                this.messageListenerContainer.initialize();
+                if (running) {
+                    this.messageListenerContainer.start();
+                }
+            }
+        }
+    }
+
+    private ExecutorService getConsumerRestartExecutor() {
+        if (this.consumerRestartExecutor == null) {
+            final String threadName = "JmsAdapter-" + getDestination().getId();
+            this.consumerRestartExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return this.consumerRestartExecutor;
+    }
+
+    private boolean isValidMessageSelector(String selector) {
+        // A consumer of a caching connection factory would only be returned to its cache when closed, and keep receiving
+        ConnectionFactory connectionFactory = this.connectionFactory;
+        if (connectionFactory instanceof SingleConnectionFactory
+            && ((SingleConnectionFactory) connectionFactory).getTargetConnectionFactory() != null) {
+            connectionFactory = ((SingleConnectionFactory) connectionFactory).getTargetConnectionFactory();
+        }
+        Connection connection = null;
+        try {
+            connection = connectionFactory.createConnection();
+            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            Destination destination = this.jmsTemplate.getDefaultDestination();
+            if (destination == null) {
+                destination = this.jmsTemplate.getDestinationResolver().resolveDestinationName(session,
+                    this.jmsTemplate.getDefaultDestinationName(), this.jmsTemplate.isPubSubDomain());
+            }
+            session.createConsumer(destination, selector).close();
+            return true;
+        } catch (JMSException ex) {
+            JmsException translated = JmsUtils.convertJmsAccessException(ex);
+            if (translated instanceof InvalidSelectorException) {
+                return false;
+            }
+            throw translated;
+        } finally {
+            JmsUtils.closeConnection(connection);
+        }
+    }
+
+    private void logConversionFailure(Exception ex) {
+        if (this.logger.isWarnEnabled()) {
+            this.logger.warn("Skipping JMS message of destination [" + this.getDestination().getId() + "] that could not be converted", ex);
+        }
+    }
+
     DefaultMessageListenerContainer getMessageListenerContainer() {
         return this.messageListenerContainer;
     }
 
+    SubscriptionMessageSelector getSubscriptionMessageSelector() {
+        return this.subscriptionMessageSelector;
+    }
+
     /**
      * Invoked when a Message is received from a JMS client.
      */
     void handleMessage(Message flexMessage) {
-        flexMessage.setDestination(this.getDestination().getId());
+        pushMessage((MessageService) getDestination().getService(), flexMessage);
+    }
+
+    /**
+     * Invoked when a batch of Messages is received from a JMS client.
+     */
+    void handleMessages(List<Message> flexMessages) {
         MessageService messageService = (MessageService) getDestination().getService();
-        messageService.pushMessageToClients(flexMessage, true);
+        for (Message flexMessage : flexMessages) {
+            pushMessage(messageService, flexMessage);
+        }
+    }
+
+    private void pushMessage(MessageService messageService, Message flexMessage) {
+        flexMessage.setDestination(this.getDestination().getId());
+        if (this.preSerializing) {
+            PreSerializedMessages.preSerialize(flexMessage);
+        } else if (this.restoringBodies) {
+            PreSerializedMessages.restoreBody(flexMessage);
+        }
+        if (this.lastValueCache != null) {
+            this.lastValueCache.put(flexMessage);
+        }
+        Set<Object> subscriberIds = this.subscriptions.getSubscriberIds((String) flexMessage.getHeader(AsyncMessage.SUBTOPIC_HEADER_NAME));
+        if (!subscriberIds.isEmpty()) {
+            messageService.pushMessageToClients(subscriberIds, flexMessage, true);
+        }
         messageService.sendPushMessageFromPeer(flexMessage, true);
     }
 
@@ -0,0 +1,306 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging.jms;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+import flex.messaging.messages.AsyncMessage;
+
+/**
+ * Computes a JMS message selector that matches the union of the subtopics and selectors of the active Flex subscriptions,
+ * so that messages no subscriber is interested in are filtered out by the JMS provider.
+ *
+ * <p>
+ * The subtopic of a Flex message is carried by the JMS property of the same name as the Flex subtopic header, and Flex
+ * selectors are evaluated against the JMS properties that become the Flex message headers. Subtopics with wildcards are
+ * translated to <code>LIKE</code> patterns, which may match more subtopics than the wildcard does; the selector only needs
+ * to match a superset of the messages of interest, as BlazeDS still filters the received messages for each subscriber.
+ *
+ * <p>
+ * Flex selectors are only combined into the message selector once the {@link SelectorValidator} has accepted them on
+ * their own, so that a selector that is not valid for the JMS provider, or that would change the meaning of the combined
+ * selector, cannot break the consumers of every subscription. As validation may need a round trip to the JMS provider, it
+ * is not done when a subscription is added but by {@link #validateSelectors()}. A subscription whose selector has not been
+ * validated yet, or has been rejected, is treated as accepting all messages.
+ *
+ * @author Jeremy Grelle
+ */
+class SubscriptionMessageSelector {
+
+    private static final String SUBTOPIC_PROPERTY = AsyncMessage.SUBTOPIC_HEADER_NAME;
+
+    private static final String SUBTOPIC_WILDCARD = "*";
+
+    private static final char ESCAPE_CHAR = '\\';
+
+    private static final Log log = LogFactory.getLog(SubscriptionMessageSelector.class);
+
+    private final Map<SubscriptionKey, String> conditions = new HashMap<SubscriptionKey, String>();
+
+    private final Set<SubscriptionKey> unvalidated = new HashSet<SubscriptionKey>();
+
+    private volatile SelectorValidator selectorValidator;
+
+    private volatile String subtopicSeparator = ".";
+
+    /**
+     * Sets the separator between the tokens of a subtopic.
+     */
+    public void setSubtopicSeparator(String subtopicSeparator) {
+        if (StringUtils.hasLength(subtopicSeparator)) {
+            this.subtopicSeparator = subtopicSeparator;
+        }
+    }
+
+    /**
+     * Sets the validator that Flex selectors must pass before they are combined into the message selector. Without a
+     * validator every selector is combined as is.
+     */
+    public void setSelectorValidator(SelectorValidator selectorValidator) {
+        this.selectorValidator = selectorValidator;
+    }
+
+    /**
+     * Registers the condition of a subscription, replacing any previous condition for the same client id, subtopic and
+     * selector. The conditions of the other subscriptions of the client id are kept. If a validator is set, a Flex selector
+     * only becomes part of the message selector once {@link #validateSelectors()} has accepted it.
+     *
+     * @param clientId the id of the subscribing message client
+     * @param subtopic the subscribed subtopic, may be {@code null}
+     * @param selector the Flex selector of the subscription, may be {@code null}
+     */
+    public synchronized void add(Object clientId, String subtopic, String selector) {
+        SubscriptionKey key = new SubscriptionKey(clientId, subtopic, selector);
+        this.conditions.put(key, toCondition(subtopic, selector));
+        if (StringUtils.hasText(selector) && this.selectorValidator != null) {
+            this.unvalidated.add(key);
+        } else {
+            this.unvalidated.remove(key);
+        }
+    }
+
+    /**
+     * Removes the condition of a subscription.
+     *
+     * @param clientId the id of the subscribed message client
+     * @param subtopic the subscribed subtopic, may be {@code null}
+     * @param selector the Flex selector of the subscription, may be {@code null}
+     */
+    public synchronized void remove(Object clientId, String subtopic, String selector) {
+        SubscriptionKey key = new SubscriptionKey(clientId, subtopic, selector);
+        this.conditions.remove(key);
+        this.unvalidated.remove(key);
+    }
+
+    /**
+     * Returns whether there are subscriptions whose Flex selector still needs to be validated.
+     *
+     * @return {@code true} if {@link #validateSelectors()} has work to do
+     */
+    public synchronized boolean hasUnvalidatedSelectors() {
+        return !this.unvalidated.isEmpty();
+    }
+
+    /**
+     * Validates the Flex selectors of the subscriptions added since the last validation. The validator is invoked without
+     * holding the lock of this selector, so that subscriptions can be added and removed meanwhile. A selector that the
+     * validator rejects, or fails to check, leaves its subscription accepting all messages.
+     */
+    public void validateSelectors() {
+        SelectorValidator validator = this.selectorValidator;
+        Set<String> selectors = new HashSet<String>();
+        synchronized (this) {
+            for (SubscriptionKey key : this.unvalidated) {
+                selectors.add(key.selector);
+            }
+        }
+        Set<String> rejected = new HashSet<String>();
+        for (String selector : selectors) {
+            if (validator != null && !isValid(validator, selector)) {
+                rejected.add(selector);
+            }
+        }
+        synchronized (this) {
+            for (Iterator<SubscriptionKey> keys = this.unvalidated.iterator(); keys.hasNext();) {
+                SubscriptionKey key = keys.next();
+                if (selectors.contains(key.selector)) {
+                    keys.remove();
+                    if (rejected.contains(key.selector)) {
+                        this.conditions.put(key, null);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the JMS message selector matching every registered subscription, or {@code null} if a subscription accepts
+     * all messages, a Flex selector still needs to be validated, or there are no subscriptions.
+     *
+     * @return the message selector
+     */
+    public synchronized String getMessageSelector() {
+        if (!this.unvalidated.isEmpty()) {
+            return null;
+        }
+        Set<String> distinct = new TreeSet<String>();
+        for (String condition : this.conditions.values()) {
+            if (condition == null) {
+                return null;
+            }
+            distinct.add(condition);
+        }
+        if (distinct.isEmpty()) {
+            return null;
+        }
+        if (distinct.size() == 1) {
+            return distinct.iterator().next();
+        }
+        StringBuilder selector = new StringBuilder();
+        for (String condition : distinct) {
+            if (selector.length() > 0) {
+                selector.append(" OR ");
+            }
+            selector.append('(').append(condition).append(')');
+        }
+        return selector.toString();
+    }
+
+    String toCondition(String subtopic, String selector) {
+        String subtopicCondition = null;
+        if (StringUtils.hasText(subtopic) && !SUBTOPIC_WILDCARD.equals(subtopic)) {
+            if (subtopic.contains(SUBTOPIC_WILDCARD)) {
+                subtopicCondition = SUBTOPIC_PROPERTY + " LIKE '" + toLikePattern(subtopic) + "' ESCAPE '" + ESCAPE_CHAR + "'";
+            } else {
+                subtopicCondition = SUBTOPIC_PROPERTY + " = '" + subtopic.replace("'", "''") + "'";
+            }
+        }
+        if (!StringUtils.hasText(selector)) {
+            return subtopicCondition;
+        }
+        if (subtopicCondition == null) {
+            return selector.trim();
+        }
+        return subtopicCondition + " AND (" + selector.trim() + ")";
+    }
+
+    private boolean isValid(SelectorValidator validator, String selector) {
+        try {
+            if (validator.isValid(selector.trim())) {
+                return true;
+            }
+            if (log.isWarnEnabled()) {
+                log.warn("Flex selector [" + selector + "] is not a valid JMS message selector, all messages are received for "
+                    + "its subscriptions");
+            }
+        } catch (RuntimeException ex) {
+            if (log.isWarnEnabled()) {
+                log.warn("Flex selector [" + selector + "] could not be validated, all messages are received for its "
+                    + "subscriptions", ex);
+            }
+        }
+        return false;
+    }
+
+    private String toLikePattern(String subtopic) {
+        StringBuilder pattern = new StringBuilder();
+        String[] tokens = StringUtils.delimitedListToStringArray(subtopic, this.subtopicSeparator);
+        for (int i = 0; i < tokens.length; i++) {
+            if (i > 0) {
+                appendEscaped(pattern, this.subtopicSeparator);
+            }
+            if (SUBTOPIC_WILDCARD.equals(tokens[i])) {
+                pattern.append('%');
+            } else {
+                appendEscaped(pattern, tokens[i]);
+            }
+        }
+        return pattern.toString();
+    }
+
+    private static void appendEscaped(StringBuilder pattern, String literal) {
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c == '%' || c == '_' || c == ESCAPE_CHAR) {
+                pattern.append(ESCAPE_CHAR);
+            } else if (c == '\'') {
+                pattern.append('\'');
+            }
+            pattern.append(c);
+        }
+    }
+
+    /**
+     * Decides whether a Flex selector is a valid JMS message selector on its own.
+     */
+    interface SelectorValidator {
+
+        /**
+         * Whether the given selector is valid.
+         *
+         * @param selector the Flex selector of a subscription
+         * @return {@code true} if the selector can be combined into the message selector
+         */
+        boolean isValid(String selector);
+    }
+
+    /**
+     * Identifies a subscription by its client id, subtopic and selector.
+     */
+    private static final class SubscriptionKey {
+
+        private final Object clientId;
+
+        private final String subtopic;
+
+        private final String selector;
+
+        private SubscriptionKey(Object clientId, String subtopic, String selector) {
+            this.clientId = clientId;
+            this.subtopic = StringUtils.hasText(subtopic) ? subtopic : "";
+            this.selector = StringUtils.hasText(selector) ? selector : "";
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof SubscriptionKey)) {
+                return false;
+            }
+            SubscriptionKey key = (SubscriptionKey) other;
+            return ObjectUtils.nullSafeEquals(this.clientId, key.clientId) && this.subtopic.equals(key.subtopic)
+                && this.selector.equals(key.selector);
+        }
+
+        @Override
+        public int hashCode() {
+            return (ObjectUtils.nullSafeHashCode(this.clientId) * 31 + this.subtopic.hashCode()) * 31 + this.selector.hashCode();
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -81,6 +81,11 @@ public class FlexAuthenticationEntryPoint extends Http403ForbiddenEntryPoint {
 	
 	private Set<ExceptionTranslator> exceptionTranslators;
 	
+	public FlexAuthenticationEntryPoint() {
+		// Only the first body is inspected to address the error reply, so leave the rest undecoded
+		this.converter.setLazyBodyDecoding(true);
+	}
+	
 	/**
 	 * If the incoming message is an {@link ActionMessage}, indicating a standard Flex Remoting or Messaging 
 	 * request, invokes Spring BlazeDS's {@link ExceptionTranslator}s with the {@link AuthenticationException} and 
@@ -120,7 +125,13 @@ public class FlexAuthenticationEntryPoint extends Http403ForbiddenEntryPoint {
 	                MessageException result = translator.translate(authException);
 	                ErrorMessage err = result.createErrorMessage();
                 	MessageBody body = (MessageBody) ((ActionMessage) deserializedInput).getBody(0);
-                	Message amfInputMessage = body.getDataAsMessage(); 
+                	Message amfInputMessage = null;
+                	try {
+                		amfInputMessage = body.getDataAsMessage();
+                	} catch (HttpMessageNotReadableException ex) {
+                		log.info("Authentication failure detected, but request body could not be read as AMF.", ex);
+                		break;
+                	}
                 	err.setCorrelationId(amfInputMessage.getMessageId());
                 	err.setDestination(amfInputMessage.getDestination());
                 	err.setClientId(amfInputMessage.getClientId());
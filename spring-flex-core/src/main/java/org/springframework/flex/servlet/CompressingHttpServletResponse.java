@@ -0,0 +1,159 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.servlet;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.flex.http.AmfResponseCompressor;
+
+/**
+ * Response wrapper that compresses the output of a BlazeDS endpoint.
+ *
+ * <p>Request-response endpoints serialize the complete response before writing it and announce its size through
+ * {@link #setContentLength(int)}, which is used here to decide whether to compress.  The compressed content is written
+ * through to the underlying response as it is produced, without a {@code Content-Length}, so it is never buffered a second
+ * time.  Responses whose length is not announced up front, such as those of streaming endpoints, are passed through
+ * unchanged.
+ *
+ * @author Jeremy Grelle
+ */
+class CompressingHttpServletResponse extends HttpServletResponseWrapper {
+
+    private final AmfResponseCompressor compressor;
+
+    private final String contentEncoding;
+
+    private int pendingContentLength = -1;
+
+    private CompressingServletOutputStream compressingStream;
+
+    private ServletOutputStream outputStream;
+
+    CompressingHttpServletResponse(HttpServletResponse response, AmfResponseCompressor compressor, String acceptEncoding) {
+        super(response);
+        this.compressor = compressor;
+        this.contentEncoding = compressor.negotiateContentEncoding(acceptEncoding);
+        response.addHeader(AmfResponseCompressor.VARY_HEADER, AmfResponseCompressor.ACCEPT_ENCODING_HEADER);
+    }
+
+    @Override
+    public void setContentLength(int len) {
+        if (this.contentEncoding != null && this.outputStream == null && this.compressor.isCompressible(len)) {
+            this.pendingContentLength = len;
+        } else {
+            super.setContentLength(len);
+        }
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (this.outputStream == null) {
+            if (this.pendingContentLength >= 0) {
+                setHeader(AmfResponseCompressor.CONTENT_ENCODING_HEADER, this.contentEncoding);
+                this.compressingStream = new CompressingServletOutputStream(
+                    this.compressor.createCompressingStream(super.getOutputStream(), this.contentEncoding));
+                this.outputStream = this.compressingStream;
+            } else {
+                this.outputStream = super.getOutputStream();
+            }
+        }
+        return this.outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (this.pendingContentLength >= 0) {
+            // Only the binary output is compressed
+            super.setContentLength(this.pendingContentLength);
+            this.pendingContentLength = -1;
+        }
+        return super.getWriter();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        this.pendingContentLength = -1;
+    }
+
+    /**
+     * Completes the compressed content, if any, once the endpoint has finished writing.
+     */
+    void finish() throws IOException {
+        if (this.compressingStream != null) {
+            this.compressingStream.finish();
+        }
+    }
+
+    /**
+     * Releases the compressor of content that was not completed because the endpoint failed.  Has no effect once the
+     * content has been finished.
+     */
+    void release() {
+        if (this.compressingStream != null) {
+            this.compressor.discardCompressingStream(this.compressingStream.target);
+        }
+    }
+
+    private static final class CompressingServletOutputStream extends ServletOutputStream {
+
+        private final DeflaterOutputStream target;
+
+        private boolean finished = false;
+
+        private CompressingServletOutputStream(DeflaterOutputStream target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            this.target.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            this.target.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (!this.finished) {
+                this.target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+            this.target.close();
+        }
+
+        private void finish() throws IOException {
+            if (!this.finished) {
+                this.finished = true;
+                this.target.finish();
+                this.target.flush();
+            }
+        }
+    }
+}
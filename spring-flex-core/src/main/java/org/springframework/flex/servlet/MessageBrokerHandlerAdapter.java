@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2011 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,12 +16,16 @@
 
 package org.springframework.flex.servlet;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.servlet.ServletConfig;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.flex.core.metrics.RequestTiming;
+import org.springframework.flex.http.AmfResponseCompressor;
 import org.springframework.util.Assert;
 import org.springframework.web.context.ServletConfigAware;
 import org.springframework.web.servlet.HandlerAdapter;
@@ -43,6 +47,15 @@ import flex.messaging.io.SerializationContext;
  * This class is automatically registered with the application context when using the <code>message-broker</code> tag in
  * the xml configuration namespace.
  * 
+ * <p>
+ * If an {@link AmfResponseCompressor} is set, responses from request-response endpoints are compressed for clients that
+ * accept it.
+ * 
+ * <p>
+ * If a {@link #setSlowRequestThreshold(long) slowRequestThreshold} is set, the time spent in each phase of processing a
+ * request is recorded with a {@link RequestTiming}, and the breakdown of any request that takes longer than the threshold
+ * is logged at WARN level together with the destinations and operations of its messages.
+ * 
  * @see MessageBroker
  * @see HandlerMapping
  * 
@@ -54,6 +67,10 @@ public class MessageBrokerHandlerAdapter implements HandlerAdapter, ServletConfi
 
     private ServletConfig servletConfig;
 
+    private AmfResponseCompressor responseCompressor;
+
+    private long slowRequestThreshold = -1;
+
     /**
      * 
      * {@inheritDoc}
@@ -68,6 +85,7 @@ public class MessageBrokerHandlerAdapter implements HandlerAdapter, ServletConfi
      */
     public ModelAndView handle(HttpServletRequest req, HttpServletResponse res, Object handler) throws Exception {
         MessageBroker broker = (MessageBroker) handler;
+        RequestTiming timing = this.slowRequestThreshold >= 0 ? RequestTiming.start() : null;
 
         try {
             // Update thread locals
@@ -102,11 +120,26 @@ public class MessageBrokerHandlerAdapter implements HandlerAdapter, ServletConfi
                 return null;
             }
 
+            if (timing != null) {
+                timing.setEndpointId(endpoint.getId());
+            }
+
             try {
                 if (logger.isInfoEnabled()) {
                     logger.info("Channel endpoint " + endpoint.getId() + " received request.");
                 }
-                endpoint.service(req, res);
+                if (this.responseCompressor != null) {
+                    CompressingHttpServletResponse compressingResponse = new CompressingHttpServletResponse(res, this.responseCompressor,
+                        req.getHeader(AmfResponseCompressor.ACCEPT_ENCODING_HEADER));
+                    try {
+                        endpoint.service(req, compressingResponse);
+                        compressingResponse.finish();
+                    } finally {
+                        compressingResponse.release();
+                    }
+                } else {
+                    endpoint.service(req, res);
+                }
             } catch (UnsupportedOperationException ue) {
                 if (logger.isErrorEnabled()) {
                     logger.error("Channel endpoint " + endpoint.getId() + " received request for an unsupported operation.", ue);
@@ -119,6 +152,10 @@ public class MessageBrokerHandlerAdapter implements HandlerAdapter, ServletConfi
         } finally {
             FlexContext.clearThreadLocalObjects();
             SerializationContext.clearThreadLocalObjects();
+            if (timing != null) {
+                timing.finish();
+                logIfSlow(timing);
+            }
         }
 
         return null;
@@ -132,6 +169,27 @@ public class MessageBrokerHandlerAdapter implements HandlerAdapter, ServletConfi
         this.servletConfig = servletConfig;
     }
 
+    /**
+     * Sets the compressor used to compress endpoint responses for clients that accept it.
+     * 
+     * <p>
+     * By default, responses are not compressed.
+     */
+    public void setResponseCompressor(AmfResponseCompressor responseCompressor) {
+        this.responseCompressor = responseCompressor;
+    }
+
+    /**
+     * Sets the time in milliseconds above which the phase breakdown of a request is logged.
+     * 
+     * <p>
+     * By default, requests are not timed. A threshold of {@code 0} logs the breakdown of every request that carries
+     * messages.
+     */
+    public void setSlowRequestThreshold(long slowRequestThreshold) {
+        this.slowRequestThreshold = slowRequestThreshold;
+    }
+
     /**
      * 
      * {@inheritDoc}
@@ -140,4 +198,11 @@ public class MessageBrokerHandlerAdapter implements HandlerAdapter, ServletConfi
         return handler instanceof MessageBroker;
     }
 
+    private void logIfSlow(RequestTiming timing) {
+        // Requests without messages, such as streaming connections, are not timed meaningfully
+        if (timing.getMessageCount() > 0 && timing.getTotal(TimeUnit.MILLISECONDS) >= this.slowRequestThreshold && logger.isWarnEnabled()) {
+            logger.warn("Slow request: " + timing);
+        }
+    }
+
 }
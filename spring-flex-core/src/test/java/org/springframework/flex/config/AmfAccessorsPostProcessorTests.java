@@ -0,0 +1,93 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.beans.factory.config.RuntimeBeanReference;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.beans.factory.support.DefaultListableBeanFactory;
+import org.springframework.beans.factory.support.ManagedSet;
+import org.springframework.flex.core.MessageBrokerFactoryBean;
+import org.springframework.flex.core.io.AbstractAmfConversionServiceConfigProcessor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class AmfAccessorsPostProcessorTests {
+
+    private final DefaultListableBeanFactory beanFactory = new DefaultListableBeanFactory();
+
+    @Before
+    public void setUp() {
+        registerBroker("generatedBroker", "generatedProcessor", "explicitProcessor");
+        registerBroker("defaultBroker", "otherProcessor");
+        this.beanFactory.registerBeanDefinition("generatedProcessor", BeanDefinitionBuilder.genericBeanDefinition(TestConfigProcessor.class).getBeanDefinition());
+        this.beanFactory.registerBeanDefinition("explicitProcessor", BeanDefinitionBuilder.genericBeanDefinition(TestConfigProcessor.class)
+            .addPropertyValue("useGeneratedAccessors", false).getBeanDefinition());
+        this.beanFactory.registerBeanDefinition("otherProcessor", BeanDefinitionBuilder.genericBeanDefinition(TestConfigProcessor.class).getBeanDefinition());
+
+        AmfAccessorsPostProcessor postProcessor = new AmfAccessorsPostProcessor();
+        postProcessor.setUseGeneratedAccessors(true);
+        postProcessor.setMessageBrokers(Collections.singleton("generatedBroker"));
+        postProcessor.setBeanFactory(this.beanFactory);
+        this.beanFactory.addBeanPostProcessor(postProcessor);
+    }
+
+    @Test
+    public void appliedToBrokerProcessors() {
+        assertTrue(isUsingGeneratedAccessors("generatedProcessor"));
+    }
+
+    @Test
+    public void explicitValueRetained() {
+        assertFalse(isUsingGeneratedAccessors("explicitProcessor"));
+    }
+
+    @Test
+    public void otherBrokerProcessorsUnaffected() {
+        assertFalse(isUsingGeneratedAccessors("otherProcessor"));
+    }
+
+    private void registerBroker(String brokerName, String... processorNames) {
+        Set<RuntimeBeanReference> processors = new ManagedSet<RuntimeBeanReference>();
+        for (String processorName : processorNames) {
+            processors.add(new RuntimeBeanReference(processorName));
+        }
+        this.beanFactory.registerBeanDefinition(brokerName, BeanDefinitionBuilder.genericBeanDefinition(MessageBrokerFactoryBean.class)
+            .addPropertyValue("configProcessors", processors).setLazyInit(true).getBeanDefinition());
+    }
+
+    private boolean isUsingGeneratedAccessors(String processorName) {
+        return (Boolean) ReflectionTestUtils.getField(this.beanFactory.getBean(processorName), "useGeneratedAccessors");
+    }
+
+    public static class TestConfigProcessor extends AbstractAmfConversionServiceConfigProcessor {
+
+        @Override
+        protected Set<Class<?>> findTypesToRegister() {
+            return Collections.emptySet();
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,6 +23,7 @@ import javax.jms.JMSException;
 
 import org.springframework.flex.config.BeanIds;
 import org.springframework.flex.messaging.jms.JmsAdapter;
+import org.springframework.jms.connection.CachingConnectionFactory;
 import org.springframework.test.context.ContextConfiguration;
 
 import flex.messaging.MessageBroker;
@@ -45,7 +46,23 @@ public class JmsMessageDestinationBeanDefinitionParserTests extends AbstractMess
         assertNotNull("adapter not set", destination.getAdapter());
         JmsAdapter adapter = (JmsAdapter) destination.getAdapter();
         assertTrue(adapter.getJmsTemplate().getDefaultDestination() instanceof TestDestination);
-        assertSame(applicationContext.getBean("customConnectionFactory"), adapter.getJmsTemplate().getConnectionFactory());
+        CachingConnectionFactory connectionFactory = (CachingConnectionFactory) adapter.getJmsTemplate().getConnectionFactory();
+        assertSame(applicationContext.getBean("customConnectionFactory"), connectionFactory.getTargetConnectionFactory());
+    }
+
+    @Test
+    public void sessionCaching() {
+        this.broker = (MessageBroker) applicationContext.getBean("messageServiceBroker", MessageBroker.class);
+        assertNotNull("MessageBroker bean not found", this.broker);
+        MessageService ms = (MessageService) this.broker.getService("message-service");
+        assertNotNull("Could not find the message service", ms);
+        MessageDestination destination = (MessageDestination) ms.getDestination(getCustomConfigDestination());
+        assertNotNull("destination not found", destination);
+        JmsAdapter adapter = (JmsAdapter) destination.getAdapter();
+        CachingConnectionFactory connectionFactory = (CachingConnectionFactory) adapter.getJmsTemplate().getConnectionFactory();
+        assertEquals(5, connectionFactory.getSessionCacheSize());
+        assertFalse(connectionFactory.isCacheProducers());
+        assertFalse(connectionFactory.isReconnectOnException());
     }
 
     @Test
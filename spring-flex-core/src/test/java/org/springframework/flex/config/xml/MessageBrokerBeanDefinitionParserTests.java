@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2010 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -21,6 +21,7 @@ import java.lang.reflect.Method;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -42,6 +43,7 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.AnnotationConfigUtils;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.flex.config.AbstractFlexConfigurationTests;
+import org.springframework.flex.config.AmfAccessorsPostProcessor;
 import org.springframework.flex.config.BeanIds;
 import org.springframework.flex.config.FlexConfigurationManager;
 import org.springframework.flex.config.MessageBrokerConfigProcessor;
@@ -56,6 +58,8 @@ import org.springframework.flex.core.MessageProcessingContext;
 import org.springframework.flex.core.ResourceHandlingMessageInterceptor;
 import org.springframework.flex.core.io.SpringPropertyProxy;
 import org.springframework.flex.core.io.domain.Person;
+import org.springframework.flex.core.metrics.DefaultMessageMetricsRegistry;
+import org.springframework.flex.core.metrics.MessageMetricsInterceptor;
 import org.springframework.flex.security3.EndpointInterceptor;
 import org.springframework.flex.security3.SecurityConfigurationPostProcessor;
 import org.springframework.flex.security3.SpringSecurityLoginCommand;
@@ -236,6 +240,23 @@ public class MessageBrokerBeanDefinitionParserTests extends AbstractFlexConfigur
         }
     }
 
+    @Test
+    public void messageMetrics() {
+        this.broker = applicationContext.getBean("messageMetrics", MessageBroker.class);
+        assertNotNull("MessageBroker bean not found for custom id", this.broker);
+        assertNotNull("Metrics registry not found", applicationContext.getBean("messageMetrics" + BeanIds.MESSAGE_METRICS_SUFFIX,
+                DefaultMessageMetricsRegistry.class));
+        for (Endpoint endpoint : this.broker.getEndpoints().values()) {
+            Advised advisedEndpoint = (Advised) endpoint;
+            Advisor a = advisedEndpoint.getAdvisors()[1];
+            List<MessageInterceptor> interceptors = new ArrayList<MessageInterceptor>(((MessageInterceptionAdvice) a.getAdvice()).getMessageInterceptors());
+            assertEquals(2, interceptors.size());
+            assertSame("Custom interceptor not found", interceptors.get(0), applicationContext.getBean("interceptor1",
+                    TestMessageInterceptor.class));
+            assertTrue("Metrics interceptor not found", interceptors.get(1) instanceof MessageMetricsInterceptor);
+        }
+    }
+
     @Test
     public void customMessageInterceptorsSpecifiedOrder() {
         this.broker = applicationContext.getBean("customMessageInterceptorsOrdered", MessageBroker.class);
@@ -420,6 +441,16 @@ public class MessageBrokerBeanDefinitionParserTests extends AbstractFlexConfigur
         assertFalse("Default handler mapping not disabled", applicationContext.containsBean("disabledHandlerMappingDefaultHandlerMapping"));
     }
 
+    @Test
+    public void generatedAmfAccessors() {
+        this.broker = applicationContext.getBean("generatedAmfAccessors", MessageBroker.class);
+        assertNotNull("MessageBroker bean not found for custom id", this.broker);
+        AmfAccessorsPostProcessor processor = applicationContext.getBean(BeanIds.AMF_ACCESSORS_POST_PROCESSOR, AmfAccessorsPostProcessor.class);
+        assertTrue("Generated accessors not enabled", (Boolean) ReflectionTestUtils.getField(processor, "useGeneratedAccessors"));
+        assertEquals("Generated accessors not scoped to the message broker", Collections.singleton("generatedAmfAccessors"),
+            ReflectionTestUtils.getField(processor, "messageBrokers"));
+    }
+
     @Test
     public void endpointSecured() {
         this.broker = applicationContext.getBean("endpointSecured", MessageBroker.class);
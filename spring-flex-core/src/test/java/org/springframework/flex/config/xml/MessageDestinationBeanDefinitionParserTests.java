@@ -17,6 +17,7 @@
 package org.springframework.flex.config.xml;
 
 import org.springframework.flex.config.BeanIds;
+import org.springframework.flex.messaging.ConflatingMessagingAdapter;
 import org.springframework.test.context.ContextConfiguration;
 
 import flex.messaging.MessageBroker;
@@ -25,6 +26,7 @@ import flex.messaging.messages.Message;
 import flex.messaging.services.MessageService;
 import flex.messaging.services.messaging.adapters.ActionScriptAdapter;
 import flex.messaging.services.messaging.adapters.MessagingAdapter;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import org.junit.Test;
@@ -57,6 +59,18 @@ public class MessageDestinationBeanDefinitionParserTests extends AbstractMessage
         assertTrue(destination.getServerSettings().isDisallowWildcardSubtopics());
     }
 
+    @Test
+    public void conflatingAdapter() {
+        this.broker = (MessageBroker) applicationContext.getBean(BeanIds.MESSAGE_BROKER, MessageBroker.class);
+        assertNotNull("MessageBroker bean not found for default ID", this.broker);
+        MessageService ms = (MessageService) this.broker.getService("message-service");
+        assertNotNull("Could not find the message service", ms);
+        MessageDestination destination = (MessageDestination) ms.getDestination("nativeConflating");
+        assertNotNull("destination not found", destination);
+        assertTrue(destination.getAdapter() instanceof ConflatingMessagingAdapter);
+        assertEquals("symbol", ((ConflatingMessagingAdapter) destination.getAdapter()).getKeyHeader());
+    }
+
     @Override
     protected String getCustomConfigDestination() {
         return "nativeCustomConfig";
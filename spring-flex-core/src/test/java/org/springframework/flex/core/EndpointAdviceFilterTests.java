@@ -0,0 +1,186 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import flex.messaging.MessageException;
+import flex.messaging.endpoints.amf.AMFFilter;
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.amf.ActionContext;
+import flex.messaging.io.amf.MessageBody;
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class EndpointAdviceFilterTests {
+
+    private final AsyncMessage inMessage = new AsyncMessage();
+
+    private final AcknowledgeMessage outMessage = new AcknowledgeMessage();
+
+    private final MessageInterceptionAdvice interceptionAdvice = new MessageInterceptionAdvice();
+
+    private final ExceptionTranslationAdvice translationAdvice = new ExceptionTranslationAdvice();
+
+    private final StubServiceFilter serviceFilter = new StubServiceFilter();
+
+    private final RecordingInterceptor interceptor = new RecordingInterceptor();
+
+    private ActionContext context;
+
+    private EndpointAdviceFilter filter;
+
+    @Before
+    public void setUp() {
+        this.inMessage.setMessageId("in");
+        this.inMessage.setDestination("dest");
+        this.interceptionAdvice.getMessageInterceptors().add(this.interceptor);
+
+        this.context = new ActionContext();
+        MessageBody request = new MessageBody();
+        List<Object> data = new ArrayList<Object>();
+        data.add(this.inMessage);
+        request.setData(data);
+        this.context.setRequestMessageBody(request);
+        this.context.setResponseMessageBody(new MessageBody());
+
+        this.filter = new EndpointAdviceFilter(new EndpointConfigProcessorTests.CustomEndpoint(), this.interceptionAdvice, this.translationAdvice);
+        this.filter.setNext(this.serviceFilter);
+    }
+
+    @Test
+    public void interceptorsApplied() throws IOException {
+        this.filter.invoke(this.context);
+
+        assertSame(this.inMessage, this.interceptor.preProcessed);
+        assertSame(this.outMessage, this.interceptor.postProcessed);
+        assertSame(this.outMessage, this.context.getResponseMessageBody().getData());
+        assertTrue(this.interceptor.completed);
+        assertNull(this.interceptor.completionException);
+    }
+
+    @Test
+    public void faultResponseTranslated() throws IOException {
+        final MessageException translated = new MessageException();
+        translated.setCode("Translated");
+        this.translationAdvice.setExceptionTranslators(Collections.<ExceptionTranslator> singleton(new ExceptionTranslator() {
+
+            public boolean handles(Class<?> clazz) {
+                return IllegalStateException.class.isAssignableFrom(clazz);
+            }
+
+            public MessageException translate(Throwable t) {
+                return translated;
+            }
+        }));
+        this.serviceFilter.failure = new IllegalStateException();
+
+        this.filter.invoke(this.context);
+
+        assertNull(this.interceptor.postProcessed);
+        assertSame(this.serviceFilter.failure, ((MessageException) this.interceptor.completionException).getRootCause());
+        ErrorMessage response = (ErrorMessage) this.context.getResponseMessageBody().getData();
+        assertEquals("Translated", response.faultCode);
+        assertEquals("in", response.getCorrelationId());
+        assertEquals("dest", response.getDestination());
+    }
+
+    @Test
+    public void preProcessExceptionWrittenAsFault() throws IOException {
+        this.interceptor.failure = new IllegalArgumentException("rejected");
+
+        this.filter.invoke(this.context);
+
+        assertNull(this.serviceFilter.received);
+        assertEquals(MessageIOConstants.STATUS_ERR, this.context.getStatus());
+        ErrorMessage response = (ErrorMessage) this.context.getResponseMessageBody().getData();
+        assertSame(this.interceptor.failure, response.rootCause);
+        assertEquals("in", response.getCorrelationId());
+        assertSame(this.interceptor.failure, this.interceptor.completionException);
+    }
+
+    private final class StubServiceFilter extends AMFFilter {
+
+        private RuntimeException failure;
+
+        private Message received;
+
+        @Override
+        public void invoke(ActionContext context) throws IOException {
+            this.received = (Message) ((List<?>) context.getRequestMessageBody().getData()).get(0);
+            if (this.failure != null) {
+                MessageException me = new MessageException();
+                me.setCode("Server.Processing");
+                me.setRootCause(this.failure);
+                ErrorMessage error = me.createErrorMessage();
+                error.setCorrelationId(this.received.getMessageId());
+                error.setDestination(this.received.getDestination());
+                context.getResponseMessageBody().setData(error);
+                context.setStatus(MessageIOConstants.STATUS_ERR);
+            } else {
+                context.getResponseMessageBody().setData(EndpointAdviceFilterTests.this.outMessage);
+            }
+        }
+    }
+
+    private static final class RecordingInterceptor implements ResourceHandlingMessageInterceptor {
+
+        private RuntimeException failure;
+
+        private Message preProcessed;
+
+        private Message postProcessed;
+
+        private boolean completed;
+
+        private Exception completionException;
+
+        public Message preProcess(MessageProcessingContext context, Message inputMessage) {
+            this.preProcessed = inputMessage;
+            if (this.failure != null) {
+                throw this.failure;
+            }
+            return inputMessage;
+        }
+
+        public Message postProcess(MessageProcessingContext context, Message inputMessage, Message outputMessage) {
+            this.postProcessed = outputMessage;
+            return outputMessage;
+        }
+
+        public void afterCompletion(MessageProcessingContext context, Message inputMessage, Message outputMessage, Exception ex) {
+            this.completed = true;
+            this.completionException = ex;
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -23,6 +23,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
@@ -34,11 +35,13 @@ import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.aop.framework.Advised;
+import org.springframework.util.ReflectionUtils;
 
 import flex.messaging.MessageBroker;
 import flex.messaging.endpoints.AMFEndpoint;
 import flex.messaging.endpoints.AbstractEndpoint;
 import flex.messaging.endpoints.BaseHTTPEndpoint;
+import flex.messaging.endpoints.amf.AMFFilter;
 import flex.messaging.messages.Message;
 
 public class EndpointConfigProcessorTests {
@@ -144,6 +147,43 @@ public class EndpointConfigProcessorTests {
         }
     }
 
+    @Test
+    public void filterChainAdvice() {
+        List<EndpointAdvisor> advisors = new ArrayList<EndpointAdvisor>();
+        advisors.add(new EndpointServiceMessagePointcutAdvisor(new ExceptionTranslationAdvice()));
+        advisors.add(new EndpointServiceMessagePointcutAdvisor(new MessageInterceptionAdvice()));
+        this.processor = new EndpointConfigProcessor(advisors);
+        this.processor.setUseFilterChain(true);
+
+        this.processor.processAfterStartup(this.broker);
+
+        assertSame(this.endpoint3, this.broker.getEndpoint("custom"));
+        Field filterChainField = ReflectionUtils.findField(BaseHTTPEndpoint.class, "filterChain");
+        ReflectionUtils.makeAccessible(filterChainField);
+        AMFFilter filter = (AMFFilter) ReflectionUtils.getField(filterChainField, this.endpoint3);
+        int adviceFilters = 0;
+        while (filter.getNext() != null) {
+            if (filter instanceof EndpointAdviceFilter) {
+                adviceFilters++;
+                assertNull("Advice filter must precede the last filter", filter.getNext().getNext());
+            }
+            filter = filter.getNext();
+        }
+        assertEquals(1, adviceFilters);
+    }
+
+    @Test
+    public void filterChainAdviceFallsBackToProxyForCustomAdvice() {
+        List<EndpointAdvisor> advisors = new ArrayList<EndpointAdvisor>();
+        advisors.add(this.advisor1);
+        this.processor = new EndpointConfigProcessor(advisors);
+        this.processor.setUseFilterChain(true);
+
+        this.processor.processAfterStartup(this.broker);
+
+        assertTrue(this.broker.getEndpoint("custom") instanceof Advised);
+    }
+
     public static class CustomEndpoint extends AMFEndpoint {
 
         @Override
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -16,6 +16,9 @@
 
 package org.springframework.flex.core;
 
+import java.util.Iterator;
+import java.util.Set;
+
 import static org.junit.Assert.*;
 import org.junit.Before;
 import org.junit.Test;
@@ -44,15 +47,17 @@ public class ExceptionTranslationAdviceTests {
 
     private AbstractEndpoint advisedEndpoint;
 
+    private ExceptionTranslationAdvice advice;
+
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
 
         ProxyFactory factory = new ProxyFactory();
         factory.setProxyTargetClass(true);
-        ExceptionTranslationAdvice advice = new ExceptionTranslationAdvice();
-        advice.getExceptionTranslators().add(new TestExceptionTranslator());
-        factory.addAdvisor(new EndpointServiceMessagePointcutAdvisor(advice));
+        this.advice = new ExceptionTranslationAdvice();
+        this.advice.getExceptionTranslators().add(new TestExceptionTranslator());
+        factory.addAdvisor(new EndpointServiceMessagePointcutAdvisor(this.advice));
         factory.setTarget(this.endpoint);
         this.advisedEndpoint = (AbstractEndpoint) factory.getProxy();
     }
@@ -114,6 +119,69 @@ public class ExceptionTranslationAdviceTests {
         }
     }
 
+    @Test
+    public void translatorResolutionCached() {
+        CountingExceptionTranslator counting = new CountingExceptionTranslator();
+        this.advice.getExceptionTranslators().add(counting);
+
+        for (int i = 0; i < 3; i++) {
+            MessageException result = (MessageException) this.advice.translate(new IllegalStateException());
+            assertEquals(CountingExceptionTranslator.PROCESSED_CODE, result.getCode());
+        }
+        assertEquals(1, counting.handlesCalls);
+
+        RuntimeException unknown = new RuntimeException();
+        assertSame(unknown, this.advice.translate(unknown));
+        assertSame(unknown, this.advice.translate(unknown));
+        assertEquals(2, counting.handlesCalls);
+    }
+
+    @Test
+    public void translatorCacheInvalidatedWhenTranslatorAdded() {
+        IllegalStateException unknown = new IllegalStateException();
+        assertSame(unknown, this.advice.translate(unknown));
+
+        CountingExceptionTranslator counting = new CountingExceptionTranslator();
+        this.advice.getExceptionTranslators().add(counting);
+
+        MessageException result = (MessageException) this.advice.translate(unknown);
+        assertEquals(CountingExceptionTranslator.PROCESSED_CODE, result.getCode());
+    }
+
+    @Test
+    public void translatorCacheInvalidatedWhenTranslatorSwapped() {
+        Set<ExceptionTranslator> translators = this.advice.getExceptionTranslators();
+        IllegalStateException unknown = new IllegalStateException();
+        assertSame(unknown, this.advice.translate(unknown));
+
+        Iterator<ExceptionTranslator> iterator = translators.iterator();
+        iterator.next();
+        iterator.remove();
+        translators.add(new CountingExceptionTranslator());
+
+        MessageException result = (MessageException) this.advice.translate(unknown);
+        assertEquals(CountingExceptionTranslator.PROCESSED_CODE, result.getCode());
+    }
+
+    public static class CountingExceptionTranslator implements ExceptionTranslator {
+
+        public static final String PROCESSED_CODE = "Counting.Processed";
+
+        private int handlesCalls;
+
+        public boolean handles(Class<?> clazz) {
+            this.handlesCalls++;
+            return IllegalStateException.class.equals(clazz);
+        }
+
+        public MessageException translate(Throwable t) {
+            MessageException result = new MessageException();
+            result.setRootCause(t);
+            result.setCode(PROCESSED_CODE);
+            return result;
+        }
+    }
+
     @SuppressWarnings("serial")
     public class TestException extends RuntimeException {
 
@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,6 +17,9 @@
 package org.springframework.flex.core;
 
 import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Before;
 import org.junit.Test;
 import static org.mockito.Mockito.when;
@@ -24,6 +27,7 @@ import static org.mockito.Mockito.when;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.flex.core.metrics.RequestTiming;
 
 import flex.messaging.MessageException;
 import flex.messaging.endpoints.AbstractEndpoint;
@@ -48,6 +52,8 @@ public class MessageInterceptionAdviceTests {
 
     private AbstractEndpoint advisedEndpoint;
 
+    private MessageInterceptionAdvice advice;
+
     @Before
     public void setUp() {
         MockitoAnnotations.initMocks(this);
@@ -159,12 +165,66 @@ public class MessageInterceptionAdviceTests {
         assertTrue("Interceptor not completed", interceptor.completed);
     }
 
+    @Test
+    public void interceptorAddedAfterFirstMessage() {
+        PassthroughInterceptor first = new PassthroughInterceptor();
+        setupInterceptor(first);
+        when(this.endpoint.serviceMessage(this.inMessage)).thenReturn(this.outMessage);
+        this.advisedEndpoint.serviceMessage(this.inMessage);
+
+        PassthroughInterceptor second = new PassthroughInterceptor();
+        this.advice.getMessageInterceptors().add(second);
+        this.advisedEndpoint.serviceMessage(this.inMessage);
+
+        assertTrue(second.preInvoked);
+        assertTrue(second.postInvoked);
+    }
+
+    @Test
+    public void onlyPreprocessedResourceHandlingInterceptorsCompleted() {
+        ResourceHandlingInterceptor first = new ResourceHandlingInterceptor();
+        PreProcessExceptionInterceptor failing = new PreProcessExceptionInterceptor();
+        ResourceHandlingInterceptor last = new ResourceHandlingInterceptor();
+        setupInterceptor(first);
+        this.advice.getMessageInterceptors().add(failing);
+        this.advice.getMessageInterceptors().add(last);
+
+        try {
+            this.advisedEndpoint.serviceMessage(this.inMessage);
+            fail("Exception not re-thrown");
+        } catch (TestException ex) {
+            // expected
+        }
+        assertTrue("Interceptor not completed", first.completed);
+        assertTrue("Interceptor not completed", failing.completed);
+        assertFalse("Interceptor completed without being preprocessed", last.completed);
+    }
+
+    @Test
+    public void requestTimingRecorded() {
+        setupInterceptor(new PassthroughInterceptor());
+        this.advice.getMessageInterceptors().clear();
+        when(this.endpoint.serviceMessage(this.inMessage)).thenReturn(this.outMessage);
+
+        RequestTiming timing = RequestTiming.start();
+        try {
+            this.advisedEndpoint.serviceMessage(this.inMessage);
+            this.advisedEndpoint.serviceMessage(this.inMessage);
+        } finally {
+            timing.finish();
+        }
+
+        assertEquals(2, timing.getMessageCount());
+        assertTrue(timing.getTotal(TimeUnit.NANOSECONDS) >= timing.getInvocation(TimeUnit.NANOSECONDS));
+        assertNull(RequestTiming.current());
+    }
+
     private void setupInterceptor(MessageInterceptor interceptor) {
         ProxyFactory factory = new ProxyFactory();
         factory.setProxyTargetClass(true);
-        MessageInterceptionAdvice advice = new MessageInterceptionAdvice();
-        advice.getMessageInterceptors().add(interceptor);
-        factory.addAdvisor(new EndpointServiceMessagePointcutAdvisor(advice));
+        this.advice = new MessageInterceptionAdvice();
+        this.advice.getMessageInterceptors().add(interceptor);
+        factory.addAdvisor(new EndpointServiceMessagePointcutAdvisor(this.advice));
         factory.setTarget(this.endpoint);
         this.advisedEndpoint = (AbstractEndpoint) factory.getProxy();
     }
@@ -0,0 +1,94 @@
+package org.springframework.flex.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.flex.core.io.domain.Address;
+import org.springframework.flex.core.io.domain.Person;
+
+public class ConversionDecisionCacheTests {
+
+    private SpringPropertyProxy proxy;
+
+    @Before
+    public void setUp() {
+        GenericConversionService cs = new GenericConversionService();
+        cs.addConverter(new NumberConverter());
+        this.proxy = SpringPropertyProxy.proxyFor(Person.class, false, cs);
+    }
+
+    @Test
+    public void decisionsAreCachedPerPropertyAndValueType() {
+        Person person = new Person();
+        person.setName("Dad");
+
+        assertEquals("Dad", this.proxy.getValue(person, "name"));
+        assertEquals(0, this.proxy.getConversionCacheHitCount());
+        assertEquals(1, this.proxy.getConversionCacheMissCount());
+
+        assertEquals("Dad", this.proxy.getValue(person, "name"));
+        assertEquals(1, this.proxy.getConversionCacheHitCount());
+        assertEquals(1, this.proxy.getConversionCacheMissCount());
+    }
+
+    @Test
+    public void cachedConversionIsStillApplied() {
+        Person person = new Person();
+
+        assertEquals(Double.NaN, this.proxy.getValue(person, "id"));
+        assertEquals(Double.NaN, this.proxy.getValue(person, "id"));
+        assertEquals(1, this.proxy.getConversionCacheHitCount());
+
+        this.proxy.setValue(person, "id", Double.NaN);
+        assertNull(person.getId());
+        this.proxy.setValue(person, "id", new Double(5));
+        assertEquals(new Integer(5), person.getId());
+    }
+
+    @Test
+    public void clearDiscardsDecisions() {
+        Person person = new Person();
+        person.setAddress(new Address());
+
+        this.proxy.getValue(person, "address");
+        this.proxy.clearConversionCache();
+        this.proxy.getValue(person, "address");
+
+        assertEquals(0, this.proxy.getConversionCacheHitCount());
+        assertEquals(2, this.proxy.getConversionCacheMissCount());
+    }
+
+    @Test
+    public void assignableValuesAreNotConverted() {
+        CountingConversionService cs = new CountingConversionService();
+        cs.addConverter(new NumberConverter());
+        SpringPropertyProxy countingProxy = SpringPropertyProxy.proxyFor(Person.class, false, cs);
+        Person person = new Person();
+        person.setName("Dad");
+        person.setAddress(new Address());
+
+        assertEquals("Dad", countingProxy.getValue(person, "name"));
+        assertSame(person.getAddress(), countingProxy.getValue(person, "address"));
+        assertSame(person, countingProxy.getInstanceToSerialize(person));
+        countingProxy.setValue(person, "name", "Mom");
+
+        assertEquals("Mom", person.getName());
+        assertEquals(0, cs.convertCount);
+    }
+
+    private static final class CountingConversionService extends GenericConversionService {
+
+        private int convertCount;
+
+        @Override
+        public Object convert(Object source, TypeDescriptor sourceType, TypeDescriptor targetType) {
+            this.convertCount++;
+            return super.convert(source, sourceType, targetType);
+        }
+    }
+}
@@ -2,10 +2,13 @@ package org.springframework.flex.core.io;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import java.io.IOException;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import org.junit.Before;
@@ -16,6 +19,7 @@ import org.springframework.flex.core.io.domain.ImmutableValueObject;
 import org.springframework.flex.core.io.domain.Person;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import flex.messaging.io.PropertyProxyRegistry;
 import flex.messaging.io.SerializationContext;
@@ -77,6 +81,37 @@ public class DelayedWriteSpringPropertyProxyTests {
         assertEquals(new Integer(5), result.getVoRef().getZoo());
     }
 
+    @Test
+    public void pendingInstancesAreRecycled() {
+        SpringPropertyProxy proxy = (SpringPropertyProxy) PropertyProxyRegistry.getRegistry().getProxy(ImmutableValueObject.class);
+
+        Object pending = proxy.createInstance(ImmutableValueObject.class.getName());
+        proxy.setValue(pending, "foo", "bar");
+        proxy.setValue(pending, "zoo", new Double(1));
+        proxy.setValue(pending, "unknown", "ignored");
+        ImmutableValueObject first = (ImmutableValueObject) proxy.instanceComplete(pending);
+
+        assertEquals("bar", first.getFoo());
+        assertEquals(new Integer(1), first.getZoo());
+
+        Object recycled = proxy.createInstance(ImmutableValueObject.class.getName());
+        assertSame(pending, recycled);
+        proxy.setValue(recycled, "foo", "baz");
+        ImmutableValueObject second = (ImmutableValueObject) proxy.instanceComplete(recycled);
+
+        assertEquals("baz", second.getFoo());
+        assertNull(second.getZoo());
+    }
+
+    @Test
+    public void accessModelBuiltOnce() {
+        SpringPropertyProxy proxy = SpringPropertyProxy.proxyFor(ImmutableValueObject.class, false, new GenericConversionService());
+        Map<?, ?> accessModels = (Map<?, ?>) ReflectionTestUtils.getField(proxy, "accessModels");
+
+        assertEquals(1, accessModels.size());
+        assertSame(accessModels.get(ImmutableValueObject.class), proxy.getAccessModelForType(ImmutableValueObject.class), proxy.getAccessModel(new ImmutableValueObject("bar", new Integer(1))));
+    }
+
     private void serialize(Object data) throws IOException {
         MessageBody body = new MessageBody();
         body.setData(data);
@@ -0,0 +1,127 @@
+package org.springframework.flex.core.io;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.springframework.beans.NotReadablePropertyException;
+import org.springframework.core.convert.support.GenericConversionService;
+import org.springframework.flex.core.io.PropertyAccessModel.PropertyModel;
+import org.springframework.flex.core.io.domain.IgnorablePropsObject;
+import org.springframework.flex.core.io.domain.Person;
+
+public class PropertyAccessModelTests {
+
+    @Test
+    public void beanPropertiesResolveAmfIgnore() {
+        PropertyAccessModel model = PropertyAccessModel.forType(IgnorablePropsObject.class, false);
+
+        assertTrue(model.getProperty("foo").isReadIgnored());
+        assertTrue(model.getProperty("foo").isWriteIgnored());
+        assertTrue(model.getProperty("bar").isReadIgnored());
+        assertFalse(model.getProperty("bar").isWriteIgnored());
+        assertFalse(model.getProperty("baz").isReadIgnored());
+        assertTrue(model.getProperty("baz").isWriteIgnored());
+        assertNull(model.getProperty("fooField"));
+    }
+
+    @Test
+    public void fieldsResolveAmfIgnoreField() {
+        PropertyAccessModel model = PropertyAccessModel.forType(IgnorablePropsObject.class, true);
+
+        assertTrue(model.getProperty("fooField").isReadIgnored());
+        assertTrue(model.getProperty("fooField").isWriteIgnored());
+        assertTrue(model.getProperty("barField").isReadIgnored());
+        assertFalse(model.getProperty("barField").isWriteIgnored());
+        assertFalse(model.getProperty("bazField").isReadIgnored());
+        assertTrue(model.getProperty("bazField").isWriteIgnored());
+        assertNull(model.getProperty("foo"));
+    }
+
+    @Test
+    public void readAndWriteThroughModel() {
+        PropertyAccessModel model = PropertyAccessModel.forType(Person.class, false);
+        PropertyModel name = model.getReadableProperty("name");
+        Person person = new Person();
+
+        name.setValue(person, "Dad");
+
+        assertEquals("Dad", person.getName());
+        assertEquals("Dad", name.getValue(person));
+        assertEquals(String.class, name.getType());
+        assertEquals(String.class, name.getTypeDescriptor().getType());
+    }
+
+    @Test
+    public void readAndWriteThroughGeneratedAccessors() {
+        PropertyAccessModel model = PropertyAccessModel.forType(Person.class, false, true);
+        PropertyModel name = model.getReadableProperty("name");
+        Person person = new Person();
+
+        assertTrue(name.isGenerated());
+        name.setValue(person, "Mom");
+
+        assertEquals("Mom", person.getName());
+        assertEquals("Mom", name.getValue(person));
+    }
+
+    @Test
+    public void fieldsAreNeverGenerated() {
+        PropertyAccessModel model = PropertyAccessModel.forType(Person.class, true, true);
+
+        assertFalse(model.getProperty("name").isGenerated());
+    }
+
+    @Test(expected = NotReadablePropertyException.class)
+    public void unknownPropertyIsNotReadable() {
+        PropertyAccessModel.forType(Person.class, false).getReadableProperty("bogus");
+    }
+
+    @Test
+    public void proxyReusesModelPerType() {
+        SpringPropertyProxy proxy = SpringPropertyProxy.proxyFor(Person.class, false, new GenericConversionService());
+
+        assertSame(proxy.getAccessModel(new Person()), proxy.getAccessModel(new Person()));
+    }
+
+    @Test
+    public void propertyNamesCachedForSubclasses() {
+        SpringPropertyProxy proxy = SpringPropertyProxy.proxyFor(Person.class, false, new GenericConversionService());
+
+        List<String> names = proxy.getPropertyNames(new NicknamedPerson());
+
+        assertSame(names, proxy.getPropertyNames(new NicknamedPerson()));
+        assertTrue(names.contains("name"));
+        assertTrue(names.contains("nickname"));
+        assertFalse(names.contains("class"));
+        assertFalse(proxy.getPropertyNames(new Person()).contains("nickname"));
+    }
+
+    @Test
+    public void fieldNamesIncludeSuperclassFields() {
+        SpringPropertyProxy proxy = SpringPropertyProxy.proxyFor(Person.class, true, new GenericConversionService());
+
+        List<String> names = proxy.getPropertyNames(new NicknamedPerson());
+
+        assertTrue(names.contains("name"));
+        assertTrue(names.contains("nickname"));
+    }
+
+    public static class NicknamedPerson extends Person {
+
+        private String nickname;
+
+        public String getNickname() {
+            return nickname;
+        }
+
+        public void setNickname(String nickname) {
+            this.nickname = nickname;
+        }
+    }
+}
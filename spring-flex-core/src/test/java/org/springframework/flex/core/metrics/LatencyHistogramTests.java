@@ -0,0 +1,65 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class LatencyHistogramTests {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    @Test
+    public void bucketsCoverAllValues() {
+        for (long value : new long[] { 0, 1, 15, 16, 31, 32, 1000, 123456789, Long.MAX_VALUE }) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue("Bucket of " + value + " too low", LatencyHistogram.highestValueAt(index) >= value);
+            long lowest = index == 0 ? 0 : LatencyHistogram.highestValueAt(index - 1) + 1;
+            assertTrue("Bucket of " + value + " too wide", lowest <= value && value - lowest <= value / 16);
+        }
+    }
+
+    @Test
+    public void percentiles() {
+        for (int i = 1; i <= 100; i++) {
+            this.histogram.record(TimeUnit.MILLISECONDS.toNanos(i));
+        }
+
+        assertEquals(100, this.histogram.getCount());
+        assertEquals(100, this.histogram.getMax(TimeUnit.MILLISECONDS));
+        assertEquals(50.5, this.histogram.getMean(TimeUnit.MILLISECONDS), 0.001);
+        assertEquals(50, this.histogram.getPercentile(50, TimeUnit.MILLISECONDS), 50 / 16);
+        assertEquals(99, this.histogram.getPercentile(99, TimeUnit.MILLISECONDS), 99 / 16);
+        assertEquals(100, this.histogram.getPercentile(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void reset() {
+        this.histogram.record(1000);
+        this.histogram.reset();
+
+        assertEquals(0, this.histogram.getCount());
+        assertEquals(0, this.histogram.getPercentile(99, TimeUnit.NANOSECONDS));
+        assertEquals(0, this.histogram.getMax(TimeUnit.NANOSECONDS));
+    }
+}
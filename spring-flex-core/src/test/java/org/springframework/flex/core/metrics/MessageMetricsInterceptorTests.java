@@ -0,0 +1,102 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+import org.springframework.flex.core.MessageProcessingContext;
+
+import flex.messaging.messages.AcknowledgeMessage;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.ErrorMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class MessageMetricsInterceptorTests {
+
+    private final DefaultMessageMetricsRegistry registry = new DefaultMessageMetricsRegistry();
+
+    private final MessageMetricsInterceptor interceptor = new MessageMetricsInterceptor(this.registry);
+
+    @Test
+    public void remotingMessagesRecordedPerOperation() {
+        RemotingMessage message = new RemotingMessage();
+        message.setDestination("productService");
+        message.setOperation("findAll");
+
+        process(message, new AcknowledgeMessage(), null);
+        process(message, new AcknowledgeMessage(), null);
+        process(message, new ErrorMessage(), null);
+        process(message, null, new IllegalStateException());
+
+        MessageMetrics metrics = this.registry.getMetrics("productService", "findAll", "RemotingMessage");
+        assertEquals(4, metrics.getRequestCount());
+        assertEquals(2, metrics.getErrorCount());
+        assertEquals(4, this.registry.getRequestCount());
+        assertEquals(1, this.registry.getSummary().length);
+    }
+
+    @Test
+    public void commandMessagesRecordedPerCommand() {
+        CommandMessage message = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        message.setDestination("chat");
+
+        process(message, new AcknowledgeMessage(), null);
+
+        String operation = CommandMessage.getOperationAsString(CommandMessage.SUBSCRIBE_OPERATION);
+        assertEquals(1, this.registry.getMetrics("chat", operation, "CommandMessage").getRequestCount());
+    }
+
+    @Test
+    public void messagesWithoutDestinationRecorded() {
+        AsyncMessage message = new AsyncMessage();
+
+        process(message, new AcknowledgeMessage(), null);
+        process(message, new AcknowledgeMessage(), null);
+
+        assertEquals(2, this.registry.getMetrics(null, null, "AsyncMessage").getRequestCount());
+        assertEquals(1, this.registry.getMetrics().size());
+    }
+
+    @Test
+    public void entriesLimited() {
+        this.registry.setMaxEntries(1);
+        RemotingMessage message = new RemotingMessage();
+        message.setDestination("productService");
+        message.setOperation("findAll");
+        process(message, new AcknowledgeMessage(), null);
+        message.setOperation("unknown");
+        process(message, new AcknowledgeMessage(), null);
+
+        assertNull(this.registry.getMetrics("productService", "unknown", "RemotingMessage"));
+        assertEquals(1, this.registry.getMetrics("*", "*", "*").getRequestCount());
+    }
+
+    private void process(Message inputMessage, Message outputMessage, Exception ex) {
+        MessageProcessingContext context = new MessageProcessingContext(null);
+        this.interceptor.preProcess(context, inputMessage);
+        if (ex == null) {
+            this.interceptor.postProcess(context, inputMessage, outputMessage);
+        }
+        this.interceptor.afterCompletion(context, inputMessage, outputMessage, ex);
+    }
+}
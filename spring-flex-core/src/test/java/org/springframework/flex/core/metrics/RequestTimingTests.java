@@ -0,0 +1,79 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.springframework.flex.core.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import flex.messaging.messages.RemotingMessage;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class RequestTimingTests {
+
+    @After
+    public void tearDown() {
+        RequestTiming current = RequestTiming.current();
+        if (current != null) {
+            current.finish();
+        }
+    }
+
+    @Test
+    public void timingBoundToThread() {
+        assertNull(RequestTiming.current());
+        RequestTiming timing = RequestTiming.start();
+        assertSame(timing, RequestTiming.current());
+        timing.finish();
+        assertNull(RequestTiming.current());
+    }
+
+    @Test
+    public void phasesRecorded() throws InterruptedException {
+        RemotingMessage message = new RemotingMessage();
+        message.setDestination("productService");
+        message.setOperation("findAll");
+
+        RequestTiming timing = RequestTiming.start();
+        timing.setEndpointId("my-amf");
+        Thread.sleep(10);
+        timing.messageStarted(message);
+        Thread.sleep(10);
+        timing.invocationStarted();
+        Thread.sleep(30);
+        timing.invocationFinished();
+        timing.messageFinished();
+        Thread.sleep(10);
+        timing.finish();
+
+        assertEquals(1, timing.getMessageCount());
+        assertTrue(timing.getDecoding(TimeUnit.MILLISECONDS) >= 10);
+        assertTrue(timing.getInterceptors(TimeUnit.MILLISECONDS) >= 10);
+        assertTrue(timing.getInvocation(TimeUnit.MILLISECONDS) >= 30);
+        assertTrue(timing.getInterceptors(TimeUnit.MILLISECONDS) < timing.getInvocation(TimeUnit.MILLISECONDS));
+        assertTrue(timing.getEncoding(TimeUnit.MILLISECONDS) >= 10);
+        assertTrue(timing.getTotal(TimeUnit.MILLISECONDS) >= 60);
+        assertTrue(timing.toString().startsWith("Request to endpoint my-amf for [productService.findAll] took "));
+    }
+}
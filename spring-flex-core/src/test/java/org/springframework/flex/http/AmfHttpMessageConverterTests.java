@@ -1,9 +1,12 @@
 package org.springframework.flex.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 
 import org.springframework.flex.core.io.domain.Person;
+import org.springframework.flex.http.LazyActionMessageReader.LazyMessageBody;
 import org.springframework.http.HttpInputMessage;
 import org.springframework.http.HttpOutputMessage;
 import org.springframework.http.MediaType;
@@ -20,6 +23,7 @@ import flex.messaging.io.amf.ActionMessage;
 import flex.messaging.io.amf.Amf3Input;
 import flex.messaging.io.amf.Amf3Output;
 import flex.messaging.io.amf.AmfMessageDeserializer;
+import flex.messaging.io.amf.AmfTrace;
 import flex.messaging.io.amf.MessageBody;
 import static org.junit.Assert.*;
 import org.junit.Before;
@@ -90,6 +94,79 @@ public class AmfHttpMessageConverterTests {
         assertTrue(result.getBody(0).getData() instanceof Person);
     }
 
+    @Test
+    public void writeActionMessageWithReusedSerializer() throws Exception {
+        AmfHttpMessageConverter converter = new AmfHttpMessageConverter();
+        ActionMessage responseMessage = new ActionMessage();
+        MessageBody responseBody = new MessageBody();
+        responseMessage.addBody(responseBody);
+        responseBody.setData(Person.stubPerson());
+        converter.write(responseMessage, this.amfContentType, new ServletServerHttpResponse(new MockHttpServletResponse()));
+        converter.write(responseMessage, this.amfContentType, new ServletServerHttpResponse(this.response));
+
+        ActionMessage result = deserializeResponseToActionMessage();
+        assertEquals(1, converter.getBufferPool().getCreatedCount());
+        assertEquals(1, result.getBodyCount());
+        assertTrue(result.getBody(0).getData() instanceof Person);
+    }
+
+    @Test
+    public void writeReusesPooledBuffers() throws Exception {
+        AmfHttpMessageConverter converter = new AmfHttpMessageConverter();
+        converter.write(Person.stubPerson(), this.amfContentType, new ServletServerHttpResponse(this.response));
+        int contentLength = this.response.getContentLength();
+
+        this.response = new MockHttpServletResponse();
+        converter.write(Person.stubPerson(), this.amfContentType, new ServletServerHttpResponse(this.response));
+
+        assertEquals(contentLength, this.response.getContentLength());
+        assertEquals(this.response.getContentAsByteArray().length, this.response.getContentLength());
+        assertTrue(deserializeResponse() instanceof Person);
+        assertEquals(1, converter.getBufferPool().getCreatedCount());
+        assertEquals(1, converter.getBufferPool().getReusedCount());
+    }
+
+    @Test
+    public void writeObjectStreaming() throws Exception {
+        HttpOutputMessage outputMessage = new ServletServerHttpResponse(this.response);
+        AmfHttpMessageConverter converter = new AmfHttpMessageConverter();
+        converter.setStreamingThreshold(16);
+        converter.write(Person.stubPerson(), this.amfContentType, outputMessage);
+
+        assertEquals(-1, outputMessage.getHeaders().getContentLength());
+        assertTrue(deserializeResponse() instanceof Person);
+    }
+
+    @Test
+    public void readActionMessageLazily() throws Exception {
+        this.request.setContentType(new MediaType("application", "x-amf").toString());
+        this.request.setContent(serializeEnvelope("/1/onResult", Person.stubPerson(), "/2/onResult", "foo"));
+        HttpInputMessage inputMessage = new ServletServerHttpRequest(this.request);
+        AmfHttpMessageConverter converter = new AmfHttpMessageConverter();
+        converter.setLazyBodyDecoding(true);
+
+        ActionMessage result = (ActionMessage) converter.read(ActionMessage.class, inputMessage);
+        assertEquals(2, result.getBodyCount());
+        assertEquals("/1/onResult", result.getBody(0).getResponseURI());
+        LazyMessageBody second = (LazyMessageBody) result.getBody(1);
+        assertFalse(second.isDecoded());
+        assertTrue(result.getBody(0).getData() instanceof Person);
+        assertFalse(second.isDecoded());
+        assertEquals("foo", second.getData());
+        assertTrue(second.isDecoded());
+    }
+
+    @Test
+    public void readActionMessageLazilyWithTrace() throws Exception {
+        AmfTrace trace = new AmfTrace();
+
+        ActionMessage result = LazyActionMessageReader.read(new ByteArrayInputStream(serializeEnvelope("/1/onResult", Person.stubPerson(), "/2/onResult", "foo")), trace);
+        assertEquals(2, result.getBodyCount());
+        assertFalse(result.getBody(1) instanceof LazyMessageBody);
+        assertEquals("foo", result.getBody(1).getData());
+        assertTrue(trace.toString().contains("/2/onResult"));
+    }
+
     @Test
     public void readSimpleString() throws Exception {
         this.request.setContentType(new MediaType("application", "x-amf").toString());
@@ -126,6 +203,26 @@ public class AmfHttpMessageConverterTests {
         }
     }
 
+    private byte[] serializeEnvelope(String firstResponseURI, Object firstData, String secondResponseURI, Object secondData) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DataOutputStream envelope = new DataOutputStream(out);
+        envelope.writeShort(3);
+        envelope.writeShort(0);
+        envelope.writeShort(2);
+        writeBody(envelope, firstResponseURI, firstData);
+        writeBody(envelope, secondResponseURI, secondData);
+        return out.toByteArray();
+    }
+
+    private void writeBody(DataOutputStream envelope, String responseURI, Object data) throws IOException {
+        byte[] amf3Data = serializeToByteArray(data);
+        envelope.writeUTF("null");
+        envelope.writeUTF(responseURI);
+        envelope.writeInt(amf3Data.length + 1);
+        envelope.writeByte(0x11);
+        envelope.write(amf3Data);
+    }
+
     private byte[] serializeToByteArray(Object data) throws IOException {
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         Amf3Output serializer = new Amf3Output(new SerializationContext());
@@ -0,0 +1,91 @@
+package org.springframework.flex.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import org.junit.Test;
+import org.springframework.flex.http.AmfOutputBuffer.StreamingTarget;
+
+import flex.messaging.io.MessageIOConstants;
+import flex.messaging.io.amf.AmfMessageSerializer;
+
+public class AmfOutputBufferPoolTests {
+
+    @Test
+    public void releasedBuffersAreReused() {
+        AmfOutputBufferPool pool = new AmfOutputBufferPool();
+        AmfOutputBuffer buffer = pool.acquire();
+        buffer.write(1);
+        pool.release(buffer);
+
+        AmfOutputBuffer reused = pool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.size());
+        assertEquals(2, pool.getAcquiredCount());
+        assertEquals(1, pool.getCreatedCount());
+        assertEquals(1, pool.getReusedCount());
+    }
+
+    @Test
+    public void messageSerializersAreReused() {
+        AmfOutputBufferPool pool = new AmfOutputBufferPool();
+        AmfOutputBuffer buffer = pool.acquire();
+        AmfMessageSerializer serializer = buffer.getMessageSerializer(MessageIOConstants.AMF3, null);
+        pool.release(buffer);
+
+        assertSame(serializer, pool.acquire().getMessageSerializer(MessageIOConstants.AMF0, null));
+    }
+
+    @Test
+    public void oversizedBuffersAreDiscarded() {
+        AmfOutputBufferPool pool = new AmfOutputBufferPool();
+        pool.setInitialBufferSize(16);
+        pool.setMaxRetainedBufferSize(32);
+        AmfOutputBuffer buffer = pool.acquire();
+        buffer.write(new byte[64], 0, 64);
+        pool.release(buffer);
+
+        assertEquals(1, pool.getDiscardedCount());
+        assertEquals(0, pool.getPooledCount());
+        assertNotSame(buffer, pool.acquire());
+    }
+
+    @Test
+    public void streamingStartsOnceThresholdIsCrossed() throws Exception {
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        AmfOutputBuffer buffer = new AmfOutputBufferPool().acquire();
+        buffer.enableStreaming(4, new StreamingTarget() {
+            public OutputStream openStream() {
+                return target;
+            }
+        });
+
+        buffer.getOutputStream().write(new byte[] { 1, 2, 3 });
+        assertFalse(buffer.isStreaming());
+        assertEquals(0, target.size());
+
+        buffer.getOutputStream().write(new byte[] { 4, 5 });
+        assertTrue(buffer.isStreaming());
+        assertArrayEquals(new byte[] { 1, 2, 3, 4, 5 }, target.toByteArray());
+        assertEquals(0, buffer.size());
+    }
+
+    @Test
+    public void poolIsBounded() {
+        AmfOutputBufferPool pool = new AmfOutputBufferPool(1);
+        AmfOutputBuffer first = pool.acquire();
+        AmfOutputBuffer second = pool.acquire();
+        pool.release(first);
+        pool.release(second);
+
+        assertEquals(1, pool.getPooledCount());
+        assertEquals(1, pool.getDiscardedCount());
+    }
+}
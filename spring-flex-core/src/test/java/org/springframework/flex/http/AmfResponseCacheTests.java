@@ -0,0 +1,126 @@
+package org.springframework.flex.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+import org.springframework.flex.http.AmfResponseCache.CachedResponse;
+import org.springframework.util.FileCopyUtils;
+
+public class AmfResponseCacheTests {
+
+    private final AmfResponseCache cache = new AmfResponseCache();
+
+    @Test
+    public void putAndGet() {
+        CachedResponse cached = this.cache.put("foo", content(10));
+
+        assertEquals(10, cached.getContentLength());
+        assertTrue(cached.getETag().startsWith("\""));
+        assertEquals(cached.getETag(), this.cache.get("foo").getETag());
+        assertNull(this.cache.get("bar"));
+        assertEquals(1, this.cache.getHitCount());
+        assertEquals(1, this.cache.getMissCount());
+        assertEquals(10, this.cache.getSize());
+    }
+
+    @Test
+    public void leastRecentlyUsedEntryIsEvicted() {
+        this.cache.setMaxEntries(2);
+        this.cache.put("first", content(1));
+        this.cache.put("second", content(2));
+        this.cache.get("first");
+        this.cache.put("third", content(3));
+
+        assertNotNull(this.cache.get("first"));
+        assertNull(this.cache.get("second"));
+        assertNotNull(this.cache.get("third"));
+        assertEquals(4, this.cache.getSize());
+    }
+
+    @Test
+    public void sizeIsBounded() {
+        this.cache.setMaxSize(20);
+        this.cache.put("first", content(10));
+        this.cache.put("second", content(15));
+        this.cache.put("tooLarge", content(21));
+
+        assertNull(this.cache.get("first"));
+        assertNotNull(this.cache.get("second"));
+        assertNull(this.cache.get("tooLarge"));
+        assertEquals(15, this.cache.getSize());
+    }
+
+    @Test
+    public void expiredEntriesAreDiscarded() throws Exception {
+        this.cache.setTimeToLive(1);
+        this.cache.put("foo", content(10));
+        Thread.sleep(10);
+
+        assertNull(this.cache.get("foo"));
+        assertEquals(0, this.cache.getSize());
+    }
+
+    @Test
+    public void evict() {
+        this.cache.put("foo", content(10));
+        this.cache.evict("foo");
+
+        assertNull(this.cache.get("foo"));
+        assertEquals(0, this.cache.getSize());
+    }
+
+    @Test
+    public void matchesIfNoneMatch() {
+        CachedResponse cached = this.cache.put("foo", content(10));
+
+        assertTrue(cached.matches(cached.getETag()));
+        assertTrue(cached.matches("\"other\", " + cached.getETag()));
+        assertTrue(cached.matches("W/" + cached.getETag()));
+        assertTrue(cached.matches("*"));
+        assertFalse(cached.matches("\"other\""));
+        assertFalse(cached.matches(null));
+    }
+
+    @Test
+    public void entityTagPerContentCoding() {
+        CachedResponse cached = this.cache.put("foo", content(10));
+        String gzipETag = cached.getETag(AmfResponseCompressor.GZIP);
+
+        assertEquals(cached.getETag(), cached.getETag(null));
+        assertEquals(cached.getETag().substring(0, cached.getETag().length() - 1) + "-gzip\"", gzipETag);
+        assertFalse(gzipETag.equals(cached.getETag(AmfResponseCompressor.DEFLATE)));
+        assertTrue(cached.matches(gzipETag, AmfResponseCompressor.GZIP));
+        assertFalse(cached.matches(gzipETag, null));
+        assertFalse(cached.matches(cached.getETag(), AmfResponseCompressor.GZIP));
+    }
+
+    @Test
+    public void compressedContentIsKept() throws Exception {
+        AmfResponseCompressor compressor = new AmfResponseCompressor();
+        CachedResponse cached = this.cache.put("foo", content(100));
+
+        byte[] compressed = cached.getContent(AmfResponseCompressor.GZIP, compressor);
+
+        assertSame(compressed, cached.getContent(AmfResponseCompressor.GZIP, compressor));
+        assertArrayEquals(content(100).toByteArray(), FileCopyUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed))));
+        assertEquals(100, cached.getContent(null, compressor).length);
+    }
+
+    private ByteArrayOutputStream content(int length) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (int i = 0; i < length; i++) {
+            content.write(i);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,112 @@
+package org.springframework.flex.http;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.FileCopyUtils;
+
+public class AmfResponseCompressorTests {
+
+    private final AmfResponseCompressor compressor = new AmfResponseCompressor();
+
+    @Test
+    public void negotiateContentEncoding() {
+        assertEquals("gzip", this.compressor.negotiateContentEncoding("gzip, deflate"));
+        assertEquals("deflate", this.compressor.negotiateContentEncoding("deflate"));
+        assertEquals("deflate", this.compressor.negotiateContentEncoding("gzip;q=0, deflate"));
+        assertEquals("gzip", this.compressor.negotiateContentEncoding("*"));
+        assertEquals("deflate", this.compressor.negotiateContentEncoding("gzip;q=0, *;q=0.5"));
+        assertNull(this.compressor.negotiateContentEncoding("identity"));
+        assertNull(this.compressor.negotiateContentEncoding(""));
+        assertNull(this.compressor.negotiateContentEncoding(null));
+    }
+
+    @Test
+    public void minimumSize() {
+        this.compressor.setMinimumSize(100);
+        assertFalse(this.compressor.isCompressible(99));
+        assertTrue(this.compressor.isCompressible(100));
+    }
+
+    @Test
+    public void compressGzip() throws Exception {
+        byte[] content = createContent();
+        ByteArrayOutputStream compressed = compress(content, "gzip");
+        assertTrue(compressed.size() < content.length);
+        assertArrayEquals(content, FileCopyUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))));
+    }
+
+    @Test
+    public void compressDeflate() throws Exception {
+        byte[] content = createContent();
+        ByteArrayOutputStream compressed = compress(content, "deflate");
+        InputStream in = new InflaterInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        assertArrayEquals(content, FileCopyUtils.copyToByteArray(in));
+    }
+
+    @Test
+    public void incompleteStreamedResponseDiscarded() throws Exception {
+        final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        AmfResponseWriter writer = new AmfResponseWriter(new AmfOutputBufferPool(), 0, this.compressor, "gzip") {
+
+            @Override
+            protected void setHeader(String name, String value) {
+            }
+
+            @Override
+            protected void addHeader(String name, String value) {
+            }
+
+            @Override
+            protected void setContentLength(int contentLength) {
+            }
+
+            @Override
+            protected OutputStream getBody() {
+                return body;
+            }
+
+            @Override
+            protected boolean setNotModified() {
+                return false;
+            }
+        };
+        writer.getBuffer().getOutputStream().write(createContent());
+        DeflaterOutputStream compressingStream = (DeflaterOutputStream) ReflectionTestUtils.getField(writer, "compressingStream");
+        writer.release();
+        int size = body.size();
+
+        compressingStream.finish();
+        assertEquals(size, body.size());
+    }
+
+    private ByteArrayOutputStream compress(byte[] content, String contentEncoding) throws Exception {
+        ByteArrayOutputStream source = new ByteArrayOutputStream();
+        source.write(content);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        this.compressor.setCompressionLevel(9);
+        this.compressor.compress(source, compressed, contentEncoding);
+        return compressed;
+    }
+
+    private byte[] createContent() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("compressible AMF content ");
+        }
+        return content.toString().getBytes();
+    }
+}
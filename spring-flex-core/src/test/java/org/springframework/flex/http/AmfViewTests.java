@@ -1,19 +1,25 @@
 package org.springframework.flex.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import junit.framework.TestCase;
 
 import org.springframework.flex.core.io.domain.Person;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.FileCopyUtils;
 
 import flex.messaging.io.SerializationContext;
 import flex.messaging.io.amf.Amf3Input;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
 import org.junit.Test;
@@ -42,6 +48,130 @@ public class AmfViewTests {
         assertEquals("bar", result);
     }
 
+    @Test
+    public void renderSmallModelWithStreamingEnabled() throws Exception {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("foo", "bar");
+        AmfView view = new AmfView();
+        view.setStreamingThreshold(1024);
+        view.render(model, request, response);
+
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        assertEquals("bar", deserialize());
+    }
+
+    @Test
+    public void renderLargeModelWithStreamingEnabled() throws Exception {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("person", Person.stubPerson());
+        AmfView view = new AmfView();
+        view.setStreamingThreshold(16);
+        view.render(model, request, response);
+
+        assertEquals(0, response.getContentLength());
+        assertTrue(deserialize() instanceof Person);
+    }
+
+    @Test
+    public void renderCompressedModel() throws Exception {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("person", Person.stubPerson());
+        AmfResponseCompressor compressor = new AmfResponseCompressor();
+        compressor.setMinimumSize(16);
+        AmfView view = new AmfView();
+        view.setResponseCompressor(compressor);
+        request.addHeader("Accept-Encoding", "gzip, deflate");
+        view.render(model, request, response);
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertEquals("Accept-Encoding", response.getHeader("Vary"));
+        assertEquals(response.getContentAsByteArray().length, response.getContentLength());
+        byte[] content = FileCopyUtils.copyToByteArray(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray())));
+        this.request.setContent(content);
+        Amf3Input deserializer = new Amf3Input(new SerializationContext());
+        deserializer.setInputStream(this.request.getInputStream());
+        assertTrue(deserializer.readObject() instanceof Person);
+    }
+
+    @Test
+    public void renderUncompressedModelWithoutAcceptEncoding() throws Exception {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("person", Person.stubPerson());
+        AmfResponseCompressor compressor = new AmfResponseCompressor();
+        compressor.setMinimumSize(16);
+        AmfView view = new AmfView();
+        view.setResponseCompressor(compressor);
+        view.render(model, request, response);
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertTrue(deserialize() instanceof Person);
+    }
+
+    @Test
+    public void renderCachedModel() throws Exception {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("person", Person.stubPerson());
+        AmfResponseCache cache = new AmfResponseCache();
+        AmfView view = new AmfView();
+        view.setResponseCache(cache);
+        request.setAttribute(AmfResponseCache.CACHE_KEY_ATTRIBUTE, "person");
+        view.render(model, request, response);
+
+        String eTag = response.getHeader("ETag");
+        assertNotNull(eTag);
+        assertTrue(deserialize() instanceof Person);
+
+        byte[] content = response.getContentAsByteArray();
+        response = new MockHttpServletResponse();
+        view.render(model, request, response);
+
+        assertEquals(eTag, response.getHeader("ETag"));
+        assertArrayEquals(content, response.getContentAsByteArray());
+        assertEquals(1, cache.getHitCount());
+
+        response = new MockHttpServletResponse();
+        request.addHeader("If-None-Match", eTag);
+        view.render(model, request, response);
+
+        assertEquals(304, response.getStatus());
+        assertEquals(0, response.getContentAsByteArray().length);
+    }
+
+    @Test
+    public void renderCachedCompressedModel() throws Exception {
+        Map<String, Object> model = new HashMap<String, Object>();
+        model.put("person", Person.stubPerson());
+        AmfResponseCompressor compressor = new AmfResponseCompressor();
+        compressor.setMinimumSize(16);
+        AmfView view = new AmfView();
+        view.setResponseCompressor(compressor);
+        view.setResponseCache(new AmfResponseCache());
+        request.setAttribute(AmfResponseCache.CACHE_KEY_ATTRIBUTE, "person");
+        request.addHeader("Accept-Encoding", "gzip");
+        view.render(model, request, response);
+
+        String gzipETag = response.getHeader("ETag");
+        assertTrue(gzipETag.endsWith("-gzip\""));
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        byte[] compressed = response.getContentAsByteArray();
+
+        response = new MockHttpServletResponse();
+        view.render(model, request, response);
+
+        assertArrayEquals(compressed, response.getContentAsByteArray());
+
+        MockHttpServletRequest identityRequest = new MockHttpServletRequest();
+        identityRequest.setAttribute(AmfResponseCache.CACHE_KEY_ATTRIBUTE, "person");
+        identityRequest.addHeader("If-None-Match", gzipETag);
+        response = new MockHttpServletResponse();
+        view.render(model, identityRequest, response);
+
+        assertEquals(200, response.getStatus());
+        assertNull(response.getHeader("Content-Encoding"));
+        assertFalse(gzipETag.equals(response.getHeader("ETag")));
+        assertTrue(deserialize() instanceof Person);
+    }
+
     @Test
     public void renderFullyTypedModel() throws Exception {
         Map<String, Object> model = new HashMap<String, Object>();
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.Message;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class ConflatingOutboundQueueProcessorTests {
+
+    private final ConflatingOutboundQueueProcessor processor = new ConflatingOutboundQueueProcessor();
+
+    private final List<Message> queue = new ArrayList<Message>();
+
+    @Test
+    public void latestValuePerKeyIsQueued() {
+        Message first = createMessage("feed", "client1", "XYZ");
+        Message other = createMessage("feed", "client1", "ABC");
+        Message latest = createMessage("feed", "client1", "XYZ");
+
+        this.processor.add(this.queue, first);
+        this.processor.add(this.queue, other);
+        this.processor.add(this.queue, latest);
+
+        assertEquals(2, this.queue.size());
+        assertSame(other, this.queue.get(0));
+        assertSame(latest, this.queue.get(1));
+    }
+
+    @Test
+    public void subscriptionsAndDestinationsAreConflatedSeparately() {
+        this.processor.add(this.queue, createMessage("feed", "client1", "XYZ"));
+        this.processor.add(this.queue, createMessage("feed", "client2", "XYZ"));
+        this.processor.add(this.queue, createMessage("otherFeed", "client1", "XYZ"));
+
+        assertEquals(3, this.queue.size());
+    }
+
+    @Test
+    public void messagesWithoutKeyAreNotConflated() {
+        this.processor.add(this.queue, createMessage("feed", "client1", null));
+        this.processor.add(this.queue, createMessage("feed", "client1", null));
+
+        assertEquals(2, this.queue.size());
+    }
+
+    @Test
+    public void adapterKeyDefaultsToSubtopic() {
+        ConflatingMessagingAdapter adapter = new ConflatingMessagingAdapter();
+        adapter.setKeyHeader("symbol");
+
+        Message message = new AsyncMessage();
+        message.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks");
+        assertEquals("stocks", adapter.getConflationKey(message));
+
+        message.setHeader("symbol", "XYZ");
+        assertEquals("XYZ", adapter.getConflationKey(message));
+
+        assertNull(adapter.getConflationKey(new AsyncMessage()));
+    }
+
+    private Message createMessage(String destination, String clientId, String key) {
+        AsyncMessage message = new AsyncMessage();
+        message.setDestination(destination);
+        message.setClientId(clientId);
+        if (key != null) {
+            message.setHeader(ConflatingOutboundQueueProcessor.CONFLATION_KEY_HEADER, key);
+        }
+        return message;
+    }
+}
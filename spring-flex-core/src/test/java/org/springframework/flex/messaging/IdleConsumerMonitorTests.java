@@ -0,0 +1,131 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class IdleConsumerMonitorTests {
+
+    private final StubConsumer consumer = new StubConsumer();
+
+    private final IdleConsumerMonitor monitor = new IdleConsumerMonitor("test", this.consumer);
+
+    @After
+    public void tearDown() {
+        this.monitor.shutdown();
+    }
+
+    @Test
+    public void consumerStoppedImmediatelyByDefault() {
+        this.monitor.subscribed();
+        assertTrue(this.consumer.running);
+
+        this.monitor.idle();
+        assertFalse(this.consumer.running);
+
+        this.monitor.subscribed();
+        assertTrue(this.consumer.running);
+        assertEquals(2, this.consumer.starts);
+        assertEquals(0, this.monitor.getAvoidedRestarts());
+    }
+
+    @Test
+    public void resubscribeWithinIdleTimeoutAvoidsRestart() {
+        this.monitor.setIdleTimeout(60000);
+        this.monitor.subscribed();
+        this.monitor.idle();
+        assertTrue(this.consumer.running);
+
+        this.monitor.subscribed();
+        assertTrue(this.consumer.running);
+        assertEquals(1, this.consumer.starts);
+        assertEquals(1, this.monitor.getAvoidedRestarts());
+    }
+
+    @Test
+    public void consumerStoppedAfterIdleTimeout() throws Exception {
+        this.monitor.setIdleTimeout(10);
+        this.monitor.subscribed();
+        this.monitor.idle();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.consumer.isConsumerRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(this.consumer.isConsumerRunning());
+        assertEquals(0, this.monitor.getAvoidedRestarts());
+    }
+
+    @Test
+    public void warmStandbyKeepsConsumerRunning() {
+        this.monitor.setWarmStandby(true);
+        this.monitor.subscribed();
+        this.monitor.idle();
+        assertTrue(this.consumer.running);
+
+        this.monitor.subscribed();
+        this.monitor.idle();
+        this.monitor.subscribed();
+        assertEquals(1, this.consumer.starts);
+        assertEquals(2, this.monitor.getAvoidedRestarts());
+    }
+
+    @Test
+    public void timerThreadNamedAfterConsumer() throws Exception {
+        this.monitor.setName("stockFeed");
+        this.monitor.setIdleTimeout(10);
+        this.monitor.subscribed();
+        this.monitor.idle();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (this.consumer.isConsumerRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals("IdleConsumerMonitor-stockFeed", this.consumer.stoppedBy);
+    }
+
+    private static final class StubConsumer implements IdleConsumerMonitor.Consumer {
+
+        private volatile boolean running;
+
+        private volatile int starts;
+
+        private volatile String stoppedBy;
+
+        public boolean isConsumerRunning() {
+            return this.running;
+        }
+
+        public void startConsumer() {
+            this.running = true;
+            this.starts++;
+        }
+
+        public void stopConsumer() {
+            this.running = false;
+            this.stoppedBy = Thread.currentThread().getName();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anySet;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import flex.messaging.MessageClient;
+import flex.messaging.MessageDestination;
+import flex.messaging.messages.AsyncMessage;
+import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
+import flex.messaging.services.MessageService;
+import flex.messaging.services.messaging.SubscriptionManager;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class LastValueCacheTests {
+
+    private final LastValueCache cache = new LastValueCache();
+
+    @Test
+    public void lastValuePerSubtopic() {
+        this.cache.put(createMessage("stocks.XYZ", 1));
+        this.cache.put(createMessage("stocks.ABC", 2));
+        this.cache.put(createMessage("stocks.XYZ", 3));
+
+        List<Message> lastValues = this.cache.getLastValues("stocks.XYZ");
+        assertEquals(1, lastValues.size());
+        assertEquals(3, lastValues.get(0).getBody());
+        assertEquals(2, this.cache.size());
+    }
+
+    @Test
+    public void wildcardSubtopicReturnsAllValues() {
+        this.cache.put(createMessage("stocks.XYZ", 1));
+        this.cache.put(createMessage("stocks.ABC", 2));
+
+        assertEquals(2, this.cache.getLastValues("stocks.*").size());
+    }
+
+    @Test
+    public void messagesWithoutSubtopic() {
+        this.cache.put(createMessage(null, 1));
+
+        assertEquals(1, this.cache.getLastValues(null).size());
+        assertTrue(this.cache.getLastValues("stocks.XYZ").isEmpty());
+    }
+
+    @Test
+    public void leastRecentlyUpdatedSubtopicIsEvicted() {
+        this.cache.setMaxEntries(2);
+        this.cache.put(createMessage("stocks.XYZ", 1));
+        this.cache.put(createMessage("stocks.ABC", 2));
+        this.cache.put(createMessage("stocks.XYZ", 3));
+        this.cache.put(createMessage("stocks.DEF", 4));
+
+        assertEquals(2, this.cache.size());
+        assertTrue(this.cache.getLastValues("stocks.ABC").isEmpty());
+        assertEquals(1, this.cache.getLastValues("stocks.XYZ").size());
+    }
+
+    @Test
+    public void cachedValuesExpire() throws Exception {
+        this.cache.setTimeToLive(1);
+        this.cache.put(createMessage("stocks.XYZ", 1));
+        Thread.sleep(10);
+
+        assertTrue(this.cache.getLastValues("stocks.XYZ").isEmpty());
+        assertEquals(0, this.cache.size());
+    }
+
+    @Test
+    public void wildcardValuesInUpdateOrder() {
+        this.cache.put(createMessage("stocks.XYZ", 1));
+        this.cache.put(createMessage("stocks.ABC", 2));
+        this.cache.put(createMessage("stocks.XYZ", 3));
+
+        List<Message> lastValues = this.cache.getLastValues("stocks.*");
+        assertEquals(2, lastValues.get(0).getBody());
+        assertEquals(3, lastValues.get(1).getBody());
+    }
+
+    @Test
+    public void lastValuesPushedOnceSubscriberIsRegistered() {
+        this.cache.put(createMessage(null, 1));
+        MessageService messageService = mock(MessageService.class);
+        MessageDestination destination = mock(MessageDestination.class);
+        SubscriptionManager subscriptionManager = mock(SubscriptionManager.class);
+        CommandMessage subscribeMessage = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage.setClientId("1234");
+        subscribeMessage.setDestination("feed");
+        when(messageService.getDestination(subscribeMessage)).thenReturn(destination);
+        when(destination.getSubscriptionManager()).thenReturn(subscriptionManager);
+
+        this.cache.pushLastValues(messageService, subscribeMessage);
+        verify(messageService, never()).pushMessageToClients(anySet(), any(Message.class), anyBoolean());
+
+        MessageClient messageClient = mock(MessageClient.class);
+        when(messageClient.getClientId()).thenReturn("1234");
+        this.cache.messageClientCreated(messageClient);
+        verify(messageService).pushMessageToClients(eq(Collections.<Object> singleton("1234")), any(Message.class), eq(true));
+
+        this.cache.messageClientCreated(messageClient);
+        verify(messageService, times(1)).pushMessageToClients(anySet(), any(Message.class), anyBoolean());
+    }
+
+    private Message createMessage(String subtopic, Object body) {
+        AsyncMessage message = new AsyncMessage();
+        message.setBody(body);
+        if (subtopic != null) {
+            message.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, subtopic);
+        }
+        return message;
+    }
+}
@@ -16,6 +16,8 @@
 
 package org.springframework.flex.messaging;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.springframework.beans.MutablePropertyValues;
@@ -23,12 +25,17 @@ import org.springframework.context.support.StaticApplicationContext;
 import org.springframework.flex.core.AbstractMessageBrokerTests;
 
 import flex.messaging.MessageException;
+import flex.messaging.client.FlexClientOutboundQueueProcessor;
+import flex.messaging.endpoints.AbstractEndpoint;
 import flex.messaging.messages.AsyncMessage;
 import flex.messaging.messages.Message;
 import flex.messaging.services.messaging.adapters.MessagingAdapter;
 import org.junit.After;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Before;
 import org.junit.Test;
@@ -43,20 +50,22 @@ public class MessageTemplateTests extends AbstractMessageBrokerTests {
 
     private MessageDestinationFactory factory;
 
+    private StaticApplicationContext context;
+
     private final AtomicReference<Message> messageHolder = new AtomicReference<Message>();
 
     @Before
     public void setUp() throws Exception {
         this.messageHolder.set(null);
 
-        StaticApplicationContext context = new StaticApplicationContext();
+        this.context = new StaticApplicationContext();
         MutablePropertyValues mpvs = new MutablePropertyValues();
         mpvs.addPropertyValue("messageHolder", this.messageHolder);
-        context.registerPrototype("test-adapter", TestMessagingAdapter.class, mpvs);
+        this.context.registerPrototype("test-adapter", TestMessagingAdapter.class, mpvs);
 
         this.factory = new MessageDestinationFactory();
         this.factory.setServiceAdapter("test-adapter");
-        this.factory.setBeanFactory(context);
+        this.factory.setBeanFactory(this.context);
         this.factory.setMessageBroker(getMessageBroker());
         this.factory.setBeanName("test-destination");
         this.factory.afterPropertiesSet();
@@ -164,6 +173,77 @@ public class MessageTemplateTests extends AbstractMessageBrokerTests {
         assertSame(data, this.messageHolder.get().getBody());
     }
 
+    @Test
+    public void sendPreSerialized() throws Exception {
+        Map<String, Object> data = new HashMap<String, Object>();
+        data.put("symbol", "XYZ");
+        data.put("last", 42.5);
+
+        this.template = new MessageTemplate();
+        this.template.setMessageBroker(getMessageBroker());
+        this.template.setPreSerializeBody(true);
+        this.template.send("test-destination", data);
+
+        Message message = this.messageHolder.get();
+        assertNotNull(message);
+        assertTrue(message.getBody() instanceof byte[]);
+        assertTrue(PreSerializedMessages.isPreSerialized(message));
+        assertEquals(data, PreSerializedMessages.getBody(message));
+    }
+
+    @Test
+    public void sendPreSerializedWithClientTransform() throws Exception {
+        final Object data = new Object();
+
+        this.template = new MessageTemplate();
+        this.template.setMessageBroker(getMessageBroker());
+        this.template.setPreSerializeBody(true);
+        this.template.send(new AsyncMessageCreator() {
+
+            public AsyncMessage createMessage() {
+                AsyncMessage message = MessageTemplateTests.this.template.createMessageForDestination("test-destination");
+                message.setHeader(PreSerializedMessages.CLIENT_TRANSFORM_HEADER, Boolean.TRUE);
+                message.setBody(data);
+                return message;
+            }
+        });
+
+        assertSame(data, this.messageHolder.get().getBody());
+        assertFalse(PreSerializedMessages.isPreSerialized(this.messageHolder.get()));
+    }
+
+    @Test
+    public void customOutboundQueueProcessorPreventsPreSerialization() throws Exception {
+        AbstractEndpoint endpoint = (AbstractEndpoint) getMessageBroker().getEndpoint("my-polling-amf");
+        Class<?> processorClass = endpoint.getFlexClientOutboundQueueProcessorClass();
+        endpoint.setFlexClientOutboundQueueProcessorClass(TransformingOutboundQueueProcessor.class);
+        MessageDestinationFactory transformFactory = new MessageDestinationFactory();
+        transformFactory.setServiceAdapter("test-adapter");
+        transformFactory.setBeanFactory(this.context);
+        transformFactory.setMessageBroker(getMessageBroker());
+        transformFactory.setChannels(new String[] { "my-polling-amf" });
+        transformFactory.setBeanName("transform-destination");
+        transformFactory.afterPropertiesSet();
+        try {
+            Map<String, Object> data = new HashMap<String, Object>();
+            data.put("symbol", "XYZ");
+
+            this.template = new MessageTemplate();
+            this.template.setMessageBroker(getMessageBroker());
+            this.template.setPreSerializeBody(true);
+            this.template.send("transform-destination", data);
+
+            assertSame(data, this.messageHolder.get().getBody());
+            assertFalse(PreSerializedMessages.isPreSerialized(this.messageHolder.get()));
+        } finally {
+            transformFactory.destroy();
+            endpoint.setFlexClientOutboundQueueProcessorClass(processorClass);
+        }
+    }
+
+    static class TransformingOutboundQueueProcessor extends FlexClientOutboundQueueProcessor {
+    }
+
     static class TestMessagingAdapter extends MessagingAdapter {
 
         private AtomicReference<Message> messageHolder;
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class SubscriptionRegistryTests {
+
+    private final SubscriptionRegistry registry = new SubscriptionRegistry();
+
+    @Test
+    public void subscribersAreIndexedBySubtopic() {
+        this.registry.subscribe("1", "fc1", "stocks.XYZ");
+        this.registry.subscribe("2", "fc2", "stocks.ABC");
+        this.registry.subscribe("3", "fc2", null);
+
+        assertEquals(new HashSet<Object>(Arrays.asList("1")), this.registry.getSubscriberIds("stocks.XYZ"));
+        assertEquals(new HashSet<Object>(Arrays.asList("2")), this.registry.getSubscriberIds("stocks.ABC"));
+        assertEquals(new HashSet<Object>(Arrays.asList("3")), this.registry.getSubscriberIds(null));
+        assertTrue(this.registry.getSubscriberIds("stocks.DEF").isEmpty());
+    }
+
+    @Test
+    public void wildcardSubscribersMatch() {
+        this.registry.subscribe("1", "fc1", "stocks.*");
+        this.registry.subscribe("2", "fc1", "*.XYZ");
+        this.registry.subscribe("3", "fc1", "bonds.*");
+
+        assertEquals(new HashSet<Object>(Arrays.asList("1", "2")), this.registry.getSubscriberIds("stocks.XYZ"));
+        assertEquals(new HashSet<Object>(Arrays.asList("1")), this.registry.getSubscriberIds("stocks.XYZ.last"));
+        assertTrue(this.registry.getSubscriberIds(null).isEmpty());
+    }
+
+    @Test
+    public void senderSubscriptionsAreExcluded() {
+        this.registry.subscribe("1", "fc1", "stocks.XYZ");
+        this.registry.subscribe("2", "fc1", "stocks.ABC");
+        this.registry.subscribe("3", "fc2", "stocks.XYZ");
+
+        assertEquals(new HashSet<Object>(Arrays.asList("3")), this.registry.getSubscriberIds("stocks.XYZ", "fc1"));
+        assertSame(this.registry.getSubscriberIds("stocks.ABC"), this.registry.getSubscriberIds("stocks.ABC", "fc2"));
+        assertSame(this.registry.getSubscriberIds("stocks.ABC"), this.registry.getSubscriberIds("stocks.ABC", "fc3"));
+    }
+
+    @Test
+    public void snapshotIsSharedUntilSubscriptionsChange() {
+        this.registry.subscribe("1", "fc1", "stocks.XYZ");
+        Set<Object> snapshot = this.registry.getSubscriberIds("stocks.XYZ");
+        assertSame(snapshot, this.registry.getSubscriberIds("stocks.XYZ"));
+
+        this.registry.subscribe("2", "fc2", "stocks.XYZ");
+        assertNotSame(snapshot, this.registry.getSubscriberIds("stocks.XYZ"));
+        assertEquals(2, this.registry.getSubscriberIds("stocks.XYZ").size());
+        assertEquals(1, snapshot.size());
+    }
+
+    @Test
+    public void unsubscribe() {
+        this.registry.subscribe("1", "fc1", "stocks.XYZ");
+
+        assertEquals("fc1", this.registry.unsubscribe("1", "stocks.XYZ", null));
+        assertNull(this.registry.unsubscribe("1", "stocks.XYZ", null));
+        assertTrue(this.registry.isEmpty());
+        assertTrue(this.registry.getSubscriberIds("stocks.XYZ").isEmpty());
+    }
+
+    @Test
+    public void resubscribeReplacesSubscription() {
+        this.registry.subscribe("1", "fc1", "stocks.XYZ", "price > 10");
+        this.registry.subscribe("1", "fc2", "stocks.XYZ", "price > 10");
+
+        assertEquals(new HashSet<Object>(Arrays.asList("1")), this.registry.getSubscriberIds("stocks.XYZ", "fc1"));
+        assertTrue(this.registry.getSubscriberIds("stocks.XYZ", "fc2").isEmpty());
+
+        assertEquals("fc2", this.registry.unsubscribe("1", "stocks.XYZ", "price > 10"));
+        assertTrue(this.registry.isEmpty());
+    }
+
+    @Test
+    public void clientIdWithSeveralSubscriptions() {
+        this.registry.subscribe("1", "fc1", "stocks.XYZ");
+        this.registry.subscribe("1", "fc1", "stocks.ABC");
+        this.registry.subscribe("1", "fc1", "stocks.ABC", "price > 10");
+        this.registry.subscribe("2", "fc2", "stocks.ABC");
+
+        assertEquals(new HashSet<Object>(Arrays.asList("1")), this.registry.getSubscriberIds("stocks.XYZ"));
+        assertEquals(new HashSet<Object>(Arrays.asList("1", "2")), this.registry.getSubscriberIds("stocks.ABC"));
+        assertEquals(new HashSet<Object>(Arrays.asList("2")), this.registry.getSubscriberIds("stocks.ABC", "fc1"));
+
+        assertEquals("fc1", this.registry.unsubscribe("1", "stocks.ABC", null));
+        assertEquals(new HashSet<Object>(Arrays.asList("1")), this.registry.getSubscriberIds("stocks.XYZ"));
+        assertEquals(new HashSet<Object>(Arrays.asList("1", "2")), this.registry.getSubscriberIds("stocks.ABC"));
+
+        assertEquals("fc1", this.registry.unsubscribe("1", "stocks.ABC", "price > 10"));
+        assertEquals(new HashSet<Object>(Arrays.asList("1")), this.registry.getSubscriberIds("stocks.XYZ"));
+        assertEquals(new HashSet<Object>(Arrays.asList("2")), this.registry.getSubscriberIds("stocks.ABC"));
+
+        assertEquals("fc1", this.registry.unsubscribe("1", "stocks.XYZ", null));
+        assertTrue(this.registry.getSubscriberIds("stocks.XYZ").isEmpty());
+        assertFalse(this.registry.isEmpty());
+    }
+
+    @Test
+    public void concurrentSubscribeAndUnsubscribe() throws Exception {
+        final int threads = 8;
+        final int iterations = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            executor.execute(new Runnable() {
+
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < iterations; i++) {
+                            String clientId = thread + "-" + i;
+                            String subtopic = "topic." + (i % 4);
+                            SubscriptionRegistryTests.this.registry.subscribe(clientId, "fc" + thread, subtopic);
+                            if (i % 2 == 0) {
+                                SubscriptionRegistryTests.this.registry.unsubscribe(clientId, subtopic, null);
+                            }
+                        }
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertTrue(this.registry.getSubscriberIds("topic.0").isEmpty());
+        assertTrue(this.registry.getSubscriberIds("topic.2").isEmpty());
+        assertEquals(threads * iterations / 4, this.registry.getSubscriberIds("topic.1").size());
+        assertEquals(threads * iterations / 4, this.registry.getSubscriberIds("topic.3").size());
+        assertEquals((threads - 1) * iterations / 4, this.registry.getSubscriberIds("topic.1", "fc0").size());
+    }
+}
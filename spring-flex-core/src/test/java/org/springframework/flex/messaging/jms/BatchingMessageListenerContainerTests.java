@@ -0,0 +1,142 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jms.ConnectionFactory;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.MessageListener;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+
+import org.apache.activemq.ActiveMQConnectionFactory;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.flex.messaging.jms.BatchingMessageListenerContainer.BatchMessageListener;
+import org.springframework.jms.core.JmsTemplate;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class BatchingMessageListenerContainerTests {
+
+    private static final int MESSAGE_COUNT = 5;
+
+    private final ConnectionFactory connectionFactory = new ActiveMQConnectionFactory("vm:(broker:(tcp://localhost:61616)?persistent=false)?marshal=false");
+
+    private final BatchingMessageListenerContainer container = new BatchingMessageListenerContainer();
+
+    private final Set<String> handled = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final CountDownLatch allHandled = new CountDownLatch(MESSAGE_COUNT);
+
+    private final AtomicInteger batches = new AtomicInteger();
+
+    private final AtomicInteger singleMessages = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        this.container.shutdown();
+    }
+
+    @Test
+    public void failedBatchIsRedeliveredWithClientAcknowledge() throws Exception {
+        String queueName = "test.batch.clientAck";
+        sendMessages(queueName);
+        final AtomicBoolean failed = new AtomicBoolean();
+        startContainer(queueName, Session.CLIENT_ACKNOWLEDGE, new BatchMessageListener() {
+
+            public void onMessages(List<Message> messages) throws JMSException {
+                BatchingMessageListenerContainerTests.this.batches.incrementAndGet();
+                if (failed.compareAndSet(false, true)) {
+                    throw new IllegalStateException("Push failed");
+                }
+                for (Message message : messages) {
+                    handle(message);
+                }
+            }
+        });
+
+        assertTrue("Messages of the failed batch were lost", this.allHandled.await(10, TimeUnit.SECONDS));
+        assertEquals(MESSAGE_COUNT, this.handled.size());
+        assertEquals(0, this.singleMessages.get());
+        assertTrue(this.batches.get() >= 2);
+    }
+
+    @Test
+    public void autoAcknowledgeMessagesAreNotBatched() throws Exception {
+        String queueName = "test.batch.autoAck";
+        sendMessages(queueName);
+        startContainer(queueName, Session.AUTO_ACKNOWLEDGE, new BatchMessageListener() {
+
+            public void onMessages(List<Message> messages) throws JMSException {
+                BatchingMessageListenerContainerTests.this.batches.incrementAndGet();
+            }
+        });
+
+        assertTrue(this.allHandled.await(10, TimeUnit.SECONDS));
+        assertEquals(MESSAGE_COUNT, this.singleMessages.get());
+        assertEquals(0, this.batches.get());
+    }
+
+    private void sendMessages(String queueName) {
+        JmsTemplate template = new JmsTemplate(this.connectionFactory);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            template.convertAndSend(queueName, "message" + i);
+        }
+    }
+
+    private void startContainer(String queueName, int acknowledgeMode, BatchMessageListener batchMessageListener) {
+        this.container.setConnectionFactory(this.connectionFactory);
+        this.container.setDestinationName(queueName);
+        this.container.setSessionAcknowledgeMode(acknowledgeMode);
+        this.container.setReceiveTimeout(100);
+        this.container.setBatchSize(MESSAGE_COUNT);
+        this.container.setBatchMessageListener(batchMessageListener);
+        this.container.setMessageListener(new MessageListener() {
+
+            public void onMessage(Message message) {
+                BatchingMessageListenerContainerTests.this.singleMessages.incrementAndGet();
+                handle(message);
+            }
+        });
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    private void handle(Message message) {
+        try {
+            if (this.handled.add(((TextMessage) message).getText())) {
+                this.allHandled.countDown();
+            }
+        } catch (JMSException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
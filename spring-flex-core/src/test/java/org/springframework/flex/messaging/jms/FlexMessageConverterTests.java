@@ -1,5 +1,5 @@
 /*
- * Copyright 2002-2009 the original author or authors.
+ * Copyright 2002-2014 the original author or authors.
  * 
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -17,9 +17,13 @@
 package org.springframework.flex.messaging.jms;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
+import javax.jms.BytesMessage;
 import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.Session;
@@ -29,9 +33,12 @@ import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.springframework.flex.messaging.PreSerializedMessages;
 import org.springframework.jms.support.converter.MessageConversionException;
 import org.springframework.jms.support.converter.MessageConverter;
 
+import flex.messaging.FlexContext;
+import flex.messaging.io.SerializationContext;
 import flex.messaging.messages.AsyncMessage;
 
 /**
@@ -79,6 +86,7 @@ public class FlexMessageConverterTests {
     public void initMocks() throws Exception {
         MockitoAnnotations.initMocks(this);
         when(this.session.createTextMessage("foo")).thenReturn(new StubTextMessage("foo"));
+        when(this.session.createBytesMessage()).thenReturn(new StubBytesMessage());
     }
 
     @Test
@@ -115,6 +123,68 @@ public class FlexMessageConverterTests {
         assertEquals("foo", flexMessage.getBody());
     }
 
+    @Test
+    public void amfBytesMessageRoundTrip() throws Exception {
+        FlexMessageConverter converter = new FlexMessageConverter();
+        converter.setAmfBytesMessages(true);
+        AsyncMessage flexMessage = new AsyncMessage();
+        flexMessage.setBody("foo");
+        flexMessage.setHeader("name", "test");
+        javax.jms.Message jmsMessage = converter.toMessage(flexMessage, this.session);
+        assertTrue(jmsMessage instanceof BytesMessage);
+
+        flex.messaging.messages.Message result = (flex.messaging.messages.Message) converter.fromMessage(jmsMessage);
+        assertTrue(PreSerializedMessages.isPreSerialized(result));
+        assertEquals("foo", PreSerializedMessages.getBody(result));
+        assertEquals("test", result.getHeader("name"));
+    }
+
+    @Test
+    public void amfBytesMessageDecodedWithoutAmfMode() throws Exception {
+        FlexMessageConverter sender = new FlexMessageConverter();
+        sender.setAmfBytesMessages(true);
+        AsyncMessage flexMessage = new AsyncMessage();
+        flexMessage.setBody("foo");
+        javax.jms.Message jmsMessage = sender.toMessage(flexMessage, this.session);
+
+        flex.messaging.messages.Message result = (flex.messaging.messages.Message) new FlexMessageConverter().fromMessage(jmsMessage);
+        assertFalse(PreSerializedMessages.isPreSerialized(result));
+        assertNull(result.getHeader(PreSerializedMessages.PRE_SERIALIZED_HEADER));
+        assertEquals("foo", result.getBody());
+    }
+
+    @Test
+    public void preSerializedBodySentUnchanged() throws Exception {
+        FlexMessageConverter converter = new FlexMessageConverter();
+        AsyncMessage flexMessage = new AsyncMessage();
+        flexMessage.setBody("foo");
+        PreSerializedMessages.preSerialize(flexMessage);
+        byte[] body = (byte[]) flexMessage.getBody();
+        javax.jms.Message jmsMessage = converter.toMessage(flexMessage, this.session);
+
+        assertTrue(jmsMessage instanceof BytesMessage);
+        assertEquals(body.length, ((BytesMessage) jmsMessage).getBodyLength());
+        assertNull(jmsMessage.getObjectProperty(PreSerializedMessages.PRE_SERIALIZED_HEADER));
+    }
+
+    @Test
+    public void amfBytesMessageLeavesNoSerializationContextBehind() throws Exception {
+        FlexContext.clearThreadLocalObjects();
+        SerializationContext stale = new SerializationContext();
+        SerializationContext.setSerializationContext(stale);
+        FlexMessageConverter converter = new FlexMessageConverter();
+        converter.setAmfBytesMessages(true);
+        AsyncMessage flexMessage = new AsyncMessage();
+        flexMessage.setBody("foo");
+
+        try {
+            converter.toMessage(flexMessage, this.session);
+            assertNotSame(stale, SerializationContext.getSerializationContext());
+        } finally {
+            SerializationContext.clearThreadLocalObjects();
+        }
+    }
+
     private static class CustomMessageConverter implements MessageConverter {
 
         public Object fromMessage(Message message) throws JMSException, MessageConversionException {
@@ -1,11 +1,16 @@
 package org.springframework.flex.messaging.jms;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.jms.ConnectionFactory;
 import javax.jms.Destination;
+import javax.jms.JMSException;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
 import org.apache.activemq.command.ActiveMQTopic;
 import org.junit.After;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import org.junit.Before;
@@ -16,12 +21,24 @@ import org.springframework.beans.MutablePropertyValues;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.support.StaticApplicationContext;
 import org.springframework.flex.core.AbstractMessageBrokerTests;
+import org.springframework.flex.messaging.LastValueCache;
+import org.springframework.flex.messaging.jms.BatchingMessageListenerContainer.BatchMessageListener;
+import org.springframework.jms.connection.CachingConnectionFactory;
+import org.springframework.jms.core.JmsTemplate;
+import org.springframework.jms.core.MessagePostProcessor;
+import org.springframework.jms.listener.DefaultMessageListenerContainer;
+import org.springframework.jms.support.converter.MessageConversionException;
+import org.springframework.jms.support.converter.SimpleMessageConverter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.ObjectUtils;
 
 import flex.messaging.FlexContext;
 import flex.messaging.MessageBroker;
 import flex.messaging.MessageDestination;
+import flex.messaging.client.FlexClient;
 import flex.messaging.messages.AsyncMessage;
 import flex.messaging.messages.CommandMessage;
+import flex.messaging.messages.Message;
 import flex.messaging.services.MessageService;
 
 
@@ -99,6 +116,146 @@ public class JmsAdapterTests extends AbstractMessageBrokerTests {
         assertTrue("MessageListener shut down unexpectedly", adapter.getMessageListenerContainer().isActive());
     }
 
+    @Test
+    public void consumerKeptRunningWithinIdleTimeout() throws Exception {
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("consumerIdleTimeout", 60000L);
+        JmsAdapter adapter = createAdapter(properties);
+        FlexContext.setThreadLocalFlexClient(getMessageBroker().getFlexClientManager().getFlexClient("foo"));
+
+        CommandMessage subscribeMessage = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage.setClientId("1234");
+        subscribeMessage.setDestination(DEST_ID);
+        adapter.manage(subscribeMessage);
+
+        CommandMessage unsubscribeMessage = new CommandMessage(CommandMessage.UNSUBSCRIBE_OPERATION);
+        unsubscribeMessage.setClientId("1234");
+        unsubscribeMessage.setDestination(DEST_ID);
+        adapter.manage(unsubscribeMessage);
+
+        assertTrue("MessageListener stopped unexpectedly", adapter.getMessageListenerContainer().isRunning());
+
+        adapter.manage(subscribeMessage);
+        assertEquals(1, adapter.getAvoidedConsumerRestarts());
+
+        adapter.stop();
+        assertFalse("MessageListener should be shut down", adapter.getMessageListenerContainer().isActive());
+    }
+
+    @Test
+    public void selectorPushdown() throws Exception {
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("selectorPushdown", true);
+        JmsAdapter adapter = createAdapter(properties);
+        FlexContext.setThreadLocalFlexClient(getMessageBroker().getFlexClientManager().getFlexClient("foo"));
+
+        CommandMessage subscribeMessage = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage.setClientId("1234");
+        subscribeMessage.setDestination(DEST_ID);
+        subscribeMessage.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.XYZ");
+        adapter.manage(subscribeMessage);
+
+        assertEquals("DSSubtopic = 'stocks.XYZ'", adapter.getMessageListenerContainer().getMessageSelector());
+        assertTrue("MessageListener not running", adapter.getMessageListenerContainer().isRunning());
+
+        CommandMessage subscribeMessage2 = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage2.setClientId("5678");
+        subscribeMessage2.setDestination(DEST_ID);
+        subscribeMessage2.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.ABC");
+        subscribeMessage2.setHeader(CommandMessage.SELECTOR_HEADER, "price > 10");
+        adapter.manage(subscribeMessage2);
+
+        // Receives all messages until the Flex selector has been validated in the background
+        assertMessageSelector("(DSSubtopic = 'stocks.ABC' AND (price > 10)) OR (DSSubtopic = 'stocks.XYZ')", adapter);
+        assertTrue("MessageListener not running", adapter.getMessageListenerContainer().isRunning());
+
+        CommandMessage unsubscribeMessage = new CommandMessage(CommandMessage.UNSUBSCRIBE_OPERATION);
+        unsubscribeMessage.setClientId("5678");
+        unsubscribeMessage.setDestination(DEST_ID);
+        unsubscribeMessage.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.ABC");
+        unsubscribeMessage.setHeader(CommandMessage.SELECTOR_HEADER, "price > 10");
+        adapter.manage(unsubscribeMessage);
+
+        assertEquals("DSSubtopic = 'stocks.XYZ'", adapter.getMessageListenerContainer().getMessageSelector());
+
+        CommandMessage subscribeMessage3 = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage3.setClientId("1234");
+        subscribeMessage3.setDestination(DEST_ID);
+        subscribeMessage3.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.DEF");
+        adapter.manage(subscribeMessage3);
+
+        assertEquals("(DSSubtopic = 'stocks.DEF') OR (DSSubtopic = 'stocks.XYZ')", adapter.getMessageListenerContainer().getMessageSelector());
+
+        CommandMessage unsubscribeMessage2 = new CommandMessage(CommandMessage.UNSUBSCRIBE_OPERATION);
+        unsubscribeMessage2.setClientId("1234");
+        unsubscribeMessage2.setDestination(DEST_ID);
+        unsubscribeMessage2.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.DEF");
+        adapter.manage(unsubscribeMessage2);
+
+        assertEquals("DSSubtopic = 'stocks.XYZ'", adapter.getMessageListenerContainer().getMessageSelector());
+        adapter.stop();
+    }
+
+    @Test
+    public void invalidSelectorIsNotPushedDown() throws Exception {
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("selectorPushdown", true);
+        JmsAdapter adapter = createAdapter(properties);
+        FlexContext.setThreadLocalFlexClient(getMessageBroker().getFlexClientManager().getFlexClient("foo"));
+
+        CommandMessage subscribeMessage = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage.setClientId("1234");
+        subscribeMessage.setDestination(DEST_ID);
+        subscribeMessage.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.XYZ");
+        adapter.manage(subscribeMessage);
+
+        CommandMessage subscribeMessage2 = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage2.setClientId("5678");
+        subscribeMessage2.setDestination(DEST_ID);
+        subscribeMessage2.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.ABC");
+        subscribeMessage2.setHeader(CommandMessage.SELECTOR_HEADER, "price > 10) OR (1 = 1");
+        adapter.manage(subscribeMessage2);
+
+        assertMessageSelector(null, adapter);
+        assertTrue("MessageListener not running", adapter.getMessageListenerContainer().isRunning());
+        adapter.stop();
+    }
+
+    @Test
+    public void consumersRecreatedWithNewSelector() throws Exception {
+        LastValueCache lastValueCache = new LastValueCache();
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("selectorPushdown", true);
+        properties.addPropertyValue("lastValueCache", lastValueCache);
+        JmsAdapter adapter = createAdapter(properties);
+        FlexContext.setThreadLocalFlexClient(getMessageBroker().getFlexClientManager().getFlexClient("foo"));
+
+        CommandMessage subscribeMessage = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage.setClientId("1234");
+        subscribeMessage.setDestination(DEST_ID);
+        subscribeMessage.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.XYZ");
+        adapter.manage(subscribeMessage);
+
+        CommandMessage subscribeMessage2 = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage2.setClientId("5678");
+        subscribeMessage2.setDestination(DEST_ID);
+        subscribeMessage2.setHeader(AsyncMessage.SUBTOPIC_HEADER_NAME, "stocks.ABC");
+        adapter.manage(subscribeMessage2);
+
+        // Messages sent while the consumers are recreated in the background are not received, so keep sending
+        JmsTemplate template = new JmsTemplate(adapter.getJmsTemplate().getConnectionFactory());
+        long deadline = System.currentTimeMillis() + 10000;
+        while (lastValueCache.getLastValues("stocks.ABC").isEmpty() && System.currentTimeMillis() < deadline) {
+            sendWithSubtopic(template, "stocks.DEF");
+            sendWithSubtopic(template, "stocks.ABC");
+            Thread.sleep(50);
+        }
+
+        assertEquals(1, lastValueCache.getLastValues("stocks.ABC").size());
+        assertTrue(lastValueCache.getLastValues("stocks.DEF").isEmpty());
+        adapter.stop();
+    }
+
     @Test
     public void subscribeUnsubscribeStop() throws Exception{
         
@@ -216,9 +373,157 @@ public class JmsAdapterTests extends AbstractMessageBrokerTests {
         assertFalse("MessageListener running unexpectedly",adapter.getMessageListenerContainer().isRunning());
     }
     
+    @Test
+    public void sendConnectionsAreCached() throws Exception {
+        JmsAdapter adapter = createAdapter();
+
+        assertTrue(adapter.getJmsTemplate().getConnectionFactory() instanceof CachingConnectionFactory);
+        assertEquals(JmsAdapter.DEFAULT_SESSION_CACHE_SIZE, ((CachingConnectionFactory) adapter.getJmsTemplate().getConnectionFactory()).getSessionCacheSize());
+    }
+
+    @Test
+    public void sendConnectionCachingDisabled() throws Exception {
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("sessionCacheSize", 0);
+        JmsAdapter adapter = createAdapter(properties);
+
+        assertTrue(adapter.getJmsTemplate().getConnectionFactory() instanceof ActiveMQConnectionFactory);
+    }
+
+    @Test
+    public void listenerContainerSettings() throws Exception {
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("concurrentConsumers", 2);
+        properties.addPropertyValue("maxConcurrentConsumers", 4);
+        properties.addPropertyValue("receiveTimeout", 500L);
+        properties.addPropertyValue("cacheLevelName", "CACHE_SESSION");
+        properties.addPropertyValue("batchSize", 50);
+        JmsAdapter adapter = createAdapter(properties);
+
+        BatchingMessageListenerContainer container = (BatchingMessageListenerContainer) adapter.getMessageListenerContainer();
+        assertEquals(2, container.getConcurrentConsumers());
+        assertEquals(4, container.getMaxConcurrentConsumers());
+        assertEquals(DefaultMessageListenerContainer.CACHE_SESSION, container.getCacheLevel());
+        assertEquals(50, container.getBatchSize());
+    }
+
+    @Test
+    public void batchIsPushedInOrder() throws Exception {
+        JmsAdapter adapter = createAdapter();
+        LastValueCache lastValueCache = new LastValueCache();
+        adapter.setLastValueCache(lastValueCache);
+
+        List<Message> batch = new ArrayList<Message>();
+        for (int i = 0; i < 3; i++) {
+            AsyncMessage message = new AsyncMessage();
+            message.setBody(i);
+            batch.add(message);
+        }
+        adapter.handleMessages(batch);
+
+        for (Message message : batch) {
+            assertEquals(DEST_ID, message.getDestination());
+        }
+        assertEquals(2, lastValueCache.getLastValues(null).get(0).getBody());
+    }
+
+    @Test
+    public void unconvertibleMessageSkippedInBatch() throws Exception {
+        LastValueCache lastValueCache = new LastValueCache();
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("batchSize", 3);
+        properties.addPropertyValue("lastValueCache", lastValueCache);
+        properties.addPropertyValue("messageConverter", new SimpleMessageConverter() {
+
+            @Override
+            public Object fromMessage(javax.jms.Message message) throws JMSException, MessageConversionException {
+                Object body = super.fromMessage(message);
+                if ("poison".equals(body)) {
+                    throw new MessageConversionException("Cannot convert poison");
+                }
+                return body;
+            }
+        });
+        JmsAdapter adapter = createAdapter(properties);
+        BatchMessageListener listener = (BatchMessageListener) ReflectionTestUtils.getField(adapter.getMessageListenerContainer(),
+            "batchMessageListener");
+
+        List<javax.jms.Message> batch = new ArrayList<javax.jms.Message>();
+        batch.add(createTextMessage("stocks.ABC", "first"));
+        batch.add(createTextMessage("stocks.DEF", "poison"));
+        batch.add(createTextMessage("stocks.XYZ", "last"));
+        listener.onMessages(batch);
+
+        assertEquals("first", lastValueCache.getLastValues("stocks.ABC").get(0).getBody());
+        assertTrue(lastValueCache.getLastValues("stocks.DEF").isEmpty());
+        assertEquals("last", lastValueCache.getLastValues("stocks.XYZ").get(0).getBody());
+        adapter.stop();
+    }
+
+    @Test
+    public void lastValuesReachNewSubscriber() throws Exception {
+        LastValueCache lastValueCache = new LastValueCache();
+        MutablePropertyValues properties = new MutablePropertyValues();
+        properties.addPropertyValue("lastValueCache", lastValueCache);
+        JmsAdapter adapter = createAdapter(properties);
+
+        AsyncMessage lastValue = new AsyncMessage();
+        lastValue.setBody("last");
+        adapter.handleMessage(lastValue);
+
+        FlexClient flexClient = getMessageBroker().getFlexClientManager().getFlexClient("lastValueSubscriber");
+        FlexContext.setThreadLocalFlexClient(flexClient);
+        CommandMessage subscribeMessage = new CommandMessage(CommandMessage.SUBSCRIBE_OPERATION);
+        subscribeMessage.setClientId("5678");
+        subscribeMessage.setDestination(DEST_ID);
+        subscribeMessage.setHeader(Message.ENDPOINT_HEADER, "my-amf");
+        getMessageService().serviceCommand(subscribeMessage);
+
+        List<?> queued = flexClient.poll("my-amf").getMessages();
+        assertEquals(1, queued.size());
+        assertEquals("last", ((Message) queued.get(0)).getBody());
+
+        CommandMessage unsubscribeMessage = new CommandMessage(CommandMessage.UNSUBSCRIBE_OPERATION);
+        unsubscribeMessage.setClientId("5678");
+        unsubscribeMessage.setDestination(DEST_ID);
+        unsubscribeMessage.setHeader(Message.ENDPOINT_HEADER, "my-amf");
+        getMessageService().serviceCommand(unsubscribeMessage);
+        adapter.stop();
+    }
+
+    private void assertMessageSelector(String expected, JmsAdapter adapter) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while ((adapter.getSubscriptionMessageSelector().hasUnvalidatedSelectors()
+            || !ObjectUtils.nullSafeEquals(expected, adapter.getMessageListenerContainer().getMessageSelector()))
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse("Flex selectors not validated", adapter.getSubscriptionMessageSelector().hasUnvalidatedSelectors());
+        assertEquals(expected, adapter.getMessageListenerContainer().getMessageSelector());
+    }
+
+    private javax.jms.Message createTextMessage(String subtopic, String text) throws JMSException {
+        javax.jms.Message message = new StubTextMessage(text);
+        message.setStringProperty(AsyncMessage.SUBTOPIC_HEADER_NAME, subtopic);
+        return message;
+    }
+
+    private void sendWithSubtopic(JmsTemplate template, final String subtopic) {
+        template.convertAndSend(new ActiveMQTopic("test.topic"), subtopic, new MessagePostProcessor() {
+
+            public javax.jms.Message postProcessMessage(javax.jms.Message message) throws JMSException {
+                message.setStringProperty(AsyncMessage.SUBTOPIC_HEADER_NAME, subtopic);
+                return message;
+            }
+        });
+    }
+
     private JmsAdapter createAdapter() throws Exception {
+        return createAdapter(new MutablePropertyValues());
+    }
+
+    private JmsAdapter createAdapter(MutablePropertyValues properties) throws Exception {
         String adapterBeanName = "test-jms-adapter";
-        MutablePropertyValues properties = new MutablePropertyValues();
         ConnectionFactory cf = new ActiveMQConnectionFactory("vm:(broker:(tcp://localhost:61616)?persistent=false)?marshal=false");
         Destination dest = new ActiveMQTopic("test.topic");
         properties.addPropertyValue("connectionFactory", cf);
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging.jms;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class StubBytesMessage extends StubMessage implements BytesMessage {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+    private volatile int readPosition = 0;
+
+    public long getBodyLength() throws JMSException {
+        return this.body.size();
+    }
+
+    public int readBytes(byte[] value) throws JMSException {
+        return readBytes(value, value.length);
+    }
+
+    public int readBytes(byte[] value, int length) throws JMSException {
+        byte[] bytes = this.body.toByteArray();
+        int count = Math.min(length, bytes.length - this.readPosition);
+        if (count <= 0) {
+            return -1;
+        }
+        System.arraycopy(bytes, this.readPosition, value, 0, count);
+        this.readPosition += count;
+        return count;
+    }
+
+    public void writeBytes(byte[] value) throws JMSException {
+        writeBytes(value, 0, value.length);
+    }
+
+    public void writeBytes(byte[] value, int offset, int length) throws JMSException {
+        this.body.write(value, offset, length);
+    }
+
+    public void reset() throws JMSException {
+        this.readPosition = 0;
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public boolean readBoolean() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public byte readByte() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public char readChar() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public double readDouble() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public float readFloat() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public int readInt() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public long readLong() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public short readShort() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public String readUTF() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public int readUnsignedByte() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public int readUnsignedShort() throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeBoolean(boolean value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeByte(byte value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeChar(char value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeDouble(double value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeFloat(float value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeInt(int value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeLong(long value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeObject(Object value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeShort(short value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Subclasses should implement this if needed.
+     */
+    public void writeUTF(String value) throws JMSException {
+        throw new UnsupportedOperationException();
+    }
+
+}
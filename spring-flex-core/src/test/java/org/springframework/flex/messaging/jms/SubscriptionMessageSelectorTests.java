@@ -0,0 +1,118 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.messaging.jms;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Jeremy Grelle
+ */
+public class SubscriptionMessageSelectorTests {
+
+    private final SubscriptionMessageSelector selector = new SubscriptionMessageSelector();
+
+    @Test
+    public void noSubscriptions() {
+        assertNull(this.selector.getMessageSelector());
+    }
+
+    @Test
+    public void subtopicsAreCombined() {
+        this.selector.add("1", "stocks.XYZ", null);
+        this.selector.add("2", "stocks.ABC", null);
+        this.selector.add("3", "stocks.ABC", null);
+
+        assertEquals("(DSSubtopic = 'stocks.ABC') OR (DSSubtopic = 'stocks.XYZ')", this.selector.getMessageSelector());
+
+        this.selector.remove("1", "stocks.XYZ", null);
+        assertEquals("DSSubtopic = 'stocks.ABC'", this.selector.getMessageSelector());
+    }
+
+    @Test
+    public void subtopicAndSelector() {
+        this.selector.add("1", "stocks.XYZ", "price > 10");
+
+        assertEquals("DSSubtopic = 'stocks.XYZ' AND (price > 10)", this.selector.getMessageSelector());
+    }
+
+    @Test
+    public void wildcardSubtopic() {
+        this.selector.setSubtopicSeparator("/");
+        this.selector.add("1", "stocks/*/last_trade", null);
+
+        assertEquals("DSSubtopic LIKE 'stocks/%/last\\_trade' ESCAPE '\\'", this.selector.getMessageSelector());
+    }
+
+    @Test
+    public void quotesAreEscaped() {
+        this.selector.add("1", "it's", null);
+
+        assertEquals("DSSubtopic = 'it''s'", this.selector.getMessageSelector());
+    }
+
+    @Test
+    public void unfilteredSubscriptionReceivesAll() {
+        this.selector.add("1", "stocks.XYZ", null);
+        this.selector.add("2", null, null);
+
+        assertNull(this.selector.getMessageSelector());
+
+        this.selector.remove("2", null, null);
+        this.selector.add("3", "*", null);
+        assertNull(this.selector.getMessageSelector());
+    }
+
+    @Test
+    public void subscriptionsOfOneClientAreKept() {
+        this.selector.add("1", "stocks.XYZ", null);
+        this.selector.add("1", "stocks.ABC", "price > 10");
+
+        assertEquals("(DSSubtopic = 'stocks.ABC' AND (price > 10)) OR (DSSubtopic = 'stocks.XYZ')", this.selector.getMessageSelector());
+
+        this.selector.remove("1", "stocks.ABC", "price > 10");
+        assertEquals("DSSubtopic = 'stocks.XYZ'", this.selector.getMessageSelector());
+    }
+
+    @Test
+    public void invalidSelectorReceivesAll() {
+        this.selector.setSelectorValidator(new SubscriptionMessageSelector.SelectorValidator() {
+
+            public boolean isValid(String selector) {
+                return !selector.contains(")");
+            }
+        });
+        this.selector.add("1", "stocks.XYZ", "price > 10");
+        assertTrue(this.selector.hasUnvalidatedSelectors());
+        assertNull(this.selector.getMessageSelector());
+
+        this.selector.validateSelectors();
+        assertFalse(this.selector.hasUnvalidatedSelectors());
+        assertEquals("DSSubtopic = 'stocks.XYZ' AND (price > 10)", this.selector.getMessageSelector());
+
+        this.selector.add("2", "stocks.ABC", "price > 10) OR (1 = 1");
+        this.selector.validateSelectors();
+        assertNull(this.selector.getMessageSelector());
+
+        this.selector.remove("2", "stocks.ABC", "price > 10) OR (1 = 1");
+        assertEquals("DSSubtopic = 'stocks.XYZ' AND (price > 10)", this.selector.getMessageSelector());
+    }
+}
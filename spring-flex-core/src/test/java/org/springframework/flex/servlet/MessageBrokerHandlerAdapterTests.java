@@ -0,0 +1,105 @@
+/*
+ * Copyright 2002-2014 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.flex.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.zip.DeflaterOutputStream;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.flex.http.AmfResponseCompressor;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import flex.messaging.FlexSessionManager;
+import flex.messaging.HttpFlexSession;
+import flex.messaging.HttpFlexSessionProvider;
+import flex.messaging.MessageBroker;
+import flex.messaging.endpoints.Endpoint;
+
+public class MessageBrokerHandlerAdapterTests {
+
+    private static final String ENDPOINT_PATH = "/messagebroker/amf";
+
+    @Test
+    public void compressorReleasedWhenEndpointFails() throws Exception {
+        final ServletOutputStream[] outputStream = new ServletOutputStream[1];
+        Endpoint endpoint = mock(Endpoint.class);
+        when(endpoint.getId()).thenReturn("my-amf");
+        doAnswer(new Answer<Object>() {
+
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                HttpServletResponse response = (HttpServletResponse) invocation.getArguments()[1];
+                byte[] content = createContent();
+                response.setContentLength(content.length);
+                outputStream[0] = response.getOutputStream();
+                outputStream[0].write(content, 0, content.length / 2);
+                throw new IllegalStateException("Serialization failed");
+            }
+        }).when(endpoint).service(any(HttpServletRequest.class), any(HttpServletResponse.class));
+
+        MessageBrokerHandlerAdapter adapter = new MessageBrokerHandlerAdapter();
+        adapter.setResponseCompressor(new AmfResponseCompressor());
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", ENDPOINT_PATH);
+        request.setServletPath(ENDPOINT_PATH);
+        request.addHeader(AmfResponseCompressor.ACCEPT_ENCODING_HEADER, "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        try {
+            adapter.handle(request, response, createMessageBroker(endpoint));
+            fail("Endpoint failure not propagated");
+        } catch (IllegalStateException ex) {
+            assertEquals("Serialization failed", ex.getMessage());
+        }
+
+        assertNotNull(outputStream[0]);
+        DeflaterOutputStream compressingStream = (DeflaterOutputStream) ReflectionTestUtils.getField(outputStream[0], "target");
+        int size = response.getContentAsByteArray().length;
+        compressingStream.finish();
+        assertEquals(size, response.getContentAsByteArray().length);
+    }
+
+    private MessageBroker createMessageBroker(Endpoint endpoint) {
+        MessageBroker broker = mock(MessageBroker.class);
+        FlexSessionManager sessionManager = mock(FlexSessionManager.class);
+        HttpFlexSessionProvider sessionProvider = mock(HttpFlexSessionProvider.class);
+        when(broker.getFlexSessionManager()).thenReturn(sessionManager);
+        when(sessionManager.getFlexSessionProvider(HttpFlexSession.class)).thenReturn(sessionProvider);
+        when(broker.getEndpoint(ENDPOINT_PATH, "")).thenReturn(endpoint);
+        return broker;
+    }
+
+    private byte[] createContent() {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            content.append("compressible AMF content ");
+        }
+        return content.toString().getBytes();
+    }
+}